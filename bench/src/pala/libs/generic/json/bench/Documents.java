@@ -0,0 +1,115 @@
+package pala.libs.generic.json.bench;
+
+import java.util.Random;
+
+/**
+ * Generates the JSON documents used by the benchmarks. Documents are generated
+ * from a fixed seed, so every run (and every release) benchmarks exactly the
+ * same input.
+ *
+ * @author Palanath
+ *
+ */
+final class Documents {
+
+	/**
+	 * The sizes of generated documents, as a number of records.
+	 */
+	enum Size {
+		SMALL(1), MEDIUM(100), LARGE(10000);
+
+		private final int records;
+
+		private Size(final int records) {
+			this.records = records;
+		}
+	}
+
+	/**
+	 * The kinds of content that make up generated documents.
+	 */
+	enum Payload {
+		/**
+		 * Records resembling typical API responses: nested objects with a mix of
+		 * strings, numbers, booleans and arrays.
+		 */
+		MIXED,
+		/**
+		 * Records dominated by long strings, some of which contain escapes.
+		 */
+		STRINGS,
+		/**
+		 * Records dominated by arrays of integers and floating point numbers.
+		 */
+		NUMBERS;
+	}
+
+	private static final String[] WORDS = { "lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing",
+			"elit", "sed", "do", "eiusmod", "tempor", "incididunt", "ut", "labore", "et", "dolore", "magna", "aliqua" };
+
+	/**
+	 * Generates a document: a JSON array of records of the specified
+	 * {@link Payload}.
+	 *
+	 * @param size    The number of records.
+	 * @param payload The content of each record.
+	 * @return The compact JSON text of the document.
+	 */
+	static String generate(final Size size, final Payload payload) {
+		final Random random = new Random(42);
+		final StringBuilder sb = new StringBuilder();
+		sb.append('[');
+		for (int i = 0; i < size.records; i++) {
+			if (i > 0)
+				sb.append(',');
+			switch (payload) {
+			case MIXED:
+				mixed(sb, i, random);
+				break;
+			case STRINGS:
+				strings(sb, random);
+				break;
+			case NUMBERS:
+				numbers(sb, random);
+				break;
+			}
+		}
+		return sb.append(']').toString();
+	}
+
+	private static void mixed(final StringBuilder sb, final int id, final Random random) {
+		sb.append("{\"id\":").append(id).append(",\"name\":\"").append(WORDS[random.nextInt(WORDS.length)])
+				.append("\",\"active\":").append(random.nextBoolean()).append(",\"score\":")
+				.append(random.nextInt(100000) / 100.0).append(",\"owner\":{\"id\":").append(random.nextInt(1000))
+				.append(",\"email\":\"user").append(random.nextInt(1000)).append("@example.com\"},\"tags\":[");
+		for (int j = 0, n = random.nextInt(5); j < n; j++)
+			sb.append(j == 0 ? "" : ",").append('"').append(WORDS[random.nextInt(WORDS.length)]).append('"');
+		sb.append("]}");
+	}
+
+	private static void numbers(final StringBuilder sb, final Random random) {
+		sb.append("{\"ints\":[");
+		for (int j = 0; j < 16; j++)
+			sb.append(j == 0 ? "" : ",").append(random.nextInt() >> random.nextInt(32));
+		sb.append("],\"doubles\":[");
+		for (int j = 0; j < 16; j++)
+			sb.append(j == 0 ? "" : ",").append(random.nextGaussian() * 1000);
+		sb.append("],\"t\":").append(random.nextLong()).append('}');
+	}
+
+	private static void strings(final StringBuilder sb, final Random random) {
+		sb.append("{\"title\":\"").append(sentence(random, 8)).append("\",\"body\":\"").append(sentence(random, 60))
+				.append("\",\"quote\":\"\\\"").append(sentence(random, 6)).append("\\\"\\n\\t\\u00e9\"}");
+	}
+
+	private static String sentence(final Random random, final int words) {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < words; i++)
+			sb.append(i == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+		return sb.toString();
+	}
+
+	private Documents() {
+	}
+
+}
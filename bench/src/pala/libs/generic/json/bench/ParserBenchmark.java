@@ -0,0 +1,93 @@
+package pala.libs.generic.json.bench;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pala.libs.generic.json.JSONParser;
+import pala.libs.generic.json.JSONValue;
+import pala.libs.generic.json.bench.Documents.Payload;
+import pala.libs.generic.json.bench.Documents.Size;
+import pala.libs.generic.streams.CharacterStream;
+
+/**
+ * Benchmarks {@link JSONParser#parse} over each of its input types, for every
+ * combination of document {@link Size} and {@link Payload}. The
+ * {@link CharacterStream} benchmark measures the original one-character-at-a-
+ * time parsing path, which the other input types avoid.
+ *
+ * @author Palanath
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ParserBenchmark {
+
+	@Param({ "SMALL", "MEDIUM", "LARGE" })
+	private Size size;
+
+	@Param({ "MIXED", "STRINGS", "NUMBERS" })
+	private Payload payload;
+
+	private String json;
+	private char[] chars;
+	private JSONParser parser, compactParser, slicingParser;
+
+	@Setup
+	public void setup() {
+		json = Documents.generate(size, payload);
+		chars = json.toCharArray();
+		parser = new JSONParser();
+		compactParser = new JSONParser();
+		compactParser.setKeyInterning(true);
+		compactParser.setCompactObjects(true);
+		slicingParser = new JSONParser();
+		slicingParser.setStringSlicing(true);
+	}
+
+	@Benchmark
+	public JSONValue parseCharArray() {
+		return parser.parse(chars);
+	}
+
+	@Benchmark
+	public JSONValue parseCharacterStream() {
+		return parser.parse(CharacterStream.from(new StringReader(json)));
+	}
+
+	@Benchmark
+	public JSONValue parseCompactInterned() {
+		return compactParser.parse(chars);
+	}
+
+	@Benchmark
+	public JSONValue parseReader() {
+		return parser.parse(new StringReader(json));
+	}
+
+	@Benchmark
+	public JSONValue parseSlicedStrings() {
+		return slicingParser.parse(chars);
+	}
+
+	@Benchmark
+	public JSONValue parseString() {
+		return parser.parse(json);
+	}
+
+}
@@ -0,0 +1,104 @@
+package pala.libs.generic.json.bench;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pala.libs.generic.json.JSONBinaryCodec;
+import pala.libs.generic.json.JSONParser;
+import pala.libs.generic.json.JSONValue;
+import pala.libs.generic.json.JSONWriter;
+import pala.libs.generic.json.bench.Documents.Payload;
+import pala.libs.generic.json.bench.Documents.Size;
+
+/**
+ * Benchmarks turning parsed trees back into text with
+ * {@link JSONValue#toString()}, {@link JSONValue#toStringShort(JSONValue)} and
+ * a streaming {@link JSONWriter}, as well as encoding and decoding with
+ * {@link JSONBinaryCodec} for comparison with the textual format.
+ *
+ * @author Palanath
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SerializationBenchmark {
+
+	/**
+	 * A {@link Writer} that discards everything, so that writer benchmarks measure
+	 * only serialization.
+	 */
+	private static final Writer NULL_WRITER = new Writer() {
+
+		@Override
+		public void close() {
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void write(final char[] cbuf, final int off, final int len) {
+		}
+	};
+
+	@Param({ "SMALL", "MEDIUM", "LARGE" })
+	private Size size;
+
+	@Param({ "MIXED", "STRINGS", "NUMBERS" })
+	private Payload payload;
+
+	private JSONValue tree;
+	private byte[] binary;
+
+	@Setup
+	public void setup() {
+		tree = new JSONParser().parse(Documents.generate(size, payload));
+		binary = JSONBinaryCodec.encode(tree);
+	}
+
+	@Benchmark
+	public JSONValue decodeBinary() {
+		return JSONBinaryCodec.decode(binary);
+	}
+
+	@Benchmark
+	public byte[] encodeBinary() {
+		return JSONBinaryCodec.encode(tree);
+	}
+
+	@Benchmark
+	public String toStringPretty() {
+		return tree.toString();
+	}
+
+	@Benchmark
+	public String toStringShort() {
+		return JSONValue.toStringShort(tree);
+	}
+
+	@Benchmark
+	public void writeCompact() throws IOException {
+		final JSONWriter writer = new JSONWriter(NULL_WRITER, false);
+		writer.write(tree);
+		writer.flush();
+	}
+
+}
@@ -0,0 +1,75 @@
+package pala.libs.generic.json.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pala.libs.generic.json.JSONArray;
+import pala.libs.generic.json.JSONNumber;
+import pala.libs.generic.json.JSONParser;
+import pala.libs.generic.json.JSONValue;
+
+/**
+ * Benchmarks operations on individual values: {@link JSONValue#escape(String)}
+ * on strings with and without characters that need escaping, and
+ * {@link JSONNumber#doubleValue()} over an array of parsed numbers.
+ *
+ * @author Palanath
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ValueBenchmark {
+
+	private String plain, escaped;
+	private JSONNumber[] numbers;
+
+	@Setup
+	public void setup() {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 32; i++)
+			sb.append("lorem ipsum ");
+		plain = sb.toString();
+		escaped = plain.replace(' ', '\n') + "\"quoted\"\t\\";
+
+		final Random random = new Random(42);
+		final StringBuilder arr = new StringBuilder("[");
+		for (int i = 0; i < 1024; i++)
+			arr.append(i == 0 ? "" : ",").append(i % 2 == 0 ? random.nextInt() : random.nextGaussian() * 1e6);
+		final JSONArray parsed = (JSONArray) new JSONParser().parse(arr.append(']').toString());
+		numbers = parsed.toArray(new JSONNumber[parsed.size()]);
+	}
+
+	@Benchmark
+	public double doubleValue() {
+		double sum = 0;
+		for (final JSONNumber n : numbers)
+			sum += n.doubleValue();
+		return sum;
+	}
+
+	@Benchmark
+	public String escapeEscaped() {
+		return JSONValue.escape(escaped);
+	}
+
+	@Benchmark
+	public String escapePlain() {
+		return JSONValue.escape(plain);
+	}
+
+}
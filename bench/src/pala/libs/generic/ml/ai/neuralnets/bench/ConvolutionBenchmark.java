@@ -0,0 +1,122 @@
+package pala.libs.generic.ml.ai.neuralnets.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pala.libs.generic.ml.ai.neuralnets.api.ContainerImpl;
+import pala.libs.generic.ml.ai.neuralnets.api.WeightGradStorage;
+import pala.libs.generic.ml.ai.neuralnets.computations.Convolution2DNode;
+import pala.libs.generic.ml.ai.neuralnets.computations.ConvolutionalNode;
+
+/**
+ * Benchmarks forward and backward passes of {@link Convolution2DNode} against
+ * {@link ConvolutionalNode} on a single-channel square image with a 5x5 kernel,
+ * and of {@link Convolution2DNode} alone on multi-channel images, where it
+ * takes its direct-loop path (3 channels to 16) and its im2col path (16
+ * channels to 32).
+ *
+ * @author Palanath
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ConvolutionBenchmark {
+
+	/**
+	 * The width and height of the images.
+	 */
+	@Param({ "64", "224" })
+	private int size;
+
+	private ConvolutionalNode single;
+	private Convolution2DNode singleChannel, rgb, deep;
+	private double[] image, rgbImage, deepImage, singleGrad, rgbGrad, deepGrad;
+
+	private static double[] random(final Random random, final int length) {
+		final double[] res = new double[length];
+		for (int i = 0; i < length; i++)
+			res[i] = random.nextGaussian();
+		return res;
+	}
+
+	@Setup
+	public void setup() {
+		final Random random = new Random(42);
+		single = new ConvolutionalNode(i -> random.nextGaussian(), size, size, 5, 5);
+		singleChannel = new Convolution2DNode(1, size, size, 1, 5, 5, 1, 0);
+		System.arraycopy(single.getBackingWeights(), 0, singleChannel.getBackingWeights(), 0, single.weights());
+		rgb = new Convolution2DNode(i -> random.nextGaussian(), 3, size, size, 16, 3, 3, 1, 1);
+		deep = new Convolution2DNode(i -> random.nextGaussian(), 16, size / 4, size / 4, 32, 3, 3, 1, 1);
+		image = random(random, single.inputs());
+		rgbImage = random(random, rgb.inputs());
+		deepImage = random(random, deep.inputs());
+		singleGrad = random(random, single.outputs());
+		rgbGrad = random(random, rgb.outputs());
+		deepGrad = random(random, deep.outputs());
+	}
+
+	@Benchmark
+	public double[] evaluateConvolutionalNode() {
+		return single.eval(image);
+	}
+
+	@Benchmark
+	public double[] evaluateSingleChannel() {
+		return singleChannel.eval(image);
+	}
+
+	@Benchmark
+	public double[] evaluateRGB() {
+		return rgb.eval(rgbImage);
+	}
+
+	@Benchmark
+	public double[] evaluateDeep() {
+		return deep.eval(deepImage);
+	}
+
+	@Benchmark
+	public double[] gradConvolutionalNode() {
+		final ContainerImpl c = new ContainerImpl();
+		single.evaluate(c, image);
+		return single.grad(c.disableModification(), new WeightGradStorage(), singleGrad);
+	}
+
+	@Benchmark
+	public double[] gradSingleChannel() {
+		final ContainerImpl c = new ContainerImpl();
+		singleChannel.evaluate(c, image);
+		return singleChannel.grad(c.disableModification(), new WeightGradStorage(), singleGrad);
+	}
+
+	@Benchmark
+	public double[] gradRGB() {
+		final ContainerImpl c = new ContainerImpl();
+		rgb.evaluate(c, rgbImage);
+		return rgb.grad(c.disableModification(), new WeightGradStorage(), rgbGrad);
+	}
+
+	@Benchmark
+	public double[] gradDeep() {
+		final ContainerImpl c = new ContainerImpl();
+		deep.evaluate(c, deepImage);
+		return deep.grad(c.disableModification(), new WeightGradStorage(), deepGrad);
+	}
+
+}
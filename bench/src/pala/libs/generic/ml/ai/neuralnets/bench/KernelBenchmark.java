@@ -0,0 +1,133 @@
+package pala.libs.generic.ml.ai.neuralnets.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pala.libs.generic.ml.ai.neuralnets.computations.Kernels;
+
+/**
+ * Benchmarks each of the {@link Kernels}, for both the scalar and the Vector
+ * API implementation, on vectors of a few lengths and, for the matrix-vector
+ * kernels, on a square matrix of that order. The forks are started with the
+ * <code>jdk.incubator.vector</code> module so that the Vector API kernels are
+ * available; the <code>vector</code> sources must be compiled into the class
+ * path.
+ *
+ * @author Palanath
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class KernelBenchmark {
+
+	@Param({ "scalar", "vector" })
+	private String kernels;
+
+	@Param({ "16", "256", "4096" })
+	private int size;
+
+	private Kernels k;
+	private double[] x, y, out, matrix;
+
+	@Setup
+	public void setup() {
+		k = kernels.equals("vector") ? Kernels.vector() : Kernels.scalar();
+		if (k == null)
+			throw new IllegalStateException("The Vector API kernels are not available.");
+		final Random random = new Random(42);
+		x = new double[size];
+		y = new double[size];
+		out = new double[size];
+		for (int i = 0; i < size; i++) {
+			x[i] = random.nextGaussian();
+			y[i] = random.nextGaussian();
+		}
+		matrix = new double[Math.min(size, 256) * size];
+		for (int i = 0; i < matrix.length; i++)
+			matrix[i] = random.nextGaussian();
+	}
+
+	@Benchmark
+	public double[] add() {
+		k.add(x, 0, y, 0, out, 0, size);
+		return out;
+	}
+
+	@Benchmark
+	public double[] axpy() {
+		k.axpy(1e-9, x, 0, out, 0, size);
+		return out;
+	}
+
+	@Benchmark
+	public double dot() {
+		return k.dot(x, 0, y, 0, size);
+	}
+
+	@Benchmark
+	public double[] exp() {
+		k.exp(x, 0, out, 0, size);
+		return out;
+	}
+
+	@Benchmark
+	public double max() {
+		return k.max(x, 0, size);
+	}
+
+	/**
+	 * Multiplies the first <code>min(size, 256)</code> elements of
+	 * <code>x</code> by a <code>min(size, 256) x size</code> matrix.
+	 */
+	@Benchmark
+	public double[] multiplyVector() {
+		k.multiplyVector(x, 0, matrix, 0, out, 0, matrix.length / size, size);
+		return out;
+	}
+
+	@Benchmark
+	public double[] multiplyVectorTransposed() {
+		k.multiplyVectorTransposed(matrix, 0, y, 0, out, 0, matrix.length / size, size);
+		return out;
+	}
+
+	@Benchmark
+	public double[] relu() {
+		k.relu(x, 0, out, 0, size);
+		return out;
+	}
+
+	@Benchmark
+	public double[] scale() {
+		k.scale(.5, x, 0, out, 0, size);
+		return out;
+	}
+
+	@Benchmark
+	public double sum() {
+		return k.sum(x, 0, size);
+	}
+
+	@Benchmark
+	public double[] tanh() {
+		k.tanh(x, 0, out, 0, size);
+		return out;
+	}
+
+}
@@ -0,0 +1,35 @@
+package pala.libs.generic.ml.ai.neuralnets.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the neural network benchmarks with the {@link GCProfiler} enabled, so
+ * that the allocation rate (<code>gc.alloc.rate.norm</code>, bytes allocated
+ * per operation) is reported next to the timing of every benchmark. Any
+ * command-line arguments are parsed as JMH options, so e.g.
+ * <code>TrainingBenchmark -p width=256</code> runs only part of the suite.
+ *
+ * @author Palanath
+ *
+ */
+public final class NeuralNetBenchmarks {
+
+	public static void main(final String[] args) throws CommandLineOptionException, RunnerException {
+		final CommandLineOptions cmd = new CommandLineOptions(args);
+		final OptionsBuilder options = new OptionsBuilder();
+		options.parent(cmd);
+		if (cmd.getIncludes().isEmpty())
+			options.include(NeuralNetBenchmarks.class.getPackage().getName() + ".*");
+		options.addProfiler(GCProfiler.class);
+		new Runner(options.build()).run();
+	}
+
+	private NeuralNetBenchmarks() {
+	}
+
+}
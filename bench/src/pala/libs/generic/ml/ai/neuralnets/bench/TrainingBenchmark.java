@@ -0,0 +1,103 @@
+package pala.libs.generic.ml.ai.neuralnets.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pala.libs.generic.ml.ai.neuralnets.api.Computation;
+import pala.libs.generic.ml.ai.neuralnets.api.ExecutionPlan;
+import pala.libs.generic.ml.ai.neuralnets.api.FrozenNetwork;
+import pala.libs.generic.ml.ai.neuralnets.api.LossFunction;
+import pala.libs.generic.ml.ai.neuralnets.api.Sample;
+import pala.libs.generic.ml.ai.neuralnets.computations.DenseLayerNode;
+import pala.libs.generic.ml.ai.neuralnets.computations.SoftmaxComputation;
+
+/**
+ * Benchmarks single-sample evaluation and training of a two-layer classifier,
+ * both through {@link Computation}'s own methods, which allocate a context and
+ * result arrays for every node on every pass, and through an
+ * {@link ExecutionPlan}, which allocates nothing once built. Evaluation is
+ * also measured through a {@link FrozenNetwork}.
+ *
+ * @author Palanath
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class TrainingBenchmark {
+
+	private static final int CLASSES = 10;
+
+	/**
+	 * The number of inputs, which is also the width of the hidden layer.
+	 */
+	@Param({ "32", "256" })
+	private int width;
+
+	private Computation network;
+	private ExecutionPlan plan;
+	private FrozenNetwork frozen;
+	private double[] output;
+	private LossFunction loss;
+	private Sample sample;
+
+	@Setup
+	public void setup() {
+		final Random random = new Random(42);
+		network = Computation.chain(DenseLayerNode.withRelu(i -> random.nextGaussian() * .05, width, width),
+				DenseLayerNode.withSigmoid(i -> random.nextGaussian() * .05, width, CLASSES),
+				new SoftmaxComputation(CLASSES));
+		plan = new ExecutionPlan(network);
+		frozen = new FrozenNetwork(network);
+		output = new double[CLASSES];
+		loss = LossFunction.crossEntropy(CLASSES, 1e-9);
+		final double[] inputs = new double[width], answer = new double[CLASSES];
+		for (int i = 0; i < inputs.length; i++)
+			inputs[i] = random.nextGaussian();
+		answer[random.nextInt(CLASSES)] = 1;
+		sample = new Sample(answer, inputs);
+	}
+
+	@Benchmark
+	public double[] evaluate() {
+		return network.eval(sample.getInputs());
+	}
+
+	@Benchmark
+	public double[] evaluatePlan() {
+		return plan.evaluate(sample.getInputs());
+	}
+
+	@Benchmark
+	public double[] evaluateFrozen() {
+		frozen.evaluate(sample.getInputs(), output);
+		return output;
+	}
+
+	@Benchmark
+	public Computation train() {
+		network.train(loss, 1e-6, sample);
+		return network;
+	}
+
+	@Benchmark
+	public double trainPlan() {
+		return plan.train(loss, 1e-6, sample);
+	}
+
+}
@@ -48,10 +48,11 @@ import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.function.UnaryOperator;
 
+import pala.libs.generic.json.JSONBinaryCodec;
 import pala.libs.generic.json.JSONParser;
 import pala.libs.generic.json.JSONValue;
+import pala.libs.generic.ml.mdp.CompiledMDP;
 import pala.libs.generic.ml.mdp.MDPSolution;
-import pala.libs.generic.streams.CharacterStream;
 import pala.libs.generic.util.Box;
 import pala.libs.generic.util.FallibleSupplier;
 import pala.libs.generic.util.Pair;
@@ -2600,30 +2601,24 @@ public final class JavaTools {
 		assert !states.isEmpty() : "Set of states cannot be empty.";
 		assert !actions.isEmpty() : "Set of actions cannot be empty.";
 
-		Map<S, A> policy = new HashMap<>();
-		if (valueFunction == null) {
+		if (valueFunction == null)
 			valueFunction = new HashMap<>();
+		if (valueFunction.isEmpty())
 			for (S s : states)
 				valueFunction.put(s, 0d); // Initialize value function.
-		} else if (valueFunction.isEmpty())
-			for (S s : states)
-				valueFunction.put(s, 0d);
 
-		Box<Map<S, Double>> valfunCopy = new Box<>();
-
-		while (itercount-- > 0) {
-			valfunCopy.value = new HashMap<>(valueFunction);// Copy the new, updated value function.
-			for (S s : states)
-				// Update value function.
-				valueFunction.put(s, max(a -> evaluateDiscountedRewardsSum(s, a, states, transitionProbabilityFunction,
-						rewardFunction, decayFactor, valfunCopy.value), actions));
-		}
+		CompiledMDP<S, A> mdp = new CompiledMDP<>(states, actions, transitionProbabilityFunction, rewardFunction);
+		double[] values = new double[mdp.stateCount()];
+		for (int i = 0; i < values.length; i++)
+			values[i] = valueFunction.get(mdp.getState(i));
+		mdp.valueIteration(values, decayFactor, itercount);
 
 		// Policy extraction
-		final Map<S, Double> vf = valueFunction;
-		for (S s : states)
-			policy.put(s, argmax(a -> evaluateDiscountedRewardsSum(s, a, states, transitionProbabilityFunction,
-					rewardFunction, decayFactor, vf), actions));
+		Map<S, A> policy = new HashMap<>();
+		for (int i = 0; i < values.length; i++) {
+			valueFunction.put(mdp.getState(i), values[i]);
+			policy.put(mdp.getState(i), mdp.getAction(mdp.greedyAction(values, decayFactor, i)));
+		}
 
 		return policy;
 	}
@@ -2662,34 +2657,25 @@ public final class JavaTools {
 		assert !states.isEmpty() : "Set of states cannot be empty.";
 		assert !actions.isEmpty() : "Set of actions cannot be empty.";
 
-		A arbitraryAction = actions.iterator().next();
-
-		if (policy == null) {
-			policy = new HashMap<>();
-			for (S s : states)
-				policy.put(s, arbitraryAction);
-		} else
-			for (S s : states)
-				policy.put(s, arbitraryAction);
-
-		if (valueFunction == null) {
+		if (valueFunction == null)
 			valueFunction = new HashMap<>();
+		if (valueFunction.isEmpty())
 			for (S s : states)
 				valueFunction.put(s, 0d); // Initialize value function.
-		} else if (valueFunction.isEmpty())
-			for (S s : states)
-				valueFunction.put(s, 0d);
 
-		Box<Map<S, Double>> valfun = new Box<>(valueFunction);
+		// Every state starts with the first action.
+		CompiledMDP<S, A> mdp = new CompiledMDP<>(states, actions, transitionProbabilityFunction, rewardFunction);
+		double[] values = new double[mdp.stateCount()];
+		int[] pol = new int[values.length];
+		for (int i = 0; i < values.length; i++)
+			values[i] = valueFunction.get(mdp.getState(i));
+		mdp.policyIteration(values, pol, decayFactor, itercount);
 
-		while (itercount-- > 0) {
-			for (S s : states)
-				// Update value function.
-				valueFunction.put(s, evaluateDiscountedRewardsSum(s, policy.get(s), states,
-						transitionProbabilityFunction, rewardFunction, decayFactor, valfun.value));
-			for (S s : states)
-				policy.put(s, argmax(a -> evaluateDiscountedRewardsSum(s, a, states, transitionProbabilityFunction,
-						rewardFunction, decayFactor, valfun.value), actions));
+		if (policy == null)
+			policy = new HashMap<>();
+		for (int i = 0; i < values.length; i++) {
+			valueFunction.put(mdp.getState(i), values[i]);
+			policy.put(mdp.getState(i), mdp.getAction(pol[i]));
 		}
 
 		return new MDPSolution<>(valueFunction, policy);
@@ -2923,6 +2909,27 @@ public final class JavaTools {
 		sendMessage(host, port, pckge.toString());
 	}
 
+	/**
+	 * Sends the provided {@link JSONValue} as in
+	 * {@link #sendPackage(String, int, Consumer, JSONValue)}, but encoded in the
+	 * binary format of {@link JSONBinaryCodec}. The receiver should use
+	 * {@link #receiveBinaryPackage(int)}.
+	 * 
+	 * @param host             The host to connect to.
+	 * @param port             The port on the host to connect to.
+	 * @param exceptionHandler A {@link Consumer} which is provided any exception
+	 *                         that occurs.
+	 * @param pckge            The {@link JSONValue} to send.
+	 */
+	public static void sendBinaryPackage(String host, int port, Consumer<? super IOException> exceptionHandler,
+			JSONValue pckge) {
+		sendMessage(host, port, exceptionHandler, JSONBinaryCodec.encode(pckge));
+	}
+
+	public static void sendBinaryPackage(String host, int port, JSONValue pckge) {
+		sendMessage(host, port, JSONBinaryCodec.encode(pckge));
+	}
+
 	/**
 	 * <p>
 	 * Reads bytes until the end of the stream is found or the provided buffer is
@@ -2984,7 +2991,11 @@ public final class JavaTools {
 	}
 
 	public static JSONValue receivePackage(int port) throws IOException {
-		return new JSONParser().parse(CharacterStream.from(receiveStringMessage(port)));
+		return new JSONParser().parse(receiveStringMessage(port));
+	}
+
+	public static JSONValue receiveBinaryPackage(int port) throws IOException {
+		return JSONBinaryCodec.decode(receiveMessage(port));
 	}
 
 	public static byte[] receiveMessageNoexcep(int port) {
@@ -3001,7 +3012,7 @@ public final class JavaTools {
 	}
 
 	public static JSONValue receivePackageNoexcep(int port) {
-		return new JSONParser().parse(CharacterStream.from(receiveStringMessageNoexcep(port)));
+		return new JSONParser().parse(receiveStringMessageNoexcep(port));
 	}
 
 	public static String copy(String item, int count) {
@@ -19,7 +19,6 @@ import pala.libs.generic.json.JSONParser;
 import pala.libs.generic.json.JSONSavable;
 import pala.libs.generic.json.JSONString;
 import pala.libs.generic.json.JSONValue;
-import pala.libs.generic.streams.CharacterStream;
 
 public abstract class PropertyObject implements JSONSavable {
 
@@ -690,7 +689,7 @@ public abstract class PropertyObject implements JSONSavable {
 
 	public void load(final File file) throws PropertyException, FileNotFoundException, IOException {
 		try (var reader = new FileReader(file)) {
-			load((JSONObject) new JSONParser().parse(CharacterStream.from(reader)));
+			load((JSONObject) new JSONParser().parse(reader));
 		}
 	}
 
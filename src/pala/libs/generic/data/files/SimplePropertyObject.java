@@ -10,7 +10,6 @@ import javafx.beans.property.ReadOnlyBooleanWrapper;
 import javafx.beans.property.SimpleObjectProperty;
 import pala.libs.generic.json.JSONObject;
 import pala.libs.generic.json.JSONParser;
-import pala.libs.generic.streams.CharacterStream;
 
 public class SimplePropertyObject extends PropertyObject {
 
@@ -53,7 +52,7 @@ public class SimplePropertyObject extends PropertyObject {
 	public void reload() {
 		if (file.get() != null)
 			try (FileReader reader = new FileReader(getFile())) {
-				load((JSONObject) new JSONParser().parse(CharacterStream.from(reader)));
+				load((JSONObject) new JSONParser().parse(reader));
 			} catch (IOException | PropertyException e) {
 				errorHandler.accept(file.get(), e);
 				return;
@@ -1,96 +1,75 @@
 package pala.libs.generic.events;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * <p>
+ * Dispatches {@link Event}s to the {@link EventHandler}s registered for their
+ * {@link EventType} and then, unless the {@link Event} is consumed, for each of
+ * its parent {@link EventType}s in turn. Handlers of one {@link EventType} are
+ * called in the order they were registered.
+ * </p>
+ * <p>
+ * An {@link EventManager} is safe to use from any number of threads at once.
+ * The handlers of each {@link EventType} are kept in an array that is replaced,
+ * never modified, when a handler is registered or unregistered, so
+ * {@link #fire(EventType, Event)} takes no locks: for each {@link EventType},
+ * it reads the current array once and calls every handler in it. Handlers
+ * registered or unregistered while an {@link Event} is being fired, including
+ * by the handlers themselves, therefore take effect from the next
+ * {@link EventType} that the {@link Event} is fired to.
+ * </p>
+ *
+ * @author Palanath
+ *
+ * @param <E> The type of the {@link Event}s.
+ */
 public final class EventManager<E extends Event> {
 
-	private class Registration<T extends E> {
-		private final EventType<T> type;
-		private final EventHandler<? super T> handler;
-		private final boolean remove;
+	private static final EventHandler<?>[] NONE = {};
 
-		public Registration(final EventType<T> type, final EventHandler<? super T> handler) {
-			this.type = type;
-			this.handler = handler;
-			remove = false;
-		}
-
-		public Registration(final EventType<T> type, final EventHandler<? super T> handler, final boolean remove) {
-			this.type = type;
-			this.handler = handler;
-			this.remove = remove;
-		}
-
-	}
-
-	private final Map<EventType<? extends E>, Collection<EventHandler<?>>> handlerMap = new HashMap<>();
-	private final List<Registration<?>> modq = new ArrayList<>();
-
-	private volatile boolean iterating;
-
-	private <T extends E> void add(final EventType<T> type, final EventHandler<? super T> handler,
-			final Map<EventType<? extends E>, Collection<EventHandler<?>>> map) {
-		if (map.containsKey(type))
-			map.get(type).add(handler);
-		else {
-			final ArrayList<EventHandler<?>> handlers = new ArrayList<>();
-			map.put(type, handlers);
-			handlers.add(handler);
-		}
-	}
+	private final ConcurrentHashMap<EventType<? extends E>, EventHandler<?>[]> handlerMap = new ConcurrentHashMap<>();
 
 	@SuppressWarnings("unchecked")
 	public <T extends E> void fire(final EventType<T> type, final T event) {
 		EventType<E> currType = (EventType<E>) type;
 		while (currType != null) {
-			if (handlerMap.containsKey(currType)) {
-				iterating = true;
-				for (final EventHandler<?> eh : handlerMap.get(currType))
+			final EventHandler<?>[] handlers = handlerMap.get(currType);
+			if (handlers != null)
+				for (final EventHandler<?> eh : handlers)
 					try {
 						((EventHandler<E>) eh).handle(event);
 					} catch (final Exception e) {
 						e.printStackTrace();
 					}
-				iterating = false;
-				for (final Registration<?> reg : modq)
-					if (reg.remove)
-						remove(reg.type, ((Registration<E>) reg).handler, handlerMap);
-					else
-						add(reg.type, ((Registration<E>) reg).handler, handlerMap);
-				modq.clear();
-			}
 			currType = event.isConsumed() ? null : (EventType<E>) currType.getParent();
 		}
 	}
 
 	public <T extends E> void register(final EventType<T> type, final EventHandler<? super T> handler) {
-		if (iterating)
-			modq.add(new Registration<>(type, handler));
-		else
-			add(type, handler, handlerMap);
-	}
-
-	private <T extends E> boolean remove(final EventType<T> type, final EventHandler<? super T> handler,
-			final Map<EventType<? extends E>, Collection<EventHandler<?>>> map) {
-		if (map.containsKey(type)) {
-			final Collection<EventHandler<?>> handlers = map.get(type);
-			final boolean rem = handlers.remove(handler);
-			if (handlers.isEmpty())
-				map.remove(type);
-			return rem;
-		}
-		return false;
+		handlerMap.compute(type, (k, handlers) -> {
+			if (handlers == null)
+				handlers = NONE;
+			final EventHandler<?>[] res = Arrays.copyOf(handlers, handlers.length + 1);
+			res[handlers.length] = handler;
+			return res;
+		});
 	}
 
 	public <T extends E> void unregister(final EventType<T> type, final EventHandler<? super T> handler) {
-		if (iterating)
-			modq.add(new Registration<>(type, handler, true));
-		else
-			remove(type, handler, handlerMap);
+		handlerMap.computeIfPresent(type, (k, handlers) -> {
+			for (int i = 0; i < handlers.length; i++)
+				if (handler.equals(handlers[i])) {
+					if (handlers.length == 1)
+						return null;
+					final EventHandler<?>[] res = new EventHandler<?>[handlers.length - 1];
+					System.arraycopy(handlers, 0, res, 0, i);
+					System.arraycopy(handlers, i + 1, res, i, res.length - i);
+					return res;
+				}
+			return handlers;
+		});
 	}
 
 }
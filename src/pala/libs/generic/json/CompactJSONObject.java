@@ -0,0 +1,447 @@
+package pala.libs.generic.json;
+
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * A {@link JSONObject} that stores up to {@value #THRESHOLD} entries in a flat
+ * array of alternating keys and values, searched linearly, rather than in a
+ * hash table. Once an insertion would exceed {@value #THRESHOLD} entries, the
+ * entries are moved into the {@link java.util.HashMap} that backs every
+ * {@link JSONObject} and the object behaves exactly like a regular
+ * {@link JSONObject} from then on.
+ * </p>
+ * <p>
+ * Small objects are the common case in most JSON payloads, and a flat array is
+ * both smaller and, for so few keys, faster to search than a hash table. Since
+ * keys interned by a {@link SymbolTable} are usually identical to the keys used
+ * to look them up, lookups compare by identity before falling back to
+ * {@link String#equals(Object)}.
+ * </p>
+ * <p>
+ * Instances are created by {@link JSONParser} when
+ * {@link JSONParser#setCompactObjects(boolean) compact objects} are enabled.
+ * Operations that are uncommon on parsed objects, such as the
+ * <code>compute</code> and <code>merge</code> family of methods, convert the
+ * object to the hash table representation before running.
+ * </p>
+ *
+ * @author Palanath
+ *
+ */
+final class CompactJSONObject extends JSONObject {
+
+	private final class EntryIterator implements Iterator<Entry<String, JSONValue>> {
+		private int next, last = -1;
+
+		@Override
+		public boolean hasNext() {
+			return next < size;
+		}
+
+		@Override
+		public Entry<String, JSONValue> next() {
+			if (table == null)
+				throw new ConcurrentModificationException();
+			if (next >= size)
+				throw new NoSuchElementException();
+			return new IndexEntry(last = next++);
+		}
+
+		@Override
+		public void remove() {
+			if (last == -1)
+				throw new IllegalStateException();
+			if (table == null)
+				throw new ConcurrentModificationException();
+			removeIndex(last);
+			next = last;
+			last = -1;
+		}
+	}
+
+	private final class IndexEntry implements Entry<String, JSONValue> {
+		private final int index;
+
+		public IndexEntry(final int index) {
+			this.index = index;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof Entry))
+				return false;
+			final Entry<?, ?> e = (Entry<?, ?>) obj;
+			return Objects.equals(getKey(), e.getKey()) && Objects.equals(getValue(), e.getValue());
+		}
+
+		@Override
+		public String getKey() {
+			return (String) table[index << 1];
+		}
+
+		@Override
+		public JSONValue getValue() {
+			return (JSONValue) table[(index << 1) + 1];
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue());
+		}
+
+		@Override
+		public JSONValue setValue(final JSONValue value) {
+			final JSONValue old = getValue();
+			table[(index << 1) + 1] = value;
+			return old;
+		}
+
+		@Override
+		public String toString() {
+			return getKey() + "=" + getValue();
+		}
+	}
+
+	/**
+	 * SUID
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The largest number of entries stored in the flat representation.
+	 */
+	static final int THRESHOLD = 8;
+
+	/**
+	 * Alternating keys and values, or <code>null</code> once this object has
+	 * moved to the hash table representation.
+	 */
+	private transient Object[] table = new Object[8];
+	private transient int size;
+
+	@Override
+	public void clear() {
+		if (table == null)
+			super.clear();
+		else {
+			for (int i = 0; i < size << 1; i++)
+				table[i] = null;
+			size = 0;
+		}
+	}
+
+	@Override
+	public JSONValue compute(final String key,
+			final BiFunction<? super String, ? super JSONValue, ? extends JSONValue> remappingFunction) {
+		inflate();
+		return super.compute(key, remappingFunction);
+	}
+
+	@Override
+	public JSONValue computeIfAbsent(final String key,
+			final Function<? super String, ? extends JSONValue> mappingFunction) {
+		inflate();
+		return super.computeIfAbsent(key, mappingFunction);
+	}
+
+	@Override
+	public JSONValue computeIfPresent(final String key,
+			final BiFunction<? super String, ? super JSONValue, ? extends JSONValue> remappingFunction) {
+		inflate();
+		return super.computeIfPresent(key, remappingFunction);
+	}
+
+	@Override
+	public boolean containsKey(final Object key) {
+		return table == null ? super.containsKey(key) : indexOf(key) != -1;
+	}
+
+	@Override
+	public boolean containsValue(final Object value) {
+		if (table == null)
+			return super.containsValue(value);
+		for (int i = 1; i < size << 1; i += 2)
+			if (Objects.equals(value, table[i]))
+				return true;
+		return false;
+	}
+
+	@Override
+	public Set<Entry<String, JSONValue>> entrySet() {
+		if (table == null)
+			return super.entrySet();
+		return new AbstractSet<Entry<String, JSONValue>>() {
+
+			@Override
+			public void clear() {
+				CompactJSONObject.this.clear();
+			}
+
+			@Override
+			public Iterator<Entry<String, JSONValue>> iterator() {
+				return new EntryIterator();
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	@Override
+	public void forEach(final BiConsumer<? super String, ? super JSONValue> action) {
+		if (table == null)
+			super.forEach(action);
+		else
+			for (int i = 0; i < size << 1; i += 2)
+				action.accept((String) table[i], (JSONValue) table[i + 1]);
+	}
+
+	@Override
+	public JSONValue get(final Object key) {
+		if (table == null)
+			return super.get(key);
+		final int i = indexOf(key);
+		return i == -1 ? null : (JSONValue) table[i + 1];
+	}
+
+	@Override
+	public JSONValue getOrDefault(final Object key, final JSONValue defaultValue) {
+		if (table == null)
+			return super.getOrDefault(key, defaultValue);
+		final int i = indexOf(key);
+		return i == -1 ? defaultValue : (JSONValue) table[i + 1];
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return table == null ? super.isEmpty() : size == 0;
+	}
+
+	@Override
+	public Set<String> keySet() {
+		if (table == null)
+			return super.keySet();
+		return new AbstractSet<String>() {
+
+			@Override
+			public boolean contains(final Object o) {
+				return containsKey(o);
+			}
+
+			@Override
+			public Iterator<String> iterator() {
+				final Iterator<Entry<String, JSONValue>> itr = entrySet().iterator();
+				return new Iterator<String>() {
+
+					@Override
+					public boolean hasNext() {
+						return itr.hasNext();
+					}
+
+					@Override
+					public String next() {
+						return itr.next().getKey();
+					}
+
+					@Override
+					public void remove() {
+						itr.remove();
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return CompactJSONObject.this.size();
+			}
+		};
+	}
+
+	@Override
+	public JSONValue merge(final String key, final JSONValue value,
+			final BiFunction<? super JSONValue, ? super JSONValue, ? extends JSONValue> remappingFunction) {
+		inflate();
+		return super.merge(key, value, remappingFunction);
+	}
+
+	@Override
+	public JSONValue put(final String key, final JSONValue value) {
+		if (table == null)
+			return super.put(key, value);
+		final int i = indexOf(key);
+		if (i != -1) {
+			final JSONValue old = (JSONValue) table[i + 1];
+			table[i + 1] = value;
+			return old;
+		}
+		if (size == THRESHOLD) {
+			inflate();
+			return super.put(key, value);
+		}
+		if (size << 1 == table.length) {
+			final Object[] t = new Object[table.length << 1];
+			System.arraycopy(table, 0, t, 0, table.length);
+			table = t;
+		}
+		table[size << 1] = key;
+		table[(size++ << 1) + 1] = value;
+		return null;
+	}
+
+	@Override
+	public void putAll(final Map<? extends String, ? extends JSONValue> m) {
+		for (final Entry<? extends String, ? extends JSONValue> e : m.entrySet())
+			put(e.getKey(), e.getValue());
+	}
+
+	@Override
+	public JSONValue putIfAbsent(final String key, final JSONValue value) {
+		if (table == null)
+			return super.putIfAbsent(key, value);
+		final int i = indexOf(key);
+		if (i != -1 && table[i + 1] != null)
+			return (JSONValue) table[i + 1];
+		return put(key, value);
+	}
+
+	@Override
+	public JSONValue remove(final Object key) {
+		if (table == null)
+			return super.remove(key);
+		final int i = indexOf(key);
+		if (i == -1)
+			return null;
+		final JSONValue old = (JSONValue) table[i + 1];
+		removeIndex(i >> 1);
+		return old;
+	}
+
+	@Override
+	public boolean remove(final Object key, final Object value) {
+		inflate();
+		return super.remove(key, value);
+	}
+
+	@Override
+	public JSONValue replace(final String key, final JSONValue value) {
+		inflate();
+		return super.replace(key, value);
+	}
+
+	@Override
+	public boolean replace(final String key, final JSONValue oldValue, final JSONValue newValue) {
+		inflate();
+		return super.replace(key, oldValue, newValue);
+	}
+
+	@Override
+	public void replaceAll(final BiFunction<? super String, ? super JSONValue, ? extends JSONValue> function) {
+		if (table == null)
+			super.replaceAll(function);
+		else
+			for (int i = 0; i < size << 1; i += 2)
+				table[i + 1] = function.apply((String) table[i], (JSONValue) table[i + 1]);
+	}
+
+	@Override
+	public int size() {
+		return table == null ? super.size() : size;
+	}
+
+	@Override
+	public Collection<JSONValue> values() {
+		if (table == null)
+			return super.values();
+		return new AbstractCollection<JSONValue>() {
+
+			@Override
+			public Iterator<JSONValue> iterator() {
+				final Iterator<Entry<String, JSONValue>> itr = entrySet().iterator();
+				return new Iterator<JSONValue>() {
+
+					@Override
+					public boolean hasNext() {
+						return itr.hasNext();
+					}
+
+					@Override
+					public JSONValue next() {
+						return itr.next().getValue();
+					}
+
+					@Override
+					public void remove() {
+						itr.remove();
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return CompactJSONObject.this.size();
+			}
+		};
+	}
+
+	/**
+	 * Returns the index in {@link #table} of the provided key, or <code>-1</code>
+	 * if the key is not present.
+	 */
+	private int indexOf(final Object key) {
+		final int end = size << 1;
+		for (int i = 0; i < end; i += 2)
+			if (table[i] == key)
+				return i;
+		if (key != null)
+			for (int i = 0; i < end; i += 2)
+				if (key.equals(table[i]))
+					return i;
+		return -1;
+	}
+
+	/**
+	 * Moves every entry into the hash table representation.
+	 */
+	private void inflate() {
+		if (table == null)
+			return;
+		final Object[] t = table;
+		final int s = size;
+		table = null;
+		size = 0;
+		for (int i = 0; i < s << 1; i += 2)
+			super.put((String) t[i], (JSONValue) t[i + 1]);
+	}
+
+	/**
+	 * Removes the entry at the specified entry index (not {@link #table} index),
+	 * shifting later entries down so that insertion order is kept.
+	 */
+	private void removeIndex(final int index) {
+		final int pos = index << 1, end = --size << 1;
+		System.arraycopy(table, pos + 2, table, pos, end - pos);
+		table[end] = table[end + 1] = null;
+	}
+
+	/**
+	 * Serializes this object as a regular {@link JSONObject}.
+	 */
+	private Object writeReplace() {
+		return new JSONObject(this);
+	}
+
+}
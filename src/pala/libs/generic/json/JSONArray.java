@@ -28,7 +28,7 @@ public class JSONArray extends ArrayList<JSONValue> implements JSONValue {
 
 	@Override
 	public String toString() {
-		return toString("");
+		return JSONWriter.toPrettyString(this);
 	}
 
 	@Override
@@ -0,0 +1,449 @@
+package pala.libs.generic.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * <p>
+ * Encodes {@link JSONValue} trees in a compact binary format and decodes them
+ * back. Binary documents are smaller than their textual counterparts and are
+ * decoded without any tokenizing: every value starts with a one-byte tag, and
+ * every string and container states its length up front.
+ * </p>
+ * <p>
+ * The format is as follows. Varints are unsigned LEB128 (seven bits per byte,
+ * least significant group first), and signed varints are zigzag encoded before
+ * being written as varints.
+ * </p>
+ * <table border="1">
+ * <tr>
+ * <th>Tag</th>
+ * <th>Value</th>
+ * <th>Followed by</th>
+ * </tr>
+ * <tr>
+ * <td>0</td>
+ * <td><code>null</code></td>
+ * <td></td>
+ * </tr>
+ * <tr>
+ * <td>1</td>
+ * <td>{@link JSONConstant#FALSE}</td>
+ * <td></td>
+ * </tr>
+ * <tr>
+ * <td>2</td>
+ * <td>{@link JSONConstant#TRUE}</td>
+ * <td></td>
+ * </tr>
+ * <tr>
+ * <td>3</td>
+ * <td>Integral {@link JSONNumber}</td>
+ * <td>Signed varint</td>
+ * </tr>
+ * <tr>
+ * <td>4</td>
+ * <td>Floating point {@link JSONNumber}</td>
+ * <td>8 byte big-endian IEEE 754 <code>double</code></td>
+ * </tr>
+ * <tr>
+ * <td>5</td>
+ * <td>{@link JSONNumber} not exactly representable by a primitive</td>
+ * <td>Varint length, then the number's JSON text in ASCII</td>
+ * </tr>
+ * <tr>
+ * <td>6</td>
+ * <td>{@link JSONString}</td>
+ * <td>Varint byte length, then UTF-8 bytes</td>
+ * </tr>
+ * <tr>
+ * <td>7</td>
+ * <td>{@link JSONArray}</td>
+ * <td>Varint element count, then each element</td>
+ * </tr>
+ * <tr>
+ * <td>8</td>
+ * <td>{@link JSONObject}</td>
+ * <td>Varint entry count, then each key followed by its value</td>
+ * </tr>
+ * </table>
+ * <p>
+ * Object keys are shared within a document: the first {@value #MAX_SHARED_KEYS}
+ * distinct keys written are numbered in the order they first appear. A key is
+ * written as a varint <code>h</code>; if <code>h</code> is odd,
+ * <code>h &gt;&gt;&gt; 1</code> is the number of a previously written key,
+ * otherwise <code>h &gt;&gt;&gt; 1</code> is the byte length of the key, whose
+ * UTF-8 bytes follow.
+ * </p>
+ *
+ * @author Palanath
+ *
+ */
+public final class JSONBinaryCodec {
+
+	private static final class Decoder {
+		private final InputStream in;
+		private byte[] buf;
+		private int pos, lim;
+		private final List<String> keys = new ArrayList<>();
+
+		public Decoder(final byte[] buf, final int offset, final int length) {
+			in = null;
+			this.buf = buf;
+			pos = offset;
+			lim = offset + length;
+		}
+
+		public Decoder(final InputStream in) {
+			this.in = in;
+			buf = new byte[BUFFER_SIZE];
+		}
+
+		public JSONValue read() throws IOException {
+			final int tag = readByte();
+			switch (tag) {
+			case NULL:
+				return null;
+			case FALSE:
+				return JSONConstant.FALSE;
+			case TRUE:
+				return JSONConstant.TRUE;
+			case INTEGER:
+				final long zigzag = readVarLong();
+				return new JSONNumber(zigzag >>> 1 ^ -(zigzag & 1));
+			case DOUBLE:
+				require(8);
+				long bits = 0;
+				for (int i = 0; i < 8; i++)
+					bits = bits << 8 | buf[pos++] & 0xFF;
+				return new JSONNumber(Double.longBitsToDouble(bits));
+			case NUMBER_TEXT:
+				return new JSONNumber(readString(readLength()));
+			case STRING:
+				return new JSONString(readString(readLength()));
+			case ARRAY: {
+				final int size = readLength();
+				final JSONArray arr = new JSONArray();
+				arr.ensureCapacity(Math.min(size, 1024));
+				for (int i = 0; i < size; i++)
+					arr.add(read());
+				return arr;
+			}
+			case OBJECT: {
+				final int size = readLength();
+				final JSONObject obj = new JSONObject();
+				for (int i = 0; i < size; i++)
+					obj.put(readKey(), read());
+				return obj;
+			}
+			default:
+				throw new IllegalArgumentException("Malformed binary JSON. Unknown tag: " + tag);
+			}
+		}
+
+		private int readByte() throws IOException {
+			require(1);
+			return buf[pos++] & 0xFF;
+		}
+
+		private String readKey() throws IOException {
+			final int h = readLength();
+			if ((h & 1) == 1) {
+				if (h >>> 1 >= keys.size())
+					throw new IllegalArgumentException("Malformed binary JSON. Reference to unknown key: " + (h >>> 1));
+				return keys.get(h >>> 1);
+			}
+			final String key = readString(h >>> 1);
+			if (keys.size() < MAX_SHARED_KEYS)
+				keys.add(key);
+			return key;
+		}
+
+		private int readLength() throws IOException {
+			final long len = readVarLong();
+			if (len < 0 || len > Integer.MAX_VALUE)
+				throw new IllegalArgumentException("Malformed binary JSON. Length too large: " + len);
+			return (int) len;
+		}
+
+		private String readString(final int length) throws IOException {
+			require(length);
+			final String str = new String(buf, pos, length, StandardCharsets.UTF_8);
+			pos += length;
+			return str;
+		}
+
+		private long readVarLong() throws IOException {
+			long val = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				final int b = readByte();
+				val |= (long) (b & 0x7F) << shift;
+				if (b < 0x80)
+					return val;
+			}
+			throw new IllegalArgumentException("Malformed binary JSON. Varint too long.");
+		}
+
+		/**
+		 * Ensures that at least <code>amount</code> unread bytes are in the buffer,
+		 * reading more from the {@link InputStream} if necessary. The buffer is only
+		 * grown, at most doubling, once the bytes already read fill it, so a corrupt
+		 * length cannot make this allocate much more than the input really holds.
+		 */
+		private void require(final int amount) throws IOException {
+			if (lim - pos >= amount)
+				return;
+			if (in == null)
+				throw new IllegalArgumentException("Malformed binary JSON. End of input reached.");
+			System.arraycopy(buf, pos, buf, 0, lim - pos);
+			lim -= pos;
+			pos = 0;
+			while (lim < amount) {
+				if (lim == buf.length)
+					buf = Arrays.copyOf(buf, (int) Math.min(amount, buf.length * 2L));
+				final int amt = in.read(buf, lim, buf.length - lim);
+				if (amt < 0)
+					throw new IllegalArgumentException("Malformed binary JSON. End of input reached.");
+				lim += amt;
+			}
+		}
+	}
+
+	private static final class Encoder {
+		private final OutputStream out;
+		private final byte[] buf = new byte[BUFFER_SIZE];
+		private int pos;
+		private final Map<String, Integer> keys = new HashMap<>();
+
+		public Encoder(final OutputStream out) {
+			this.out = out;
+		}
+
+		public void flush() throws IOException {
+			out.write(buf, 0, pos);
+			pos = 0;
+			out.flush();
+		}
+
+		public void write(final JSONValue value) throws IOException {
+			if (value == null)
+				writeByte(NULL);
+			else if (value instanceof JSONString) {
+				writeByte(STRING);
+				writeString(((JSONString) value).getValue());
+			} else if (value instanceof JSONObject) {
+				final JSONObject obj = (JSONObject) value;
+				writeByte(OBJECT);
+				writeVarLong(obj.size());
+				for (final Entry<String, JSONValue> e : obj.entrySet()) {
+					writeKey(e.getKey());
+					write(e.getValue());
+				}
+			} else if (value instanceof JSONArray) {
+				final JSONArray arr = (JSONArray) value;
+				writeByte(ARRAY);
+				writeVarLong(arr.size());
+				for (final JSONValue v : arr)
+					write(v);
+			} else if (value instanceof JSONNumber) {
+				final JSONNumber num = (JSONNumber) value;
+				if (num.isIntegral()) {
+					final long l = num.longValue();
+					writeByte(INTEGER);
+					writeVarLong(l << 1 ^ l >> 63);
+				} else if (num.getText() == null) {
+					writeByte(DOUBLE);
+					ensure(8);
+					final long bits = Double.doubleToRawLongBits(num.doubleValue());
+					for (int i = 56; i >= 0; i -= 8)
+						buf[pos++] = (byte) (bits >>> i);
+				} else {
+					writeByte(NUMBER_TEXT);
+					writeString(num.getText());
+				}
+			} else if (value == JSONConstant.TRUE)
+				writeByte(TRUE);
+			else if (value == JSONConstant.FALSE)
+				writeByte(FALSE);
+			else
+				throw new IllegalArgumentException(
+						"Unsupported JSONValue type for binary encoding: " + value.getClass().getName());
+		}
+
+		/**
+		 * Ensures that at least <code>amount</code> bytes (which must not exceed the
+		 * buffer size) can be written into the buffer.
+		 */
+		private void ensure(final int amount) throws IOException {
+			if (buf.length - pos < amount) {
+				out.write(buf, 0, pos);
+				pos = 0;
+			}
+		}
+
+		private void writeByte(final int b) throws IOException {
+			ensure(1);
+			buf[pos++] = (byte) b;
+		}
+
+		private void writeKey(final String key) throws IOException {
+			final Integer index = keys.get(key);
+			if (index != null)
+				writeVarLong((long) index << 1 | 1);
+			else {
+				if (keys.size() < MAX_SHARED_KEYS)
+					keys.put(key, keys.size());
+				writeString(key, true);
+			}
+		}
+
+		private void writeString(final String str) throws IOException {
+			writeString(str, false);
+		}
+
+		/**
+		 * Writes a length-prefixed UTF-8 string. Strings that are entirely ASCII are
+		 * copied straight into the buffer; others are encoded by the JDK.
+		 *
+		 * @param str The {@link String}.
+		 * @param key Whether the string is an object key, in which case its length is
+		 *            shifted left by one, as described in the format.
+		 */
+		private void writeString(final String str, final boolean key) throws IOException {
+			final int len = str.length();
+			boolean ascii = len <= BUFFER_SIZE - 10;
+			for (int i = 0; ascii && i < len; i++)
+				ascii = str.charAt(i) < 0x80;
+			if (ascii) {
+				writeVarLong(key ? (long) len << 1 : len);
+				ensure(len);
+				for (int i = 0; i < len; i++)
+					buf[pos++] = (byte) str.charAt(i);
+			} else {
+				final byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+				writeVarLong(key ? (long) bytes.length << 1 : bytes.length);
+				if (bytes.length > buf.length - pos) {
+					out.write(buf, 0, pos);
+					pos = 0;
+					if (bytes.length > buf.length) {
+						out.write(bytes);
+						return;
+					}
+				}
+				System.arraycopy(bytes, 0, buf, pos, bytes.length);
+				pos += bytes.length;
+			}
+		}
+
+		private void writeVarLong(long val) throws IOException {
+			ensure(10);
+			while ((val & ~0x7FL) != 0) {
+				buf[pos++] = (byte) (val & 0x7F | 0x80);
+				val >>>= 7;
+			}
+			buf[pos++] = (byte) val;
+		}
+	}
+
+	private static final int NULL = 0, FALSE = 1, TRUE = 2, INTEGER = 3, DOUBLE = 4, NUMBER_TEXT = 5, STRING = 6,
+			ARRAY = 7, OBJECT = 8;
+
+	/**
+	 * The maximum number of distinct keys shared by reference within a single
+	 * document.
+	 */
+	public static final int MAX_SHARED_KEYS = 4096;
+
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Decodes a {@link JSONValue} from the provided binary data.
+	 *
+	 * @param data The binary data.
+	 * @return The decoded {@link JSONValue}.
+	 * @throws IllegalArgumentException If the data is malformed.
+	 */
+	public static JSONValue decode(final byte[] data) throws IllegalArgumentException {
+		return decode(data, 0, data.length);
+	}
+
+	/**
+	 * Decodes a {@link JSONValue} from the specified range of the provided array.
+	 *
+	 * @param data   The array containing the binary data.
+	 * @param offset The index of the first byte.
+	 * @param length The number of bytes available to the decoder.
+	 * @return The decoded {@link JSONValue}.
+	 * @throws IllegalArgumentException If the data is malformed.
+	 */
+	public static JSONValue decode(final byte[] data, final int offset, final int length)
+			throws IllegalArgumentException {
+		if (offset < 0 || length < 0 || offset > data.length - length)
+			throw new IndexOutOfBoundsException();
+		try {
+			return new Decoder(data, offset, length).read();
+		} catch (final IOException e) {
+			// Array-backed decoders do not perform I/O.
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Decodes a {@link JSONValue} from the provided {@link InputStream}. Since
+	 * input is read in blocks, the {@link InputStream} may be left positioned past
+	 * the end of the decoded value. The {@link InputStream} is not closed.
+	 *
+	 * @param in The {@link InputStream} to read from.
+	 * @return The decoded {@link JSONValue}.
+	 * @throws IOException              If an {@link IOException} occurs while
+	 *                                  reading.
+	 * @throws IllegalArgumentException If the data is malformed.
+	 */
+	public static JSONValue decode(final InputStream in) throws IOException, IllegalArgumentException {
+		return new Decoder(in).read();
+	}
+
+	/**
+	 * Encodes the provided {@link JSONValue} into a new <code>byte</code> array.
+	 *
+	 * @param value The {@link JSONValue} to encode, possibly <code>null</code>.
+	 * @return The binary encoding.
+	 */
+	public static byte[] encode(final JSONValue value) {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			encode(value, out);
+		} catch (final IOException e) {
+			// ByteArrayOutputStream does not throw IOExceptions.
+			throw new RuntimeException(e);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Encodes the provided {@link JSONValue} to the provided {@link OutputStream},
+	 * then flushes it. The {@link OutputStream} is not closed.
+	 *
+	 * @param value The {@link JSONValue} to encode, possibly <code>null</code>.
+	 * @param out   The {@link OutputStream} to write to.
+	 * @throws IOException If an {@link IOException} occurs while writing.
+	 */
+	public static void encode(final JSONValue value, final OutputStream out) throws IOException {
+		final Encoder encoder = new Encoder(out);
+		encoder.write(value);
+		encoder.flush();
+	}
+
+	private JSONBinaryCodec() {
+	}
+
+}
@@ -0,0 +1,359 @@
+package pala.libs.generic.json;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * <p>
+ * Reads newline-delimited JSON (JSON Lines) files, in which every line holds
+ * one complete JSON value, possibly in parallel. The file is memory-mapped
+ * upon construction, and its records are exposed as a {@link Spliterator} or
+ * {@link Stream} of {@link JSONValue}s. Splitting the {@link Spliterator}
+ * divides the file at line boundaries, so every split can be decoded and parsed
+ * independently of the others.
+ * </p>
+ * <p>
+ * Lines are decoded as UTF-8. A trailing <code>'\r'</code> is ignored, as are
+ * blank lines. A line that does not hold exactly one JSON value, optionally
+ * surrounded by whitespace, causes an {@link IllegalArgumentException} that
+ * names the byte offset of the line in the file. Each split parses its records with its own {@link JSONParser},
+ * obtained from the {@link #setParserSupplier(Supplier) parser supplier}, so
+ * parsers never need to be shared between threads. Parsers with
+ * {@link JSONParser#setStringSlicing(boolean) string slicing} enabled are given
+ * a new array for each line, which the line's strings then share.
+ * </p>
+ * <p>
+ * Parallel streams run in the pool that their terminal operation is invoked
+ * from. {@link #process(Function)} and {@link #forEach(Consumer)} invoke their
+ * terminal operation in the {@link #setPool(ForkJoinPool) configured pool}, so
+ * that parsing does not occupy the common pool.
+ * </p>
+ *
+ * @author Palanath
+ *
+ */
+public class JSONLinesReader {
+
+	/**
+	 * Iterates over the records in a range of the file. The range always begins
+	 * at the start of a line and ends just past a newline or at the end of the
+	 * file.
+	 */
+	private final class LineSpliterator implements Spliterator<JSONValue> {
+		private long pos;
+		private final long end;
+		private JSONParser parser;
+		private byte[] bytes = new byte[256];
+		private char[] chars = new char[256];
+		/**
+		 * Receives the index that each record's value ends at from the
+		 * {@link JSONParser}.
+		 */
+		private final int[] valueEnd = new int[1];
+
+		public LineSpliterator(final long pos, final long end) {
+			this.pos = pos;
+			this.end = end;
+		}
+
+		@Override
+		public int characteristics() {
+			return ordered ? ORDERED : 0;
+		}
+
+		@Override
+		public long estimateSize() {
+			return end - pos;
+		}
+
+		@Override
+		public void forEachRemaining(final Consumer<? super JSONValue> action) {
+			while (tryAdvance(action))
+				;
+		}
+
+		@Override
+		public boolean tryAdvance(final Consumer<? super JSONValue> action) {
+			while (pos < end) {
+				long lineEnd = indexOf('\n', pos, end);
+				final long next = lineEnd == -1 ? lineEnd = end : lineEnd + 1;
+				if (lineEnd > pos && get(lineEnd - 1) == '\r')
+					lineEnd--;
+				if (parser == null)
+					parser = parserSupplier.get();
+				final int len = decode(pos, lineEnd, parser.isStringSlicing());
+				final long start = pos;
+				pos = next;
+				if (!isBlank(chars, 0, len)) {
+					final JSONValue value;
+					try {
+						value = parser.parse(chars, 0, len, valueEnd);
+					} catch (final IllegalArgumentException e) {
+						throw new IllegalArgumentException(
+								"Malformed JSON Lines record at byte " + start + ": " + e.getMessage(), e);
+					}
+					if (!isBlank(chars, valueEnd[0], len))
+						throw new IllegalArgumentException("Malformed JSON Lines record at byte " + start
+								+ ": unexpected content after the value, at character " + valueEnd[0]
+								+ " of the line.");
+					action.accept(value);
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public Spliterator<JSONValue> trySplit() {
+			if (end - pos < minSplitSize)
+				return null;
+			final long split = indexOf('\n', pos + (end - pos >>> 1), end);
+			if (split == -1 || split + 1 >= end)
+				return null;
+			final LineSpliterator prefix = new LineSpliterator(pos, split + 1);
+			pos = split + 1;
+			return prefix;
+		}
+
+		/**
+		 * Decodes the specified range of the file into {@link #chars} and returns
+		 * the number of characters decoded. If <code>fresh</code> is
+		 * <code>true</code>, the characters are decoded into a new array rather than
+		 * the reused one, since the parser may keep references to it.
+		 */
+		private int decode(final long start, final long stop, final boolean fresh) {
+			if (stop - start > Integer.MAX_VALUE - 8)
+				throw new IllegalArgumentException("JSON Lines record too long: " + (stop - start) + " bytes.");
+			final int len = (int) (stop - start);
+			if (bytes.length < len) {
+				bytes = new byte[Math.max(len, bytes.length << 1)];
+				chars = new char[bytes.length];
+			}
+			read(start, bytes, len);
+			if (fresh)
+				chars = new char[len];
+
+			for (int i = 0; i < len; i++)
+				if (bytes[i] < 0) {
+					// Not ASCII; let the platform decoder handle the rest.
+					final String s = new String(bytes, 0, len, StandardCharsets.UTF_8);
+					s.getChars(0, s.length(), chars, 0);
+					return s.length();
+				} else
+					chars[i] = (char) bytes[i];
+			return len;
+		}
+	}
+
+	/**
+	 * The size of each mapped region of the file. Files larger than this are
+	 * mapped in multiple regions, since a single {@link MappedByteBuffer} is
+	 * limited to <code>2<sup>31</sup> - 1</code> bytes.
+	 */
+	private static final int REGION_BITS = 30, REGION_SIZE = 1 << REGION_BITS;
+
+	private static boolean isBlank(final char[] chars, final int from, final int to) {
+		for (int i = from; i < to; i++)
+			if (!Character.isWhitespace(chars[i]))
+				return false;
+		return true;
+	}
+
+	private final MappedByteBuffer[] regions;
+	private final long size;
+
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+	private boolean ordered = true, parallel = true;
+	private Supplier<? extends JSONParser> parserSupplier = JSONParser::new;
+	private long minSplitSize = 1 << 16;
+
+	public JSONLinesReader(final File file) throws IOException {
+		this(file.toPath());
+	}
+
+	/**
+	 * Creates a {@link JSONLinesReader} that reads the specified file. The file is
+	 * mapped into memory by this constructor and is not read again if it changes
+	 * afterwards.
+	 *
+	 * @param file The path of the file.
+	 * @throws IOException If an {@link IOException} occurs while opening or
+	 *                     mapping the file.
+	 */
+	public JSONLinesReader(final Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			size = channel.size();
+			regions = new MappedByteBuffer[(int) ((size + REGION_SIZE - 1) >>> REGION_BITS)];
+			for (int i = 0; i < regions.length; i++) {
+				final long start = (long) i << REGION_BITS;
+				regions[i] = channel.map(MapMode.READ_ONLY, start, Math.min(REGION_SIZE, size - start));
+			}
+		}
+	}
+
+	/**
+	 * Runs the specified operation on this reader's {@link #stream()} in the
+	 * {@link #setPool(ForkJoinPool) configured pool}, and returns its result.
+	 *
+	 * @param <R>       The type of the result.
+	 * @param operation The operation, which should end with a terminal operation
+	 *                  on the provided {@link Stream}.
+	 * @return The result of the operation.
+	 */
+	public <R> R process(final Function<? super Stream<JSONValue>, ? extends R> operation) {
+		return pool.submit(() -> operation.apply(stream())).join();
+	}
+
+	/**
+	 * Performs the provided action upon every record, in the
+	 * {@link #setPool(ForkJoinPool) configured pool}. If this reader is
+	 * {@link #isOrdered() ordered}, the action is performed upon the records in
+	 * the order they appear in the file, one at a time (though they are still
+	 * parsed in parallel); otherwise, the action may be performed upon multiple
+	 * records at once, from different threads.
+	 *
+	 * @param action The action to perform.
+	 */
+	public void forEach(final Consumer<? super JSONValue> action) {
+		this.<Void>process(s -> {
+			if (ordered)
+				s.forEachOrdered(action);
+			else
+				s.forEach(action);
+			return null;
+		});
+	}
+
+	public long getMinSplitSize() {
+		return minSplitSize;
+	}
+
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+
+	public boolean isOrdered() {
+		return ordered;
+	}
+
+	public boolean isParallel() {
+		return parallel;
+	}
+
+	/**
+	 * Sets the smallest number of bytes that a split of the file may cover before
+	 * it is no longer split further. Defaults to 64 KiB.
+	 *
+	 * @param minSplitSize The minimum split size, in bytes.
+	 */
+	public void setMinSplitSize(final long minSplitSize) {
+		if (minSplitSize < 1)
+			throw new IllegalArgumentException("Split size must be positive: " + minSplitSize);
+		this.minSplitSize = minSplitSize;
+	}
+
+	/**
+	 * Sets whether records are reported in the order they appear in the file.
+	 * Unordered streams can be processed with less coordination between threads.
+	 * Defaults to <code>true</code>.
+	 *
+	 * @param ordered Whether to keep file order.
+	 */
+	public void setOrdered(final boolean ordered) {
+		this.ordered = ordered;
+	}
+
+	/**
+	 * Sets whether {@link #stream()} returns a parallel {@link Stream}. Defaults
+	 * to <code>true</code>.
+	 *
+	 * @param parallel Whether streams are parallel.
+	 */
+	public void setParallel(final boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	/**
+	 * Sets the supplier that provides a {@link JSONParser} for each split of the
+	 * file. The supplier may be called from any thread and must return a new
+	 * {@link JSONParser} (or at least one that is not in use elsewhere) upon each
+	 * call. Defaults to <code>JSONParser::new</code>.
+	 *
+	 * @param parserSupplier The {@link JSONParser} supplier.
+	 */
+	public void setParserSupplier(final Supplier<? extends JSONParser> parserSupplier) {
+		this.parserSupplier = parserSupplier;
+	}
+
+	public void setPool(final ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Returns a {@link Spliterator} over every record in the file.
+	 *
+	 * @return A new {@link Spliterator}.
+	 */
+	public Spliterator<JSONValue> spliterator() {
+		return new LineSpliterator(0, size);
+	}
+
+	/**
+	 * Returns a {@link Stream} over every record in the file, which is parallel if
+	 * this reader is {@link #isParallel() parallel}. Note that the terminal
+	 * operation of a parallel {@link Stream} runs in the pool of the thread that
+	 * invokes it (or the common pool); use {@link #process(Function)} to run it in
+	 * the {@link #setPool(ForkJoinPool) configured pool}.
+	 *
+	 * @return A new {@link Stream}.
+	 */
+	public Stream<JSONValue> stream() {
+		return StreamSupport.stream(spliterator(), parallel);
+	}
+
+	private byte get(final long pos) {
+		return regions[(int) (pos >>> REGION_BITS)].get((int) (pos & REGION_SIZE - 1));
+	}
+
+	/**
+	 * Returns the position of the first occurrence of the specified byte in the
+	 * range <code>[from, to)</code> of the file, or <code>-1</code> if there is
+	 * none.
+	 */
+	private long indexOf(final char b, long from, final long to) {
+		for (; from < to; from++)
+			if (get(from) == b)
+				return from;
+		return -1;
+	}
+
+	/**
+	 * Copies <code>len</code> bytes of the file, starting at <code>pos</code>,
+	 * into the start of the provided array.
+	 */
+	private void read(long pos, final byte[] dest, final int len) {
+		for (int copied = 0; copied < len;) {
+			final ByteBuffer region = regions[(int) (pos >>> REGION_BITS)].duplicate();
+			final int offset = (int) (pos & REGION_SIZE - 1), amt = Math.min(len - copied, region.limit() - offset);
+			region.position(offset);
+			region.get(dest, copied, amt);
+			copied += amt;
+			pos += amt;
+		}
+	}
+
+}
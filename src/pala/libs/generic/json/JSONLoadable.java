@@ -7,7 +7,6 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 
-import pala.libs.generic.streams.CharacterStream;
 
 public interface JSONLoadable {
 	/**
@@ -55,7 +54,7 @@ public interface JSONLoadable {
 	}
 
 	default void load(Reader in) throws IOException, JSONLoadException {
-		fromJSON(new JSONParser().parse(CharacterStream.from(in)));
+		fromJSON(new JSONParser().parse(in));
 	}
 
 	default void load(File file) throws IOException, JSONLoadException {
@@ -64,7 +63,33 @@ public interface JSONLoadable {
 		}
 	}
 
+	/**
+	 * Restores this {@link JSONLoadable} from binary data, in the format of
+	 * {@link JSONBinaryCodec}, read from the provided {@link InputStream}. The
+	 * {@link InputStream} is not closed, and may be read past the end of the
+	 * encoded value.
+	 * 
+	 * @param in The {@link InputStream} to read the {@link JSONValue} from.
+	 * @throws IOException       If an {@link IOException} occurs while reading from
+	 *                           the {@link InputStream}.
+	 * @throws JSONLoadException If a {@link JSONLoadException} occurs while
+	 *                           executing {@link #fromJSON(JSONValue)}.
+	 */
+	default void loadBinary(InputStream in) throws IOException, JSONLoadException {
+		fromJSON(JSONBinaryCodec.decode(in));
+	}
+
+	default void loadBinary(File file) throws IOException, JSONLoadException {
+		try (FileInputStream fis = new FileInputStream(file)) {
+			loadBinary(fis);
+		}
+	}
+
+	default void loadBinary(byte[] data) throws JSONLoadException {
+		fromJSON(JSONBinaryCodec.decode(data));
+	}
+
 	default void loadFromString(String json) throws JSONLoadException {
-		fromJSON(new JSONParser().parse(CharacterStream.from(json)));
+		fromJSON(new JSONParser().parse(json));
 	}
 }
@@ -1,73 +1,246 @@
 package pala.libs.generic.json;
 
+import java.math.BigDecimal;
+
+/**
+ * <p>
+ * Represents a JSON number. Numbers are decoded once, upon construction, and
+ * stored as primitives:
+ * </p>
+ * <ul>
+ * <li>Integers (numbers without a fraction or exponent) that fit in a
+ * <code>long</code> are stored as a <code>long</code>.</li>
+ * <li>Other numbers are stored as a <code>double</code>, so long as the
+ * <code>double</code> identifies the written value exactly (at most 15
+ * significant digits and within the normal range of <code>double</code>).</li>
+ * <li>Any other number additionally retains its textual form, so that no
+ * precision is lost when it is written back out or converted with
+ * {@link #longValue()}.</li>
+ * </ul>
+ *
+ * @author Palanath
+ *
+ */
 public class JSONNumber extends Number implements JSONValue {
 
 	/**
 	 * SUID
 	 */
-	private static final long serialVersionUID = 1L;
-	private final boolean neg;
-	private final String left, right, exp;
+	private static final long serialVersionUID = 2L;
+
+	private static final BigDecimal LONG_MAX = BigDecimal.valueOf(Long.MAX_VALUE),
+			LONG_MIN = BigDecimal.valueOf(Long.MIN_VALUE);
+
+	/**
+	 * Powers of ten that are exactly representable as <code>double</code>s.
+	 */
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12,
+			1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/**
+	 * Decodes the JSON number written in the specified range of the provided
+	 * array. The range must contain a syntactically valid JSON number, as verified
+	 * by {@link JSONParser}.
+	 *
+	 * @param chars The array containing the number.
+	 * @param start The index of the first character of the number.
+	 * @param end   The index immediately after the last character of the number.
+	 * @return The decoded {@link JSONNumber}.
+	 */
+	static JSONNumber parse(final char[] chars, final int start, final int end) {
+		int i = start;
+		final boolean neg = chars[i] == '-';
+		if (neg)
+			i++;
+
+		// The value is sig * 10^scale. Digits that do not fit in sig are dropped and
+		// recorded in truncated.
+		long sig = 0;
+		int digits = 0, scale = 0;
+		boolean truncated = false;
+		char c = 0;
+		for (; i < end && (c = chars[i]) >= '0' && c <= '9'; i++)
+			if (digits < 18 || digits == 18 && sig <= (Long.MAX_VALUE - (c - '0')) / 10) {
+				if ((sig = sig * 10 + (c - '0')) != 0)
+					digits++;
+			} else {
+				scale++;
+				truncated = true;
+			}
+
+		if (i == end)
+			return truncated ? new JSONNumber(new String(chars, start, end - start))
+					: new JSONNumber(neg ? -sig : sig);
+
+		if (c == '.')
+			for (i++; i < end && (c = chars[i]) >= '0' && c <= '9'; i++)
+				if (digits < 18) {
+					if ((sig = sig * 10 + (c - '0')) != 0)
+						digits++;
+					scale--;
+				} else
+					truncated |= c != '0';
+
+		if (c == 'e' || c == 'E') {
+			final boolean negExp = chars[++i] == '-';
+			if (negExp || chars[i] == '+')
+				i++;
+			int exp = 0;
+			for (; i < end; i++)
+				if (exp < 100000)
+					exp = exp * 10 + (chars[i] - '0');
+			scale += negExp ? -exp : exp;
+		}
+
+		if (!truncated && digits <= 15) {
+			if (scale >= -22 && scale <= 22) {
+				// Both operands are exact, so the result is correctly rounded.
+				final double val = scale < 0 ? sig / POWERS_OF_TEN[-scale] : sig * POWERS_OF_TEN[scale];
+				return new JSONNumber(neg ? -val : val);
+			}
+			final double val = Double.parseDouble(new String(chars, start, end - start));
+			if (sig == 0 || Double.isFinite(val) && Math.abs(val) >= Double.MIN_NORMAL)
+				return new JSONNumber(val);
+		}
+		return new JSONNumber(new String(chars, start, end - start));
+	}
+
+	/**
+	 * Whether {@link #longValue} holds this number exactly.
+	 */
+	private final boolean integral;
+	private final long longValue;
+	private final double doubleValue;
+	/**
+	 * The textual form of this number, kept only if neither {@link #longValue} nor
+	 * {@link #doubleValue} represent this number exactly. Otherwise
+	 * <code>null</code>.
+	 */
+	private final String text;
 
 	public JSONNumber(final boolean neg, final String left, final String right, final String exp) {
-		this.neg = neg;
-		this.left = left;
-		this.right = right;
-		this.exp = exp;
+		final StringBuilder b = new StringBuilder();
+		if (neg)
+			b.append('-');
+		b.append(left);
+		if (right != null)
+			b.append('.').append(right);
+		if (exp != null)
+			b.append('e').append(exp);
+		final char[] chars = new char[b.length()];
+		b.getChars(0, chars.length, chars, 0);
+		final JSONNumber decoded = parse(chars, 0, chars.length);
+		integral = decoded.integral;
+		longValue = decoded.longValue;
+		doubleValue = decoded.doubleValue;
+		text = decoded.text;
+	}
+
+	/**
+	 * Creates a {@link JSONNumber} holding the provided <code>double</code>.
+	 *
+	 * @param number The value of the {@link JSONNumber}.
+	 * @throws IllegalArgumentException If the provided <code>double</code> is
+	 *                                  infinite or NaN, since JSON cannot
+	 *                                  represent such values.
+	 */
+	public JSONNumber(final double number) throws IllegalArgumentException {
+		if (!Double.isFinite(number))
+			throw new IllegalArgumentException("JSON numbers must be finite: " + number);
+		integral = false;
+		longValue = (long) number;
+		doubleValue = number;
+		text = null;
 	}
 
 	public JSONNumber(final long number) {
-		String left = String.valueOf(number);
-		if (neg = (number & Long.MIN_VALUE) == Long.MIN_VALUE)
-			left = left.substring(1);
-		this.left = left;
-		right = exp = null;
+		integral = true;
+		longValue = number;
+		doubleValue = number;
+		text = null;
+	}
+
+	/**
+	 * Creates a {@link JSONNumber} that keeps the provided textual form. The text
+	 * must be a valid JSON number.
+	 *
+	 * @param text The text of the number.
+	 */
+	JSONNumber(final String text) {
+		integral = false;
+		doubleValue = Double.parseDouble(text);
+		longValue = (long) doubleValue;
+		this.text = text;
 	}
 
 	@Override
 	public double doubleValue() {
-		final StringBuilder b = new StringBuilder(left);
-		if (right != null)
-			b.append('.').append(right);
-		if (exp != null)
-			b.append('e').append(exp);
-		return (neg ? -1 : 1) * Double.parseDouble(b.toString());
+		return doubleValue;
 	}
 
 	@Override
 	public float floatValue() {
-		return (float) doubleValue();
+		return (float) doubleValue;
 	}
 
+	/**
+	 * Returns this number as an <code>int</code>. The number is truncated, as by
+	 * {@link #longValue()}, and saturates at the bounds of <code>int</code>, as a
+	 * cast from <code>double</code> does.
+	 */
 	@Override
 	public int intValue() {
-		int val = Integer.parseInt(left);
-		if (neg)
-			val = -val;
-		if (exp != null)
-			val = (int) Math.pow(10, val);
-		return val;
+		final long l = integral ? longValue : longValue();
+		return l > Integer.MAX_VALUE ? Integer.MAX_VALUE : l < Integer.MIN_VALUE ? Integer.MIN_VALUE : (int) l;
 	}
 
+	/**
+	 * Returns whether this {@link JSONNumber} is an integer that is held exactly
+	 * by {@link #longValue()}.
+	 *
+	 * @return <code>true</code> if this number is an integer that fits in a
+	 *         <code>long</code>.
+	 */
+	public boolean isIntegral() {
+		return integral;
+	}
+
+	/**
+	 * Returns the textual form kept by this {@link JSONNumber}, or
+	 * <code>null</code> if this number is held exactly by a primitive.
+	 *
+	 * @return The kept text, or <code>null</code>.
+	 */
+	String getText() {
+		return text;
+	}
+
+	/**
+	 * Returns this number as a <code>long</code>, truncating any fraction.
+	 * Numbers beyond the range of <code>long</code> saturate at its bounds, as a
+	 * cast from <code>double</code> does.
+	 */
 	@Override
 	public long longValue() {
-		long val = Long.parseLong(left);
-		if (neg)
-			val = -val;
-		if (exp != null)
-			val = (long) Math.pow(10, val);
-		return val;
+		// longValue already saturates. Text is only consulted when the number might
+		// be within range, where it can hold digits that the double does not.
+		if (text == null || Math.abs(doubleValue) > 0x1p63)
+			return longValue;
+		final BigDecimal d;
+		try {
+			d = new BigDecimal(text);
+		} catch (final NumberFormatException e) {
+			// The exponent is too large for BigDecimal, but the double is finite and in
+			// range, so the number is practically 0.
+			return longValue;
+		}
+		return d.compareTo(LONG_MAX) > 0 ? Long.MAX_VALUE
+				: d.compareTo(LONG_MIN) < 0 ? Long.MIN_VALUE : d.longValue();
 	}
 
 	@Override
 	public String toString() {
-		final StringBuilder stringBuilder = new StringBuilder();
-		stringBuilder.append(neg ? "-" : "").append(left);
-		if (right != null)
-			stringBuilder.append('.').append(right);
-		if (exp != null)
-			stringBuilder.append('E').append(exp);
-		return stringBuilder.toString();
+		return text != null ? text : integral ? Long.toString(longValue) : Double.toString(doubleValue);
 	}
 
 	@Override
@@ -190,7 +190,7 @@ public class JSONObject extends HashMap<String, JSONValue> implements JSONValue
 	 * @param value The value, possibly <code>null</code>.
 	 */
 	public JSONObject put(String key, JSONArray value) {
-		put(key, value);
+		put(key, (JSONValue) value);
 		return this;
 	}
 
@@ -202,7 +202,7 @@ public class JSONObject extends HashMap<String, JSONValue> implements JSONValue
 	 * @param value The value, possibly <code>null</code>.
 	 */
 	public JSONObject put(String key, JSONObject value) {
-		put(key, value);
+		put(key, (JSONValue) value);
 		return this;
 	}
 
@@ -276,7 +276,7 @@ public class JSONObject extends HashMap<String, JSONValue> implements JSONValue
 
 	@Override
 	public String toString() {
-		return toString("");
+		return JSONWriter.toPrettyString(this);
 	}
 
 	@Override
@@ -292,8 +292,9 @@ public class JSONObject extends HashMap<String, JSONValue> implements JSONValue
 					.append('"').append(':').append(e.getValue().toString(indentation + '\t'));
 			for (; iterator.hasNext();) {
 				e = iterator.next();
-				builder.append(",\n").append(indentation).append('\t').append('"').append(e.getKey()).append('"')
-						.append(':').append(e.getValue().toString(indentation + '\t'));
+				builder.append(",\n").append(indentation).append('\t').append('"')
+						.append(JSONValue.escape(e.getKey())).append('"').append(':')
+						.append(e.getValue().toString(indentation + '\t'));
 			}
 			builder.append('\n');
 		}
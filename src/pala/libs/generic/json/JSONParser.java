@@ -1,10 +1,101 @@
 package pala.libs.generic.json;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
 import pala.libs.generic.streams.CharacterStream;
 
 public class JSONParser {
 
-	private static class CharacterSequence implements CharacterStream {
+	/**
+	 * <p>
+	 * Input buffer used by the <code>char[]</code>, {@link CharSequence}, and
+	 * {@link Reader} overloads of <code>parse</code>. Characters are scanned
+	 * directly out of {@link #buf} by index rather than being pulled one at a time
+	 * through a {@link CharacterStream}.
+	 * </p>
+	 * <p>
+	 * If the input comes from a {@link Reader}, the buffer is refilled whenever it
+	 * is exhausted. While {@link #mark} is non-negative, the characters from
+	 * {@link #mark} onwards are retained (and the buffer is grown if necessary) so
+	 * that a token spanning a refill can still be read out of the buffer in one
+	 * piece.
+	 * </p>
+	 */
+	private static final class InputBuffer {
+		private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+		private final Reader reader;
+		private char[] buf;
+		private int pos, lim, mark = -1;
+
+		public InputBuffer(final char[] buf, final int offset, final int length) {
+			reader = null;
+			this.buf = buf;
+			pos = offset;
+			lim = offset + length;
+		}
+
+		public InputBuffer(final Reader reader) {
+			this.reader = reader;
+			buf = new char[DEFAULT_BUFFER_SIZE];
+		}
+
+		/**
+		 * Reads more characters into the buffer. This method should only be called
+		 * once every buffered character has been consumed.
+		 *
+		 * @return <code>true</code> if at least one character was read,
+		 *         <code>false</code> if the end of input has been reached.
+		 */
+		public boolean fill() {
+			if (reader == null)
+				return false;
+			if (mark < 0)
+				pos = lim = 0;
+			else {
+				final int kept = lim - mark;
+				if (mark == 0) {
+					if (kept == buf.length)
+						buf = Arrays.copyOf(buf, buf.length << 1);
+				} else
+					System.arraycopy(buf, mark, buf, 0, kept);
+				pos -= mark;
+				lim = kept;
+				mark = 0;
+			}
+			try {
+				int amt;
+				while ((amt = reader.read(buf, lim, buf.length - lim)) == 0)
+					;
+				if (amt < 0)
+					return false;
+				lim += amt;
+				return true;
+			} catch (final IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		public int next() {
+			return pos < lim || fill() ? buf[pos++] : -1;
+		}
+
+		/**
+		 * Returns the offset, relative to {@link #mark}, of the character last
+		 * returned by {@link #next()}, or of the end of input if <code>curr</code> is
+		 * <code>-1</code>.
+		 *
+		 * @param curr The character last returned by {@link #next()}.
+		 * @return The offset.
+		 */
+		public int offset(final int curr) {
+			return (curr == -1 ? pos : pos - 1) - mark;
+		}
+	}
+
+	static class CharacterSequence implements CharacterStream {
 		private final CharacterStream backing;
 
 		private int curr;
@@ -30,15 +121,28 @@ public class JSONParser {
 	}
 
 	private static boolean isDigit1_9(final char digit) {
-		return digit <= '9' && digit >= 1;
+		return digit <= '9' && digit >= '1';
+	}
+
+	private static boolean isDigit(final int digit) {
+		return digit <= '9' && digit >= '0';
 	}
 
 	private static boolean isHexDigit(final char digit) {
 		return Character.isDigit(digit) || digit <= 'F' && digit >= 'A' || digit <= 'f' && digit >= 'a';
 	}
 
+	/**
+	 * The number of keys that the symbol table used for
+	 * {@link #setKeyInterning(boolean) key interning} can hold.
+	 */
+	private static final int SYMBOL_TABLE_SIZE = 1024;
+
 	private boolean strictEscapeHandling = false;
 	private UnescapedControlsInStringsBehavior unescapedControlsInStringsBehavior;
+	private SymbolTable symbols;
+	private boolean compactObjects;
+	private boolean stringSlicing;
 
 	public enum UnescapedControlsInStringsBehavior {
 		/**
@@ -72,16 +176,189 @@ public class JSONParser {
 		return strictEscapeHandling;
 	}
 
+	public boolean isKeyInterning() {
+		return symbols != null;
+	}
+
+	/**
+	 * <p>
+	 * Sets whether object keys are interned. When enabled, this parser keeps a
+	 * bounded table of the keys it has seen, and objects parsed by this parser
+	 * (in any number of calls to <code>parse</code>) share a single
+	 * {@link String} instance per distinct key, so long as the key stays in the
+	 * table. Key lookups by the <code>char[]</code>, {@link CharSequence}, and
+	 * {@link Reader} overloads of <code>parse</code> also avoid creating a
+	 * {@link String} for keys already in the table.
+	 * </p>
+	 * <p>
+	 * This is intended for inputs consisting of many objects with the same set of
+	 * keys. Disabling key interning discards the table.
+	 * </p>
+	 *
+	 * @param keyInterning Whether to intern object keys.
+	 */
+	public void setKeyInterning(final boolean keyInterning) {
+		if (keyInterning != (symbols != null))
+			symbols = keyInterning ? new SymbolTable(SYMBOL_TABLE_SIZE) : null;
+	}
+
+	public boolean isCompactObjects() {
+		return compactObjects;
+	}
+
+	/**
+	 * Sets whether parsed {@link JSONObject}s with few keys are stored compactly.
+	 * When enabled, objects are backed by a flat array of keys and values until
+	 * they grow past a small threshold, at which point they switch to a hash
+	 * table. Such objects are otherwise indistinguishable from any other
+	 * {@link JSONObject}.
+	 *
+	 * @param compactObjects Whether to store small objects compactly.
+	 */
+	public void setCompactObjects(final boolean compactObjects) {
+		this.compactObjects = compactObjects;
+	}
+
+	public boolean isStringSlicing() {
+		return stringSlicing;
+	}
+
+	/**
+	 * <p>
+	 * Sets whether string values parsed from arrays refer to the array rather than
+	 * copying it. When enabled, a string value without escapes that is parsed by
+	 * the <code>char[]</code> or {@link CharSequence} overloads of
+	 * <code>parse</code> is returned as a {@link JSONString} that refers to its
+	 * range of the input, and its {@link String} is only created once
+	 * {@link JSONString#getValue()} is called. This saves copying the contents of
+	 * strings that are never looked at, e.g. when most of a document is filtered
+	 * out and discarded.
+	 * </p>
+	 * <p>
+	 * Each such {@link JSONString} keeps the entire input array reachable until
+	 * its value is first requested, and reads the array only then, so the array
+	 * passed to {@link #parse(char[])} must not be modified afterwards. Object
+	 * keys, strings with escapes, and strings parsed from a {@link Reader} or
+	 * {@link CharacterStream} are always copied.
+	 * </p>
+	 *
+	 * @param stringSlicing Whether to keep unescaped strings as ranges of the
+	 *                      input.
+	 */
+	public void setStringSlicing(final boolean stringSlicing) {
+		this.stringSlicing = stringSlicing;
+	}
+
+	JSONObject createObject() {
+		return compactObjects ? new CompactJSONObject() : new JSONObject();
+	}
+
+	String internKey(final String key) {
+		return symbols == null ? key : symbols.intern(key);
+	}
+
 	public JSONValue parse(final CharacterStream stream) {
 		return parseElement(stream);
 	}
 
+	/**
+	 * Parses a {@link JSONValue} out of the provided <code>char</code> array. This
+	 * is equivalent to {@link #parse(CharacterStream)}, but scans the array
+	 * directly, which is considerably faster for large inputs.
+	 *
+	 * @param input The characters to parse.
+	 * @return The parsed {@link JSONValue}.
+	 */
+	public JSONValue parse(final char[] input) {
+		return parse(input, 0, input.length);
+	}
+
+	/**
+	 * Parses a {@link JSONValue} out of the specified range of the provided
+	 * <code>char</code> array.
+	 *
+	 * @param input  The array containing the characters to parse.
+	 * @param offset The index of the first character to parse.
+	 * @param length The number of characters, starting at <code>offset</code>,
+	 *               that are available to the parser.
+	 * @return The parsed {@link JSONValue}.
+	 * @see #parse(char[])
+	 */
+	public JSONValue parse(final char[] input, final int offset, final int length) {
+		if (offset < 0 || length < 0 || offset > input.length - length)
+			throw new IndexOutOfBoundsException();
+		final InputBuffer in = new InputBuffer(input, offset, length);
+		return parseValue(parseWhitespace(in), in);
+	}
+
+	/**
+	 * Parses a {@link JSONValue} out of the specified range of the provided
+	 * <code>char</code> array, as {@link #parse(char[], int, int)} does, and
+	 * stores the index of the character immediately following the parsed
+	 * {@link JSONValue} in <code>end[0]</code>, so that the caller can check
+	 * what, if anything, follows it.
+	 *
+	 * @param input  The array containing the characters to parse.
+	 * @param offset The index of the first character to parse.
+	 * @param length The number of characters, starting at <code>offset</code>,
+	 *               that are available to the parser.
+	 * @param end    The array that the end index is stored into.
+	 * @return The parsed {@link JSONValue}.
+	 */
+	JSONValue parse(final char[] input, final int offset, final int length, final int[] end) {
+		if (offset < 0 || length < 0 || offset > input.length - length)
+			throw new IndexOutOfBoundsException();
+		final InputBuffer in = new InputBuffer(input, offset, length);
+		final JSONValue value = parseValue(parseWhitespace(in), in);
+		end[0] = in.pos;
+		return value;
+	}
+
+	/**
+	 * Parses a {@link JSONValue} out of the provided {@link CharSequence}. The
+	 * contents of the {@link CharSequence} are copied into a <code>char</code>
+	 * array once, which is then parsed as by {@link #parse(char[])}.
+	 *
+	 * @param input The {@link CharSequence} to parse.
+	 * @return The parsed {@link JSONValue}.
+	 */
+	public JSONValue parse(final CharSequence input) {
+		final int len = input.length();
+		final char[] chars = new char[len];
+		if (input instanceof String)
+			((String) input).getChars(0, len, chars, 0);
+		else
+			for (int i = 0; i < len; i++)
+				chars[i] = input.charAt(i);
+		return parse(chars);
+	}
+
+	/**
+	 * <p>
+	 * Parses a {@link JSONValue} out of the provided {@link Reader}. Characters are
+	 * read from the {@link Reader} in blocks into an internal buffer, which is then
+	 * scanned as by {@link #parse(char[])}.
+	 * </p>
+	 * <p>
+	 * Because input is read in blocks, the {@link Reader} may be left positioned
+	 * past the end of the parsed {@link JSONValue}. The {@link Reader} is not
+	 * closed.
+	 * </p>
+	 *
+	 * @param reader The {@link Reader} to parse from.
+	 * @return The parsed {@link JSONValue}.
+	 */
+	public JSONValue parse(final Reader reader) {
+		final InputBuffer in = new InputBuffer(reader);
+		return parseValue(parseWhitespace(in), in);
+	}
+
 	private JSONValue parseElement(final CharacterStream stream) {
 		final int c = parseWhitespace(stream);
 		return parseValue(c, new CharacterSequence(stream));
 	}
 
-	private JSONArray parseHeadlessArray(final CharacterSequence stream) {
+	JSONArray parseHeadlessArray(final CharacterSequence stream) {
 		final JSONArray arr = new JSONArray();
 
 		int c = parseWhitespace(stream);
@@ -101,6 +378,25 @@ public class JSONParser {
 
 	}
 
+	private JSONArray parseHeadlessArray(final InputBuffer in) {
+		final JSONArray arr = new JSONArray();
+
+		int c = parseWhitespace(in);
+		if (c == ']')
+			return arr;
+		while (true) {
+			arr.add(parseValue(c, in));
+			c = parseWhitespace(in);
+			if (c == ']')
+				return arr;
+			else if (c == ',')
+				c = parseWhitespace(in);
+			else
+				throw new IllegalArgumentException(
+						c == -1 ? "Malformed JSON. End of input reached while parsing array." : "Malformed JSON.");
+		}
+	}
+
 	/**
 	 * Parses the portion of an object immediately following the opening brace
 	 * (<code>{</code>).
@@ -116,8 +412,8 @@ public class JSONParser {
 	 *          immediately following the last character of the parsed
 	 *          {@link JSONObject}.</font>
 	 */
-	private JSONObject parseHeadlessObject(final CharacterSequence stream) {
-		final JSONObject obj = new JSONObject();
+	JSONObject parseHeadlessObject(final CharacterSequence stream) {
+		final JSONObject obj = createObject();
 
 		int c = parseWhitespace(stream);
 		if (c == '}')
@@ -132,7 +428,7 @@ public class JSONParser {
 		else if (c != ':')
 			throw new IllegalArgumentException("The key string in an object was not followed by a ':'.");
 		else
-			obj.put(str.getValue(), parseValue(stream.next(), stream));
+			obj.put(internKey(str.getValue()), parseValue(stream.next(), stream));
 		while ((c = parseWhitespace(stream)) == ',') {
 			c = parseWhitespace(stream);
 			if (c != '"')
@@ -144,7 +440,7 @@ public class JSONParser {
 			else if (c != ':')
 				throw new IllegalArgumentException("The key string in an object was not followed by a ':'.");
 			else
-				obj.put(str.getValue(), parseValue(stream.next(), stream));
+				obj.put(internKey(str.getValue()), parseValue(stream.next(), stream));
 		}
 		if (c == '}')
 			return obj;
@@ -152,6 +448,31 @@ public class JSONParser {
 			throw new IllegalArgumentException("Malformed JSON." + (char) c);
 	}
 
+	private JSONObject parseHeadlessObject(final InputBuffer in) {
+		final JSONObject obj = createObject();
+
+		int c = parseWhitespace(in);
+		if (c == '}')
+			return obj;
+		while (true) {
+			// A key string is expected.
+			if (c != '"')
+				throw new IllegalArgumentException("Malformed JSON.");
+			final String key = parseString(in, true);
+			c = parseWhitespace(in);
+			if (c == -1)
+				throw new IllegalArgumentException("Malformed JSON. End of input reached while parsing object.");
+			else if (c != ':')
+				throw new IllegalArgumentException("The key string in an object was not followed by a ':'.");
+			obj.put(key, parseValue(in.next(), in));
+			if ((c = parseWhitespace(in)) == '}')
+				return obj;
+			else if (c != ',')
+				throw new IllegalArgumentException("Malformed JSON." + (char) c);
+			c = parseWhitespace(in);
+		}
+	}
+
 	/**
 	 * Parses the portion of a string immediately following the opening quotation
 	 * mark (<code>"</code>). This method leaves off such that the stream's
@@ -163,7 +484,7 @@ public class JSONParser {
 	 *               quotation mark.
 	 * @return The parsed {@link String}.
 	 */
-	private JSONString parseHeadlessString(final CharacterSequence stream) {
+	JSONString parseHeadlessString(final CharacterSequence stream) {
 		final StringBuilder builder = new StringBuilder();
 		int c;
 		boolean escaped = false;
@@ -247,55 +568,268 @@ public class JSONParser {
 		}
 	}
 
-	private JSONNumber parseNumber(int curr, final CharacterSequence stream) {
-		final boolean neg = curr == '-';
-		if (neg)
+	/**
+	 * Parses the portion of a string immediately following the opening quotation
+	 * mark. Runs of characters that need no processing are located by index and
+	 * copied out of the buffer in bulk; a {@link StringBuilder} is only created if
+	 * the string contains an escape or an unescaped control, or if it spans a
+	 * buffer refill.
+	 *
+	 * @param in The buffer, positioned immediately after the opening quotation
+	 *           mark.
+	 * @return The parsed {@link JSONString}.
+	 */
+	private JSONString parseHeadlessString(final InputBuffer in) {
+		if (stringSlicing && in.reader == null) {
+			final char[] buf = in.buf;
+			final int start = in.pos, lim = in.lim;
+			int p = start;
+			char c = 0;
+			while (p < lim && (c = buf[p]) != '"' && c != '\\' && c >= ' ')
+				p++;
+			if (p < lim && c == '"') {
+				in.pos = p + 1;
+				return new JSONString(buf, start, p - start);
+			}
+		}
+		return new JSONString(parseString(in, false));
+	}
+
+	/**
+	 * Parses the portion of a string immediately following the opening quotation
+	 * mark and returns its value. If <code>key</code> is <code>true</code> and
+	 * {@link #isKeyInterning() key interning} is enabled, the value is interned,
+	 * and unescaped keys that are already in the symbol table are looked up
+	 * straight from the buffer without creating a new {@link String}.
+	 *
+	 * @param in  The buffer, positioned immediately after the opening quotation
+	 *            mark.
+	 * @param key Whether the string is an object key.
+	 * @return The parsed {@link String}.
+	 */
+	private String parseString(final InputBuffer in, final boolean key) {
+		StringBuilder builder = null;
+		while (true) {
+			final char[] buf = in.buf;
+			final int start = in.pos, lim = in.lim;
+			int p = start;
+			char c = 0;
+			while (p < lim && (c = buf[p]) != '"' && c != '\\' && c >= ' ')
+				p++;
+			if (p == lim) {
+				if (builder == null)
+					builder = new StringBuilder(p - start + 16);
+				builder.append(buf, start, p - start);
+				in.pos = p;
+				if (!in.fill())
+					throw new IllegalArgumentException("Malformed JSON. End of input found before string termination.");
+				continue;
+			}
+			in.pos = p + 1;
+			if (c == '"')
+				if (builder != null)
+					return key ? internKey(builder.append(buf, start, p - start).toString())
+							: builder.append(buf, start, p - start).toString();
+				else
+					return key && symbols != null ? symbols.intern(buf, start, p - start)
+							: new String(buf, start, p - start);
+			if (builder == null)
+				builder = new StringBuilder(p - start + 16);
+			builder.append(buf, start, p - start);
+			if (c == '\\')
+				parseEscape(in, builder);
+			else
+				parseControl(c, builder);
+		}
+	}
+
+	/**
+	 * Handles a control character found within a string literal, as specified by
+	 * the {@link #getUnescapedControlsInStringsBehavior() unescaped controls
+	 * behavior}. Control characters that are not one of <code>\b</code>,
+	 * <code>\f</code>, <code>\n</code>, <code>\r</code>, or <code>\t</code> are
+	 * always kept.
+	 *
+	 * @param c       The control character.
+	 * @param builder The {@link StringBuilder} to add kept characters to.
+	 */
+	private void parseControl(final int c, final StringBuilder builder) {
+		switch (c) {
+		case '\b':
+		case '\f':
+		case '\n':
+		case '\r':
+		case '\t':
+			switch (unescapedControlsInStringsBehavior) {
+			case ERROR:
+				throw new IllegalArgumentException(
+						"Malformed JSON. Unescaped control character found in string literal.");
+			case KEEP:
+				builder.append((char) c);
+			}
+			break;
+		default:
+			builder.append((char) c);
+		}
+	}
+
+	/**
+	 * Parses the portion of an escape sequence immediately following the
+	 * backslash and appends the escaped character to the provided
+	 * {@link StringBuilder}.
+	 *
+	 * @param in      The buffer, positioned immediately after the backslash.
+	 * @param builder The {@link StringBuilder} to append to.
+	 */
+	private void parseEscape(final InputBuffer in, final StringBuilder builder) {
+		int c;
+		while ((c = in.next()) == '\b' || c == '\f' || c == '\n' || c == '\r' || c == '\t')
+			parseControl(c, builder);
+		switch (c) {
+		case 'b':
+			builder.append('\b');
+			break;
+		case 'f':
+			builder.append('\f');
+			break;
+		case 'n':
+			builder.append('\n');
+			break;
+		case 'r':
+			builder.append('\r');
+			break;
+		case 't':
+			builder.append('\t');
+			break;
+		case 'u':
+			int n = 0;
+			for (int nc, i = 0; i < 4; i++) {
+				if ((nc = in.next()) == -1)
+					throw new IllegalArgumentException("Malformed JSON. End of input found before string termination.");
+				if (!isHexDigit((char) nc))
+					throw new IllegalArgumentException("Malformed JSON.");
+				n = n << 4 | Character.digit(nc, 16);
+			}
+			builder.append((char) n);
+			break;
+		case '"':
+		case '\'':
+		case '\\':
+			builder.append((char) c);
+			break;
+		case -1:
+			throw new IllegalArgumentException("Malformed JSON. End of input found before string termination.");
+		default:
+			if (strictEscapeHandling)
+				throw new IllegalArgumentException("Malformed JSON. An illegal escape was found: " + (char) c);
+			builder.append('\\').append((char) c);
+		}
+	}
+
+	JSONNumber parseNumber(int curr, final CharacterSequence stream) {
+		final StringBuilder number = new StringBuilder();
+		if (curr == '-') {
+			number.append('-');
 			curr = stream.next();
-		final StringBuilder left = new StringBuilder();
+		}
 
 		if (curr == -1)
 			throw new IllegalArgumentException("Malformed JSON. End of input reached while parsing number.");
 		if (isDigit1_9((char) curr)) {
-			left.append((char) curr);
-			while (Character.isDigit(curr = stream.next()))
-				left.append((char) curr);
+			number.append((char) curr);
+			while (isDigit(curr = stream.next()))
+				number.append((char) curr);
 		} else if (curr != '0')
 			throw new IllegalArgumentException("Malformed JSON.");
 		else {
-			left.append('0');
+			number.append('0');
 			curr = stream.next();
 		}
 
-		StringBuilder right = null;
 		if (curr == '.') {
-			right = new StringBuilder();
+			number.append('.');
 			curr = stream.next();
 			if (curr == -1)
 				throw new IllegalArgumentException("Malformed JSON. End of input reached while parsing number.");
-			if (!Character.isDigit(curr))
+			if (!isDigit(curr))
 				throw new IllegalArgumentException("Malformed JSON.");
-			right.append((char) curr);
-			while (Character.isDigit(curr = stream.next()))
-				right.append((char) curr);
+			number.append((char) curr);
+			while (isDigit(curr = stream.next()))
+				number.append((char) curr);
 		}
 
-		StringBuilder exp = null;
 		if (curr == 'e' || curr == 'E') {
-			exp = new StringBuilder();
+			number.append('e');
 			curr = stream.next();
+			if (curr == '-' || curr == '+') {
+				number.append((char) curr);
+				curr = stream.next();
+			}
 			if (curr == -1)
 				throw new IllegalArgumentException("Malformed JSON. End of input reached while parsing number.");
-			if ((curr == '-' || curr == '+') || Character.isDigit(curr))
-				exp.append((char) curr);
-			else
+			if (!isDigit(curr))
 				throw new IllegalArgumentException("Malformed JSON.");
-			while (Character.isDigit(curr = stream.next()))
-				right.append((char) curr);
+			number.append((char) curr);
+			while (isDigit(curr = stream.next()))
+				number.append((char) curr);
 		}
 		stream.back();
 
-		return new JSONNumber(neg, left.toString(), right == null ? null : right.toString(),
-				exp == null ? null : exp.toString());
+		final char[] chars = new char[number.length()];
+		number.getChars(0, chars.length, chars, 0);
+		return JSONNumber.parse(chars, 0, chars.length);
+	}
+
+	/**
+	 * Parses a number whose first character, <code>curr</code>, was the last
+	 * character returned by the provided {@link InputBuffer}. The number is
+	 * validated as it is scanned, and is then decoded directly out of the buffer.
+	 *
+	 * @param curr The first character of the number.
+	 * @param in   The buffer.
+	 * @return The parsed {@link JSONNumber}.
+	 */
+	private JSONNumber parseNumber(int curr, final InputBuffer in) {
+		in.mark = in.pos - 1;
+		if (curr == '-')
+			curr = in.next();
+
+		if (curr == -1)
+			throw new IllegalArgumentException("Malformed JSON. End of input reached while parsing number.");
+		if (isDigit1_9((char) curr))
+			while (isDigit(curr = in.next()))
+				;
+		else if (curr != '0')
+			throw new IllegalArgumentException("Malformed JSON.");
+		else
+			curr = in.next();
+
+		if (curr == '.') {
+			curr = in.next();
+			if (curr == -1)
+				throw new IllegalArgumentException("Malformed JSON. End of input reached while parsing number.");
+			if (!isDigit(curr))
+				throw new IllegalArgumentException("Malformed JSON.");
+			while (isDigit(curr = in.next()))
+				;
+		}
+
+		if (curr == 'e' || curr == 'E') {
+			curr = in.next();
+			if (curr == '-' || curr == '+')
+				curr = in.next();
+			if (curr == -1)
+				throw new IllegalArgumentException("Malformed JSON. End of input reached while parsing number.");
+			if (!isDigit(curr))
+				throw new IllegalArgumentException("Malformed JSON.");
+			while (isDigit(curr = in.next()))
+				;
+		}
+		final int length = in.offset(curr), start = in.mark;
+		if (curr != -1)
+			in.pos--;
+		in.mark = -1;
+		return JSONNumber.parse(in.buf, start, start + length);
 	}
 
 	/**
@@ -352,6 +886,37 @@ public class JSONParser {
 		}
 	}
 
+	private JSONValue parseValue(int curr, final InputBuffer in) {
+		if (Character.isWhitespace(curr))
+			curr = parseWhitespace(in);
+		switch (curr) {
+		case '{':
+			return parseHeadlessObject(in);
+		case '[':
+			return parseHeadlessArray(in);
+		case '"':
+			return parseHeadlessString(in);
+		case 't':
+			if (in.next() != 'r' || in.next() != 'u' || in.next() != 'e')
+				throw new IllegalArgumentException("Malformed JSON.");
+			return JSONConstant.TRUE;
+		case 'f':
+			if (in.next() != 'a' || in.next() != 'l' || in.next() != 's' || in.next() != 'e')
+				throw new IllegalArgumentException("Malformed JSON.");
+			return JSONConstant.FALSE;
+		case 'n':
+			if (in.next() != 'u' || in.next() != 'l' || in.next() != 'l')
+				throw new IllegalArgumentException("Malformed JSON.");
+			return null;
+		case -1:
+			throw new IllegalArgumentException("End of JSON encountered while parsing value.");
+		default:
+			if (curr == '-' || Character.isDigit(curr))
+				return parseNumber(curr, in);
+			throw new IllegalArgumentException("Malformed JSON.");
+		}
+	}
+
 	private int parseWhitespace(final CharacterStream stream) {
 		int c;
 		while (Character.isWhitespace(c = stream.next()))
@@ -359,6 +924,19 @@ public class JSONParser {
 		return c;
 	}
 
+	private int parseWhitespace(final InputBuffer in) {
+		do {
+			final char[] buf = in.buf;
+			for (int p = in.pos, lim = in.lim; p < lim; p++)
+				if (!Character.isWhitespace(buf[p])) {
+					in.pos = p + 1;
+					return buf[p];
+				}
+			in.pos = in.lim;
+		} while (in.fill());
+		return -1;
+	}
+
 	public void setStrictEscapeHandling(final boolean strictEscapeHandling) {
 		this.strictEscapeHandling = strictEscapeHandling;
 	}
@@ -0,0 +1,339 @@
+package pala.libs.generic.json;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import pala.libs.generic.json.JSONTokenReader.Token;
+import pala.libs.generic.streams.CharacterStream;
+
+/**
+ * <p>
+ * Extracts the values at a fixed set of paths from JSON input without parsing
+ * the rest of the input into {@link JSONValue}s. The input is read with a
+ * {@link JSONTokenReader}; subtrees that no path can match are skipped over
+ * without creating any {@link JSONObject}s, {@link JSONArray}s, strings or
+ * numbers, and only the selected values are built.
+ * </p>
+ * <p>
+ * Paths use a small subset of JSONPath syntax. Every path starts with
+ * <code>$</code>, the root value, followed by any number of steps:
+ * </p>
+ * <ul>
+ * <li><code>.name</code> or <code>['name']</code> selects the value of the key
+ * <code>name</code> in an object. The bracketed form allows any key; within
+ * it, <code>\'</code> and <code>\\</code> stand for <code>'</code> and
+ * <code>\</code>.</li>
+ * <li><code>[n]</code> selects the <code>n</code>th (zero-based) element of an
+ * array.</li>
+ * <li><code>.*</code> or <code>[*]</code> selects every value of an object or
+ * every element of an array.</li>
+ * </ul>
+ * <p>
+ * For example, <code>$.user.id</code> selects the <code>id</code> of the
+ * <code>user</code> object, and <code>$.events[*].ts</code> selects the
+ * <code>ts</code> of every element of the <code>events</code> array. Steps that
+ * do not match the shape of the input (e.g. a key step applied to an array)
+ * simply select nothing.
+ * </p>
+ * <p>
+ * A {@link JSONProjection} is immutable once created and may be used from
+ * multiple threads at once.
+ * </p>
+ *
+ * @author Palanath
+ *
+ */
+public class JSONProjection {
+
+	/**
+	 * One step of a path, or the root. Paths that share a prefix share the
+	 * {@link Node}s for that prefix.
+	 */
+	private static final class Node {
+		private final Map<String, Node> keys = new HashMap<>();
+		private final Map<Integer, Node> indices = new HashMap<>();
+		private Node wildcard;
+		/**
+		 * The indices (in {@link JSONProjection#paths}) of the paths that end at this
+		 * {@link Node}.
+		 */
+		private final List<Integer> ends = new ArrayList<>(1);
+
+		private void collectIndex(final int index, final List<Node> dest) {
+			final Node n = indices.get(index);
+			if (n != null)
+				dest.add(n);
+			if (wildcard != null)
+				dest.add(wildcard);
+		}
+
+		private void collectKey(final String key, final List<Node> dest) {
+			final Node n = keys.get(key);
+			if (n != null)
+				dest.add(n);
+			if (wildcard != null)
+				dest.add(wildcard);
+		}
+
+		private boolean isLeaf() {
+			return keys.isEmpty() && indices.isEmpty() && wildcard == null;
+		}
+	}
+
+	private final String[] paths;
+	private final Node root = new Node();
+
+	/**
+	 * Creates a {@link JSONProjection} that selects the values at the provided
+	 * paths.
+	 *
+	 * @param paths The paths, as described in the {@link JSONProjection class
+	 *              documentation}.
+	 * @throws IllegalArgumentException If any of the paths is malformed.
+	 */
+	public JSONProjection(final String... paths) throws IllegalArgumentException {
+		this.paths = paths.clone();
+		for (int i = 0; i < paths.length; i++)
+			compile(paths[i]).ends.add(i);
+	}
+
+	/**
+	 * Returns the paths of this {@link JSONProjection}, in the order they were
+	 * provided.
+	 *
+	 * @return A new array containing the paths.
+	 */
+	public String[] getPaths() {
+		return paths.clone();
+	}
+
+	/**
+	 * Reads one JSON value from the provided {@link CharacterStream} and returns
+	 * the values selected by each path. See {@link #project(JSONTokenReader)}.
+	 *
+	 * @param json The {@link CharacterStream} to read from.
+	 * @return The selected values, keyed by path.
+	 */
+	public Map<String, List<JSONValue>> project(final CharacterStream json) {
+		return project(new JSONTokenReader(json));
+	}
+
+	/**
+	 * <p>
+	 * Reads the next top-level JSON value from the provided
+	 * {@link JSONTokenReader} and returns the values selected by each path of this
+	 * {@link JSONProjection}. The returned {@link Map} contains every path, in the
+	 * order the paths were provided; each path maps to the values it selected, in
+	 * document order, or to an empty {@link List} if it selected nothing. A
+	 * selected JSON <code>null</code> is represented by a <code>null</code>
+	 * element.
+	 * </p>
+	 * <p>
+	 * Upon return, the reader is positioned at the end of the value that was read,
+	 * so further top-level values (such as the next line of a JSON Lines input)
+	 * can be projected by calling this method again. If the reader has no more
+	 * values, <code>null</code> is returned.
+	 * </p>
+	 *
+	 * @param reader The {@link JSONTokenReader} to read from.
+	 * @return The selected values, keyed by path, or <code>null</code> if the
+	 *         reader was at the end of its input.
+	 * @throws IllegalArgumentException If the input is malformed.
+	 */
+	public Map<String, List<JSONValue>> project(final JSONTokenReader reader) throws IllegalArgumentException {
+		if (reader.next() == null)
+			return null;
+		final List<List<JSONValue>> results = new ArrayList<>(paths.length);
+		for (int i = 0; i < paths.length; i++)
+			results.add(new ArrayList<>(1));
+		walk(reader, Collections.singletonList(root), results);
+
+		final Map<String, List<JSONValue>> map = new LinkedHashMap<>();
+		for (int i = 0; i < paths.length; i++)
+			map.put(paths[i], results.get(i));
+		return map;
+	}
+
+	/**
+	 * Reads one JSON value from the provided {@link String}. See
+	 * {@link #project(JSONTokenReader)}.
+	 *
+	 * @param json The JSON text.
+	 * @return The selected values, keyed by path.
+	 */
+	public Map<String, List<JSONValue>> project(final String json) {
+		return project(CharacterStream.from(json));
+	}
+
+	/**
+	 * Returns the first value selected by the specified path from the provided
+	 * JSON text, or <code>null</code> if the path selects nothing (or selects a
+	 * JSON <code>null</code>).
+	 *
+	 * @param json The JSON text.
+	 * @param path The path.
+	 * @return The first selected value.
+	 * @throws IllegalArgumentException If the path or JSON is malformed.
+	 */
+	public static JSONValue select(final String json, final String path) throws IllegalArgumentException {
+		final List<JSONValue> values = new JSONProjection(path).project(json).get(path);
+		return values.isEmpty() ? null : values.get(0);
+	}
+
+	private Node compile(final String path) {
+		if (path.isEmpty() || path.charAt(0) != '$')
+			throw new IllegalArgumentException("Malformed JSON path; paths must start with '$': " + path);
+		Node node = root;
+		for (int i = 1; i < path.length();) {
+			final char c = path.charAt(i);
+			if (c == '.') {
+				int end = ++i;
+				while (end < path.length() && path.charAt(end) != '.' && path.charAt(end) != '[')
+					end++;
+				if (end == i)
+					throw new IllegalArgumentException("Malformed JSON path; empty key at index " + i + ": " + path);
+				final String key = path.substring(i, end);
+				node = key.equals("*") ? wildcard(node) : child(node.keys, key);
+				i = end;
+			} else if (c == '[') {
+				if (++i == path.length())
+					throw new IllegalArgumentException("Malformed JSON path; unclosed '[': " + path);
+				if (path.charAt(i) == '\'') {
+					final StringBuilder key = new StringBuilder();
+					for (i++;; i++)
+						if (i >= path.length())
+							throw new IllegalArgumentException("Malformed JSON path; unclosed quoted key: " + path);
+						else if (path.charAt(i) == '\\' && i + 1 < path.length())
+							key.append(path.charAt(++i));
+						else if (path.charAt(i) == '\'')
+							break;
+						else
+							key.append(path.charAt(i));
+					node = child(node.keys, key.toString());
+					i++;
+				} else if (path.charAt(i) == '*') {
+					node = wildcard(node);
+					i++;
+				} else {
+					final int start = i;
+					while (i < path.length() && path.charAt(i) >= '0' && path.charAt(i) <= '9')
+						i++;
+					if (start == i)
+						throw new IllegalArgumentException(
+								"Malformed JSON path; expected an index, '*' or a quoted key at index " + i + ": " + path);
+					final int index;
+					try {
+						index = Integer.parseInt(path.substring(start, i));
+					} catch (final NumberFormatException e) {
+						throw new IllegalArgumentException("Malformed JSON path; index too large: " + path, e);
+					}
+					node = child(node.indices, index);
+				}
+				if (i >= path.length() || path.charAt(i) != ']')
+					throw new IllegalArgumentException("Malformed JSON path; expected ']' at index " + i + ": " + path);
+				i++;
+			} else
+				throw new IllegalArgumentException(
+						"Malformed JSON path; unexpected character '" + c + "' at index " + i + ": " + path);
+		}
+		return node;
+	}
+
+	private static <K> Node child(final Map<K, Node> children, final K key) {
+		Node n = children.get(key);
+		if (n == null)
+			children.put(key, n = new Node());
+		return n;
+	}
+
+	private static Node wildcard(final Node parent) {
+		return parent.wildcard == null ? parent.wildcard = new Node() : parent.wildcard;
+	}
+
+	/**
+	 * Adds the values under the provided, already built {@link JSONValue} that are
+	 * selected by the provided {@link Node}s to the results.
+	 */
+	private static void select(final JSONValue value, final List<Node> nodes, final List<List<JSONValue>> results) {
+		for (final Node n : nodes)
+			for (final int i : n.ends)
+				results.get(i).add(value);
+
+		final List<Node> next = new ArrayList<>();
+		if (value instanceof JSONObject)
+			for (final Entry<String, JSONValue> e : ((JSONObject) value).entrySet()) {
+				for (final Node n : nodes)
+					n.collectKey(e.getKey(), next);
+				if (!next.isEmpty()) {
+					select(e.getValue(), next, results);
+					next.clear();
+				}
+			}
+		else if (value instanceof JSONArray) {
+			final JSONArray arr = (JSONArray) value;
+			for (int i = 0; i < arr.size(); i++) {
+				for (final Node n : nodes)
+					n.collectIndex(i, next);
+				if (!next.isEmpty()) {
+					select(arr.get(i), next, results);
+					next.clear();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Processes the value starting at the reader's current token, which is
+	 * reached by the provided {@link Node}s. If any of the {@link Node}s ends a
+	 * path, the whole value is built, since it is part of the result anyway.
+	 * Otherwise, containers are walked token by token and every member that no
+	 * {@link Node} continues into is skipped.
+	 */
+	private static void walk(final JSONTokenReader reader, final List<Node> nodes,
+			final List<List<JSONValue>> results) {
+		boolean leaves = true;
+		for (final Node n : nodes) {
+			if (!n.ends.isEmpty()) {
+				select(reader.readValue(), nodes, results);
+				return;
+			}
+			leaves &= n.isLeaf();
+		}
+		if (leaves) {
+			reader.skipChildren();
+			return;
+		}
+
+		final List<Node> next = new ArrayList<>();
+		if (reader.getToken() == Token.START_OBJECT)
+			while (reader.next() != Token.END_OBJECT) {
+				final String key = reader.getString();
+				for (final Node n : nodes)
+					n.collectKey(key, next);
+				if (next.isEmpty())
+					reader.skipValue();
+				else {
+					reader.next();
+					walk(reader, next, results);
+					next.clear();
+				}
+			}
+		else if (reader.getToken() == Token.START_ARRAY)
+			for (int i = 0; reader.next() != Token.END_ARRAY; i++) {
+				for (final Node n : nodes)
+					n.collectIndex(i, next);
+				if (next.isEmpty())
+					reader.skipChildren();
+				else {
+					walk(reader, next, results);
+					next.clear();
+				}
+			}
+	}
+
+}
@@ -1,6 +1,7 @@
 package pala.libs.generic.json;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -24,16 +25,19 @@ public interface JSONSavable {
 	}
 
 	/**
-	 * Writes this {@link JSONSavable} to the provided {@link Writer} then calls the
-	 * {@link Writer}'s {@link Writer#flush()} method. This method does not close
-	 * the {@link Writer} after it completes.
+	 * Writes this {@link JSONSavable} to the provided {@link Writer} using a
+	 * {@link JSONWriter}, then calls the {@link Writer}'s {@link Writer#flush()}
+	 * method. The JSON text is written out as the tree is walked, rather than being
+	 * built in memory first. This method does not close the {@link Writer} after it
+	 * completes.
 	 * 
 	 * @param out The {@link Writer} to write to.
 	 * @throws IOException If an {@link IOException} occurs while writing.
 	 */
 	default void save(Writer out) throws IOException {
-		out.write(toJSON().toString());
-		out.flush();
+		final JSONWriter writer = new JSONWriter(out);
+		writer.write(toJSON());
+		writer.flush();
 	}
 
 	/**
@@ -60,6 +64,34 @@ public interface JSONSavable {
 		}
 	}
 
+	/**
+	 * Writes this {@link JSONSavable} to the provided {@link OutputStream} in the
+	 * binary format of {@link JSONBinaryCodec}, then flushes the
+	 * {@link OutputStream}. This method does not close the provided
+	 * {@link OutputStream}.
+	 * 
+	 * @param out The {@link OutputStream} to write this object to.
+	 * @throws IOException If an {@link IOException} occurs while writing.
+	 */
+	default void saveBinary(OutputStream out) throws IOException {
+		JSONBinaryCodec.encode(toJSON(), out);
+	}
+
+	/**
+	 * Saves this {@link JSONSavable} to the provided {@link File} in the binary
+	 * format of {@link JSONBinaryCodec}, creating or overwriting the {@link File}.
+	 * 
+	 * @param file The {@link File} to save to.
+	 * @throws IOException If an {@link IOException} occurs during the saving
+	 *                     process.
+	 * @see #save(File)
+	 */
+	default void saveBinary(File file) throws IOException {
+		try (FileOutputStream fos = new FileOutputStream(file)) {
+			saveBinary(fos);
+		}
+	}
+
 	default String saveToString() {
 		return toJSON().toString();
 	}
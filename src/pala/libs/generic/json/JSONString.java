@@ -4,6 +4,22 @@ import java.util.Collection;
 
 import pala.libs.generic.JavaTools;
 
+/**
+ * <p>
+ * Represents a JSON string.
+ * </p>
+ * <p>
+ * A {@link JSONString} created by a {@link JSONParser} with
+ * {@link JSONParser#setStringSlicing(boolean) string slicing} enabled may refer
+ * to a range of the parser's input rather than hold a {@link String}. The
+ * {@link String} is created from the range the first time
+ * {@link #getValue()} is called, after which the input is no longer referenced.
+ * Until then, the input array is kept reachable, and must not be modified.
+ * </p>
+ *
+ * @author Palanath
+ *
+ */
 public class JSONString implements JSONValue {
 	/**
 	 * SUID
@@ -24,7 +40,20 @@ public class JSONString implements JSONValue {
 			t.add(j.getValue());
 	}
 
-	private final String value;
+	/**
+	 * The value, or <code>null</code> until it is first needed if this
+	 * {@link JSONString} was created from a range of an array. It is
+	 * <code>volatile</code> so that a {@link String} created by one thread is seen
+	 * whole by every other.
+	 */
+	private volatile String value;
+	/**
+	 * The array that the value has not yet been copied out of, or
+	 * <code>null</code> once it has. This is written after {@link #value}, so a
+	 * thread that sees it as <code>null</code> also sees {@link #value}.
+	 */
+	private transient volatile char[] chars;
+	private transient int offset, length;
 
 	/**
 	 * Constructs a {@link JSONString} that holds the provided {@link String}. The
@@ -38,17 +67,48 @@ public class JSONString implements JSONValue {
 		this.value = value;
 	}
 
+	/**
+	 * Constructs a {@link JSONString} whose value is the specified range of the
+	 * provided array. The array is not copied, so its contents in the range must
+	 * not change afterwards.
+	 *
+	 * @param chars  The array holding the value.
+	 * @param offset The index of the first character of the value.
+	 * @param length The number of characters in the value.
+	 */
+	JSONString(final char[] chars, final int offset, final int length) {
+		this.offset = offset;
+		this.length = length;
+		this.chars = chars;
+	}
+
 	public String getValue() {
-		return value;
+		String v = value;
+		if (v == null) {
+			final char[] c = chars;
+			if (c == null)
+				return value;
+			value = v = new String(c, offset, length);
+			chars = null;
+		}
+		return v;
 	}
 
 	@Override
 	public String toString() {
-		return '"' + JSONValue.escape(value) + '"';
+		return '"' + JSONValue.escape(getValue()) + '"';
 	}
 
 	@Override
 	public String toString(final String indentation) {
 		return toString();
 	}
+
+	/**
+	 * Serializes this {@link JSONString} with its value as a {@link String}.
+	 */
+	private Object writeReplace() {
+		getValue();
+		return this;
+	}
 }
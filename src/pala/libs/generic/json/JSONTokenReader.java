@@ -0,0 +1,365 @@
+package pala.libs.generic.json;
+
+import java.util.Arrays;
+
+import pala.libs.generic.json.JSONParser.CharacterSequence;
+import pala.libs.generic.streams.CharacterStream;
+
+/**
+ * <p>
+ * A pull-style reader that reads JSON from a {@link CharacterStream} one
+ * {@link Token} at a time, without building a {@link JSONObject} or
+ * {@link JSONArray} tree. Each call to {@link #next()} reads just enough of the
+ * input to produce the next {@link Token}; the reader itself only retains the
+ * nesting of the containers it is currently inside of, so documents of any
+ * size can be processed in constant memory.
+ * </p>
+ * <p>
+ * The content of the current {@link Token} can be obtained with
+ * {@link #getString()} (for {@link Token#FIELD_NAME} and {@link Token#STRING})
+ * and {@link #getNumber()} (for {@link Token#NUMBER}). Whole subtrees can be
+ * skipped without being parsed into objects with {@link #skipChildren()}, or
+ * parsed into a {@link JSONValue} with {@link #readValue()}.
+ * </p>
+ * <p>
+ * The input may consist of any number of top-level values separated by
+ * whitespace (e.g. a JSON Lines file). {@link #next()} returns
+ * <code>null</code> once the input is exhausted.
+ * </p>
+ * <p>
+ * Strings and numbers are parsed using the provided {@link JSONParser}, so its
+ * {@link JSONParser#isStrictEscapeHandling() escape handling} and
+ * {@link JSONParser#getUnescapedControlsInStringsBehavior() unescaped controls
+ * behavior} apply.
+ * </p>
+ * <p>
+ * Characters are pulled from the stream one at a time, so callers reading from
+ * a file should wrap it in a buffered reader before calling
+ * {@link CharacterStream#from(java.io.Reader)}.
+ * </p>
+ *
+ * @author Palanath
+ *
+ */
+public class JSONTokenReader {
+
+	public enum Token {
+		START_OBJECT, END_OBJECT, START_ARRAY, END_ARRAY,
+		/**
+		 * A key within an object. The key can be obtained with
+		 * {@link JSONTokenReader#getString()}. The next token is always the start of
+		 * the key's value.
+		 */
+		FIELD_NAME,
+		/**
+		 * A string value. The value can be obtained with
+		 * {@link JSONTokenReader#getString()}.
+		 */
+		STRING,
+		/**
+		 * A number value. The value can be obtained with
+		 * {@link JSONTokenReader#getNumber()}.
+		 */
+		NUMBER, TRUE, FALSE, NULL;
+	}
+
+	private final JSONParser parser;
+	private final CharacterSequence stream;
+
+	/**
+	 * The containers that the reader is currently within, where
+	 * <code>true</code> denotes an object and <code>false</code> an array. Only
+	 * the first {@link #depth} elements are used.
+	 */
+	private boolean[] containers = new boolean[16];
+	private int depth;
+	/**
+	 * <code>true</code> if no element has yet been read from the innermost
+	 * container, in which case no comma is expected before the next element.
+	 */
+	private boolean first;
+
+	private Token token;
+	private String string;
+	private JSONNumber number;
+
+	public JSONTokenReader(final CharacterStream stream) {
+		this(new JSONParser(), stream);
+	}
+
+	public JSONTokenReader(final JSONParser parser, final CharacterStream stream) {
+		this.parser = parser;
+		this.stream = new CharacterSequence(stream);
+	}
+
+	/**
+	 * Returns the number of containers (objects and arrays) that the reader is
+	 * currently within. {@link Token#START_OBJECT} and {@link Token#START_ARRAY}
+	 * increase the depth, and {@link Token#END_OBJECT} and
+	 * {@link Token#END_ARRAY} decrease it.
+	 *
+	 * @return The current nesting depth.
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Returns the value of the current {@link Token#NUMBER} token.
+	 *
+	 * @return The {@link JSONNumber}.
+	 * @throws IllegalStateException If the current token is not a
+	 *                               {@link Token#NUMBER}.
+	 */
+	public JSONNumber getNumber() throws IllegalStateException {
+		if (token != Token.NUMBER)
+			throw new IllegalStateException("The current token is not a number: " + token);
+		return number;
+	}
+
+	/**
+	 * Returns the key of the current {@link Token#FIELD_NAME} token or the value
+	 * of the current {@link Token#STRING} token.
+	 *
+	 * @return The {@link String}.
+	 * @throws IllegalStateException If the current token is not a
+	 *                               {@link Token#FIELD_NAME} or
+	 *                               {@link Token#STRING}.
+	 */
+	public String getString() throws IllegalStateException {
+		if (token != Token.FIELD_NAME && token != Token.STRING)
+			throw new IllegalStateException("The current token is not a field name or string: " + token);
+		return string;
+	}
+
+	/**
+	 * Returns the {@link Token} last returned by {@link #next()}.
+	 *
+	 * @return The current {@link Token}, or <code>null</code> if {@link #next()}
+	 *         has not been called or the end of input has been reached.
+	 */
+	public Token getToken() {
+		return token;
+	}
+
+	/**
+	 * Reads the next {@link Token} from the input.
+	 *
+	 * @return The next {@link Token}, or <code>null</code> if the end of input was
+	 *         reached between top-level values.
+	 * @throws IllegalArgumentException If the input is malformed.
+	 */
+	public Token next() throws IllegalArgumentException {
+		int c = parseWhitespace();
+		if (depth == 0)
+			return c == -1 ? token = null : readToken(c);
+		if (token == Token.FIELD_NAME)
+			return readToken(c);
+
+		final boolean object = containers[depth - 1];
+		if (c == (object ? '}' : ']')) {
+			depth--;
+			first = false;
+			return token = object ? Token.END_OBJECT : Token.END_ARRAY;
+		}
+		if (!first)
+			if (c != ',')
+				throw new IllegalArgumentException(c == -1
+						? "Malformed JSON. End of input reached while parsing " + (object ? "object." : "array.")
+						: "Malformed JSON.");
+			else
+				c = parseWhitespace();
+		first = false;
+
+		if (!object)
+			return readToken(c);
+		if (c != '"')
+			throw new IllegalArgumentException("Malformed JSON.");
+		string = parser.internKey(parser.parseHeadlessString(stream).getValue());
+		c = parseWhitespace();
+		if (c == -1)
+			throw new IllegalArgumentException("Malformed JSON. End of input reached while parsing object.");
+		else if (c != ':')
+			throw new IllegalArgumentException("The key string in an object was not followed by a ':'.");
+		return token = Token.FIELD_NAME;
+	}
+
+	/**
+	 * <p>
+	 * Parses the value starting at the current token into a {@link JSONValue} and
+	 * returns it. If the current token is {@link Token#START_OBJECT} or
+	 * {@link Token#START_ARRAY}, the rest of the container is parsed, and the
+	 * reader is left on the matching {@link Token#END_OBJECT} or
+	 * {@link Token#END_ARRAY}. If the current token is a {@link Token#FIELD_NAME},
+	 * the field's value is read and returned.
+	 * </p>
+	 * <p>
+	 * This method returns <code>null</code> for {@link Token#NULL}, consistent with
+	 * {@link JSONParser}.
+	 * </p>
+	 *
+	 * @return The {@link JSONValue}.
+	 * @throws IllegalStateException If the current token is not the start of a
+	 *                               value.
+	 */
+	public JSONValue readValue() throws IllegalStateException {
+		if (token == Token.FIELD_NAME)
+			next();
+		if (token == null)
+			throw new IllegalStateException("The reader is not positioned on a value.");
+		switch (token) {
+		case START_OBJECT:
+			final JSONObject obj = parser.parseHeadlessObject(stream);
+			depth--;
+			first = false;
+			token = Token.END_OBJECT;
+			return obj;
+		case START_ARRAY:
+			final JSONArray arr = parser.parseHeadlessArray(stream);
+			depth--;
+			first = false;
+			token = Token.END_ARRAY;
+			return arr;
+		case STRING:
+			return new JSONString(string);
+		case NUMBER:
+			return number;
+		case TRUE:
+			return JSONConstant.TRUE;
+		case FALSE:
+			return JSONConstant.FALSE;
+		case NULL:
+			return null;
+		default:
+			throw new IllegalStateException("The reader is not positioned on a value: " + token);
+		}
+	}
+
+	/**
+	 * <p>
+	 * If the current token is {@link Token#START_OBJECT} or
+	 * {@link Token#START_ARRAY}, skips to the matching {@link Token#END_OBJECT} or
+	 * {@link Token#END_ARRAY}, which becomes the current token. Otherwise, this
+	 * method does nothing.
+	 * </p>
+	 * <p>
+	 * Skipped content is scanned only for brackets and string boundaries; no
+	 * values are created and the content is not otherwise validated.
+	 * </p>
+	 *
+	 * @throws IllegalArgumentException If the end of input is reached before the
+	 *                                  container is closed.
+	 */
+	public void skipChildren() throws IllegalArgumentException {
+		if (token != Token.START_OBJECT && token != Token.START_ARRAY)
+			return;
+		int nesting = 1;
+		boolean inString = false;
+		for (int c;;)
+			if ((c = stream.next()) == -1)
+				throw new IllegalArgumentException("Malformed JSON. End of input reached while skipping a value.");
+			else if (inString) {
+				if (c == '\\')
+					stream.next();
+				else if (c == '"')
+					inString = false;
+			} else if (c == '"')
+				inString = true;
+			else if (c == '{' || c == '[')
+				nesting++;
+			else if ((c == '}' || c == ']') && --nesting == 0)
+				break;
+		first = false;
+		token = containers[--depth] ? Token.END_OBJECT : Token.END_ARRAY;
+	}
+
+	/**
+	 * <p>
+	 * Skips the value at the current token. If the current token is a
+	 * {@link Token#FIELD_NAME}, the field's value is skipped. Otherwise, this
+	 * behaves like {@link #skipChildren()}.
+	 * </p>
+	 * <p>
+	 * A field's value is skipped without being decoded: if it is a string or a
+	 * number, the current token becomes {@link Token#STRING} or
+	 * {@link Token#NUMBER}, but its content is not available through
+	 * {@link #getString()} or {@link #getNumber()}, which return
+	 * <code>null</code>.
+	 * </p>
+	 */
+	public void skipValue() {
+		if (token != Token.FIELD_NAME) {
+			skipChildren();
+			return;
+		}
+		final int c = parseWhitespace();
+		if (c == '"') {
+			for (int n; (n = stream.next()) != '"';)
+				if (n == -1)
+					throw new IllegalArgumentException("Malformed JSON. End of input reached while skipping a value.");
+				else if (n == '\\')
+					stream.next();
+			string = null;
+			token = Token.STRING;
+		} else if (c == '-' || c >= '0' && c <= '9') {
+			for (int n; (n = stream.next()) >= '0' && n <= '9' || n == '.' || n == 'e' || n == 'E' || n == '+'
+					|| n == '-';)
+				;
+			stream.back();
+			number = null;
+			token = Token.NUMBER;
+		} else {
+			readToken(c);
+			skipChildren();
+		}
+	}
+
+	private int parseWhitespace() {
+		int c;
+		while (Character.isWhitespace(c = stream.next()))
+			;
+		return c;
+	}
+
+	private void push(final boolean object) {
+		if (depth == containers.length)
+			containers = Arrays.copyOf(containers, depth << 1);
+		containers[depth++] = object;
+		first = true;
+	}
+
+	private Token readToken(final int c) {
+		switch (c) {
+		case '{':
+			push(true);
+			return token = Token.START_OBJECT;
+		case '[':
+			push(false);
+			return token = Token.START_ARRAY;
+		case '"':
+			string = parser.parseHeadlessString(stream).getValue();
+			return token = Token.STRING;
+		case 't':
+			if (stream.next() != 'r' || stream.next() != 'u' || stream.next() != 'e')
+				throw new IllegalArgumentException("Malformed JSON.");
+			return token = Token.TRUE;
+		case 'f':
+			if (stream.next() != 'a' || stream.next() != 'l' || stream.next() != 's' || stream.next() != 'e')
+				throw new IllegalArgumentException("Malformed JSON.");
+			return token = Token.FALSE;
+		case 'n':
+			if (stream.next() != 'u' || stream.next() != 'l' || stream.next() != 'l')
+				throw new IllegalArgumentException("Malformed JSON.");
+			return token = Token.NULL;
+		case -1:
+			throw new IllegalArgumentException("End of JSON encountered while parsing value.");
+		default:
+			if (c == '-' || Character.isDigit(c)) {
+				number = parser.parseNumber(c, stream);
+				return token = Token.NUMBER;
+			}
+			throw new IllegalArgumentException("Malformed JSON.");
+		}
+	}
+
+}
@@ -19,11 +19,50 @@ public interface JSONValue extends Serializable {
 			t.add(j.toString());
 	}
 
+	/**
+	 * Escapes the provided {@link String} so that it may be placed between
+	 * quotation marks in JSON text. The input is scanned once; if nothing needs
+	 * escaping, the input itself is returned.
+	 *
+	 * @param input The {@link String} to escape.
+	 * @return The escaped {@link String}.
+	 */
 	static String escape(final String input) {
-		return input.replace("\\", "\\\\").replace("\"", "\\\"")
-				// .replace("/", "\\/")
-				.replace("\b", "\\b").replace("\f", "\\f").replace("\r", "\\r").replace("\t", "\\t")
-				.replace("\n", "\\n");
+		StringBuilder builder = null;
+		int start = 0;
+		for (int i = 0; i < input.length(); i++) {
+			final char c = input.charAt(i), esc;
+			switch (c) {
+			case '"':
+				esc = '"';
+				break;
+			case '\\':
+				esc = '\\';
+				break;
+			case '\b':
+				esc = 'b';
+				break;
+			case '\f':
+				esc = 'f';
+				break;
+			case '\n':
+				esc = 'n';
+				break;
+			case '\r':
+				esc = 'r';
+				break;
+			case '\t':
+				esc = 't';
+				break;
+			default:
+				continue;
+			}
+			if (builder == null)
+				builder = new StringBuilder(input.length() + 16);
+			builder.append(input, start, i).append('\\').append(esc);
+			start = i + 1;
+		}
+		return builder == null ? input : builder.append(input, start, input.length()).toString();
 	}
 
 	static String toStringShort(final JSONValue v) {
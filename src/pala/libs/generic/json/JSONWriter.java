@@ -0,0 +1,341 @@
+package pala.libs.generic.json;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+/**
+ * <p>
+ * Serializes {@link JSONValue} trees directly to a {@link Writer}, without
+ * first building the whole text in memory. Output is collected in an internal
+ * buffer that is written out to the underlying {@link Writer} whenever it
+ * fills, and upon {@link #flush()}.
+ * </p>
+ * <p>
+ * A {@link JSONWriter} writes in one of two modes:
+ * </p>
+ * <ul>
+ * <li><b>Pretty</b>, which produces the same layout as
+ * {@link JSONValue#toString(String)}, indenting nested values with tabs.</li>
+ * <li><b>Compact</b>, which produces the same layout as
+ * {@link JSONValue#toStringShort(JSONValue)}, with no whitespace at all.</li>
+ * </ul>
+ * <p>
+ * Unlike {@link JSONObject#toString()}, a {@link JSONWriter} writes a Java
+ * <code>null</code> (the JSON constant <code>null</code>) wherever one is found
+ * in the tree.
+ * </p>
+ *
+ * @author Palanath
+ *
+ */
+public class JSONWriter implements Flushable {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Returns the compact textual form of the provided {@link JSONValue}.
+	 *
+	 * @param value The {@link JSONValue}.
+	 * @return The compact JSON text.
+	 */
+	public static String toCompactString(final JSONValue value) {
+		return toString(value, false);
+	}
+
+	/**
+	 * Returns the pretty-printed textual form of the provided {@link JSONValue}.
+	 *
+	 * @param value The {@link JSONValue}.
+	 * @return The pretty-printed JSON text.
+	 */
+	public static String toPrettyString(final JSONValue value) {
+		return toString(value, true);
+	}
+
+	private static String toString(final JSONValue value, final boolean pretty) {
+		final StringWriter sw = new StringWriter();
+		try {
+			final JSONWriter writer = new JSONWriter(sw, pretty);
+			writer.write(value);
+			writer.flush();
+		} catch (final IOException e) {
+			// StringWriter does not throw IOExceptions.
+			throw new RuntimeException(e);
+		}
+		return sw.toString();
+	}
+
+	private final Writer out;
+	private final boolean pretty;
+	private final char[] buf = new char[BUFFER_SIZE];
+	private int pos;
+	/**
+	 * A run of tabs shared by every indentation level; the first <code>n</code>
+	 * characters are written to indent to level <code>n</code>. Grown as needed.
+	 */
+	private char[] tabs = new char[16];
+
+	/**
+	 * Creates a pretty-printing {@link JSONWriter} that writes to the provided
+	 * {@link Writer}.
+	 *
+	 * @param out The {@link Writer} to write to.
+	 */
+	public JSONWriter(final Writer out) {
+		this(out, true);
+	}
+
+	/**
+	 * Creates a {@link JSONWriter} that writes to the provided {@link Writer}.
+	 *
+	 * @param out    The {@link Writer} to write to.
+	 * @param pretty <code>true</code> to pretty print, <code>false</code> to write
+	 *               compactly.
+	 */
+	public JSONWriter(final Writer out, final boolean pretty) {
+		this.out = out;
+		this.pretty = pretty;
+		Arrays.fill(tabs, '\t');
+	}
+
+	/**
+	 * Creates a {@link JSONWriter} that writes UTF-8 encoded JSON to the provided
+	 * {@link OutputStream}.
+	 *
+	 * @param out    The {@link OutputStream} to write to.
+	 * @param pretty <code>true</code> to pretty print, <code>false</code> to write
+	 *               compactly.
+	 */
+	public JSONWriter(final OutputStream out, final boolean pretty) {
+		this(new OutputStreamWriter(out, StandardCharsets.UTF_8), pretty);
+	}
+
+	/**
+	 * Writes any buffered output to the underlying {@link Writer} and flushes it.
+	 * The underlying {@link Writer} is never closed by this class.
+	 */
+	@Override
+	public void flush() throws IOException {
+		drain();
+		out.flush();
+	}
+
+	public boolean isPretty() {
+		return pretty;
+	}
+
+	/**
+	 * Writes the provided {@link JSONValue}. Output may remain buffered until
+	 * {@link #flush()} is called.
+	 *
+	 * @param value The {@link JSONValue} to write, possibly <code>null</code>.
+	 * @throws IOException If an {@link IOException} occurs while writing to the
+	 *                     underlying {@link Writer}.
+	 */
+	public void write(final JSONValue value) throws IOException {
+		write(value, 0);
+	}
+
+	private void drain() throws IOException {
+		if (pos > 0) {
+			out.write(buf, 0, pos);
+			pos = 0;
+		}
+	}
+
+	private void indent(final int depth) throws IOException {
+		if (depth > tabs.length) {
+			tabs = new char[Math.max(depth, tabs.length << 1)];
+			Arrays.fill(tabs, '\t');
+		}
+		write(tabs, 0, depth);
+	}
+
+	private void write(final char c) throws IOException {
+		if (pos == buf.length)
+			drain();
+		buf[pos++] = c;
+	}
+
+	private void write(final char[] chars, final int off, final int len) throws IOException {
+		if (len > buf.length - pos) {
+			drain();
+			if (len > buf.length) {
+				out.write(chars, off, len);
+				return;
+			}
+		}
+		System.arraycopy(chars, off, buf, pos, len);
+		pos += len;
+	}
+
+	private void write(final String str) throws IOException {
+		final int len = str.length();
+		if (len > buf.length - pos) {
+			drain();
+			if (len > buf.length) {
+				out.write(str);
+				return;
+			}
+		}
+		str.getChars(0, len, buf, pos);
+		pos += len;
+	}
+
+	/**
+	 * Writes the provided {@link String} as a quoted, escaped JSON string, in a
+	 * single pass. Runs of characters that need no escaping are copied as a
+	 * block.
+	 *
+	 * @param str The {@link String} to write.
+	 */
+	private void writeString(final String str) throws IOException {
+		write('"');
+		int start = 0;
+		final int len = str.length();
+		for (int i = 0; i < len; i++) {
+			final char c = str.charAt(i);
+			final char esc;
+			switch (c) {
+			case '"':
+				esc = '"';
+				break;
+			case '\\':
+				esc = '\\';
+				break;
+			case '\b':
+				esc = 'b';
+				break;
+			case '\f':
+				esc = 'f';
+				break;
+			case '\n':
+				esc = 'n';
+				break;
+			case '\r':
+				esc = 'r';
+				break;
+			case '\t':
+				esc = 't';
+				break;
+			default:
+				continue;
+			}
+			writeRange(str, start, i);
+			write('\\');
+			write(esc);
+			start = i + 1;
+		}
+		writeRange(str, start, len);
+		write('"');
+	}
+
+	private void writeRange(final String str, int start, final int end) throws IOException {
+		while (start < end) {
+			if (pos == buf.length)
+				drain();
+			final int amt = Math.min(end - start, buf.length - pos);
+			str.getChars(start, start + amt, buf, pos);
+			pos += amt;
+			start += amt;
+		}
+	}
+
+	private void write(final JSONValue value, final int depth) throws IOException {
+		if (value == null)
+			write("null");
+		else if (value instanceof JSONString)
+			writeString(((JSONString) value).getValue());
+		else if (value instanceof JSONObject)
+			writeObject((JSONObject) value, depth);
+		else if (value instanceof JSONArray)
+			writeArray((JSONArray) value, depth);
+		else if (value instanceof JSONNumber || value instanceof JSONConstant || !pretty)
+			write(value.toString());
+		else {
+			// Unknown JSONValue implementations format themselves.
+			final char[] indentation = new char[depth];
+			Arrays.fill(indentation, '\t');
+			write(value.toString(new String(indentation)));
+		}
+	}
+
+	private void writeArray(final JSONArray arr, final int depth) throws IOException {
+		write('[');
+		final Iterator<JSONValue> iterator = arr.iterator();
+		if (!pretty) {
+			if (iterator.hasNext()) {
+				write(iterator.next(), depth);
+				while (iterator.hasNext()) {
+					write(',');
+					write(iterator.next(), depth);
+				}
+			}
+		} else if (!iterator.hasNext()) {
+			write('\t');
+			indent(depth);
+		} else {
+			write('\n');
+			indent(depth + 1);
+			write(iterator.next(), depth + 1);
+			while (iterator.hasNext()) {
+				write(",\n");
+				indent(depth + 1);
+				write(iterator.next(), depth + 1);
+			}
+			write('\n');
+			indent(depth);
+		}
+		write(']');
+	}
+
+	private void writeObject(final JSONObject obj, final int depth) throws IOException {
+		write('{');
+		final Iterator<Entry<String, JSONValue>> iterator = obj.entrySet().iterator();
+		if (!pretty) {
+			if (iterator.hasNext()) {
+				Entry<String, JSONValue> e = iterator.next();
+				writeString(e.getKey());
+				write(':');
+				write(e.getValue(), depth);
+				while (iterator.hasNext()) {
+					e = iterator.next();
+					write(',');
+					writeString(e.getKey());
+					write(':');
+					write(e.getValue(), depth);
+				}
+			}
+		} else if (!iterator.hasNext()) {
+			write('\t');
+			indent(depth);
+		} else {
+			Entry<String, JSONValue> e = iterator.next();
+			write('\n');
+			indent(depth + 1);
+			writeString(e.getKey());
+			write(':');
+			write(e.getValue(), depth + 1);
+			while (iterator.hasNext()) {
+				e = iterator.next();
+				write(",\n");
+				indent(depth + 1);
+				writeString(e.getKey());
+				write(':');
+				write(e.getValue(), depth + 1);
+			}
+			write('\n');
+			indent(depth);
+		}
+		write('}');
+	}
+
+}
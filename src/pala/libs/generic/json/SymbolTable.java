@@ -0,0 +1,95 @@
+package pala.libs.generic.json;
+
+/**
+ * <p>
+ * A bounded table of canonical {@link String}s used by {@link JSONParser} to
+ * intern object keys. Documents made up of many objects with the same shape
+ * repeat the same few keys over and over; interning lets every such object
+ * share one {@link String} per key, and lets the parser look up a key directly
+ * from its input buffer without creating a new {@link String} at all.
+ * </p>
+ * <p>
+ * The table is direct-mapped: each key hashes to exactly one slot, and a key
+ * that is not found replaces whatever was in its slot. The table therefore
+ * never grows past its capacity, regardless of how many distinct keys it sees.
+ * </p>
+ * <p>
+ * Lookups may race with replacements when a table is shared between threads.
+ * This is benign; a racing lookup at worst fails to find an interned
+ * {@link String} and returns a new, equal one.
+ * </p>
+ *
+ * @author Palanath
+ *
+ */
+final class SymbolTable {
+	/**
+	 * Keys longer than this are never interned.
+	 */
+	private static final int MAX_KEY_LENGTH = 64;
+
+	private final String[] symbols;
+
+	/**
+	 * Creates a new {@link SymbolTable} with the specified number of slots, which
+	 * must be a power of two.
+	 *
+	 * @param capacity The number of slots.
+	 */
+	public SymbolTable(final int capacity) {
+		if (Integer.bitCount(capacity) != 1)
+			throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+		symbols = new String[capacity];
+	}
+
+	/**
+	 * Returns the canonical {@link String} whose characters are those in the
+	 * specified range of the provided array, creating and interning it if
+	 * necessary.
+	 *
+	 * @param chars  The array containing the key.
+	 * @param offset The index of the first character of the key.
+	 * @param length The number of characters in the key.
+	 * @return The canonical {@link String}.
+	 */
+	public String intern(final char[] chars, final int offset, final int length) {
+		if (length > MAX_KEY_LENGTH)
+			return new String(chars, offset, length);
+		int hash = 0;
+		for (int i = offset; i < offset + length; i++)
+			hash = 31 * hash + chars[i];
+		final int slot = spread(hash) & symbols.length - 1;
+		final String s = symbols[slot];
+		if (s != null && s.length() == length && matches(s, chars, offset))
+			return s;
+		return symbols[slot] = new String(chars, offset, length);
+	}
+
+	/**
+	 * Returns the canonical {@link String} equal to the provided {@link String},
+	 * interning the provided {@link String} if no equal one is in the table.
+	 *
+	 * @param key The key.
+	 * @return The canonical {@link String}.
+	 */
+	public String intern(final String key) {
+		if (key.length() > MAX_KEY_LENGTH)
+			return key;
+		final int slot = spread(key.hashCode()) & symbols.length - 1;
+		final String s = symbols[slot];
+		if (key.equals(s))
+			return s;
+		return symbols[slot] = key;
+	}
+
+	private static boolean matches(final String s, final char[] chars, final int offset) {
+		for (int i = 0; i < s.length(); i++)
+			if (s.charAt(i) != chars[offset + i])
+				return false;
+		return true;
+	}
+
+	private static int spread(final int hash) {
+		return hash ^ hash >>> 16;
+	}
+}
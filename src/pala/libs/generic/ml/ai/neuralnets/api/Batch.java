@@ -0,0 +1,97 @@
+package pala.libs.generic.ml.ai.neuralnets.api;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * <p>
+ * A mini-batch of {@link Sample}s, whose inputs and answers are also copied,
+ * one {@link Sample} after another, into two contiguous arrays. These are laid
+ * out as the batched methods of {@link Computation}, such as
+ * {@link Computation#evaluateBatch(Container, int, double[])}, expect, so a
+ * {@link Batch} can be evaluated, or have its gradients calculated with
+ * {@link Computation#calculateWeightGrads(LossFunction, Batch)}, without any
+ * further copying.
+ * </p>
+ * <p>
+ * A {@link Batch} is also {@link Iterable} over its {@link Sample}s, so it can
+ * be handed to any <code>Optimizer</code>.
+ * </p>
+ *
+ * @author Palanath
+ *
+ */
+public final class Batch implements Iterable<Sample> {
+
+	private final Sample[] samples;
+	private final double[] inputs, answers;
+	private final int inputSize, answerSize;
+
+	/**
+	 * Creates a {@link Batch} of the provided {@link Sample}s.
+	 *
+	 * @param samples The {@link Sample}s, which must all have inputs of the same
+	 *                length and answers of the same length.
+	 * @throws IllegalArgumentException If no {@link Sample}s are provided or their
+	 *                                  sizes differ.
+	 */
+	public Batch(Sample... samples) {
+		if (samples.length == 0)
+			throw new IllegalArgumentException("A Batch needs at least one Sample.");
+		this.samples = samples;
+		inputSize = samples[0].getInputs().length;
+		answerSize = samples[0].getAnswer().length;
+		inputs = new double[samples.length * inputSize];
+		answers = new double[samples.length * answerSize];
+		for (int i = 0; i < samples.length; i++) {
+			if (samples[i].getInputs().length != inputSize || samples[i].getAnswer().length != answerSize)
+				throw new IllegalArgumentException("Every Sample in a Batch must have the same size.");
+			System.arraycopy(samples[i].getInputs(), 0, inputs, i * inputSize, inputSize);
+			System.arraycopy(samples[i].getAnswer(), 0, answers, i * answerSize, answerSize);
+		}
+	}
+
+	/**
+	 * Returns the answers of every {@link Sample}, one after another. The array is
+	 * not copied.
+	 *
+	 * @return The answers.
+	 */
+	public double[] getAnswers() {
+		return answers;
+	}
+
+	public int getAnswerSize() {
+		return answerSize;
+	}
+
+	/**
+	 * Returns the inputs of every {@link Sample}, one after another. The array is
+	 * not copied.
+	 *
+	 * @return The inputs.
+	 */
+	public double[] getInputs() {
+		return inputs;
+	}
+
+	public int getInputSize() {
+		return inputSize;
+	}
+
+	public List<Sample> getSamples() {
+		return Collections.unmodifiableList(Arrays.asList(samples));
+	}
+
+	@Override
+	public Iterator<Sample> iterator() {
+		return getSamples().iterator();
+	}
+
+	public int size() {
+		return samples.length;
+	}
+
+}
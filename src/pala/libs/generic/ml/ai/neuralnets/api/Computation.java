@@ -36,6 +36,13 @@ import pala.libs.generic.util.Pair;
  * will be overwritten by the latter.
  * </p>
  * <p>
+ * Evaluating a {@link Computation} is not guaranteed to be safe while the
+ * weights of its {@link Node}s are being changed, e.g. by training on another
+ * thread, and records state for a backward pass that inference does not need.
+ * To serve a trained network from many threads, evaluate a
+ * {@link FrozenNetwork} of it instead.
+ * </p>
+ * <p>
  * Most premade implementations of stateless {@link Computation}s can be
  * obtained using the factory methods of this type. Most stateful
  * implementations will have their own class, like {@link WeightLayerNode}.
@@ -162,6 +169,134 @@ public interface Computation {
 
 	double[] evaluate(Container c, double... input);
 
+	/**
+	 * <p>
+	 * Evaluates this {@link Computation} on a batch of inputs at once. The
+	 * <code>input</code> array holds <code>batchSize</code> input vectors, each of
+	 * size {@link #inputs()}, one after the other (that is, it is a row-major
+	 * <code>batchSize x inputs()</code> matrix). The returned array similarly
+	 * holds <code>batchSize</code> output vectors of size {@link #outputs()}.
+	 * </p>
+	 * <p>
+	 * Information needed for the backward pass is stored in the provided
+	 * {@link Container} for use by
+	 * {@link #gradBatch(Container, WeightGradStorage, int, double[])}. The default
+	 * implementation evaluates each input vector separately with
+	 * {@link #evaluate(Container, double...)}; {@link Computation}s that can
+	 * process a whole batch more efficiently (e.g. {@link WeightLayerNode}, with a
+	 * single matrix-matrix multiplication) override it.
+	 * </p>
+	 * <p>
+	 * The provided <code>input</code> array may be retained in the
+	 * {@link Container}, so it should not be modified before the backward pass.
+	 * </p>
+	 *
+	 * @param c         The {@link Container} to store forward pass information in.
+	 * @param batchSize The number of input vectors in the batch.
+	 * @param input     The input vectors.
+	 * @return The output vectors.
+	 */
+	default double[] evaluateBatch(Container c, int batchSize, double[] input) {
+		assert input.length == batchSize * inputs() : "Invalid batch input size.";
+		int ins = inputs(), outs = outputs();
+		ContainerImpl[] contexts = new ContainerImpl[batchSize];
+		double[] output = new double[batchSize * outs];
+		for (int b = 0; b < batchSize; b++)
+			System.arraycopy(evaluate(contexts[b] = new ContainerImpl(),
+					Arrays.copyOfRange(input, b * ins, (b + 1) * ins)), 0, output, b * outs, outs);
+		c.set(contexts);
+		return output;
+	}
+
+	/**
+	 * <p>
+	 * Propagates the gradients of a batch backwards, as
+	 * {@link #grad(Container, WeightGradStorage, double...)} does for a single
+	 * sample. <code>outGrad</code> holds <code>batchSize</code> output gradient
+	 * vectors, one after the other, and the returned array holds the
+	 * corresponding <code>batchSize</code> input gradient vectors.
+	 * </p>
+	 * <p>
+	 * The weight gradients stored in the {@link WeightGradStorage} are the
+	 * <i>sum</i> of the weight gradients of each sample in the batch. To obtain
+	 * the gradient of the mean loss over the batch, the output gradients should be
+	 * scaled by <code>1 / batchSize</code>, as
+	 * {@link #calculateWeightGrads(LossFunction, Sample...)} does.
+	 * </p>
+	 *
+	 * @param c             The {@link Container} used in the call to
+	 *                      {@link #evaluateBatch(Container, int, double[])}.
+	 * @param weightStorage The {@link WeightGradStorage} to store weight gradients
+	 *                      in.
+	 * @param batchSize     The number of vectors in the batch.
+	 * @param outGrad       The gradient of the loss with respect to each output of
+	 *                      each sample.
+	 * @return The gradient of the loss with respect to each input of each sample.
+	 */
+	default double[] gradBatch(Container c, WeightGradStorage weightStorage, int batchSize, double[] outGrad) {
+		assert outGrad.length == batchSize * outputs() : "Invalid batch gradient size.";
+		ContainerImpl[] contexts = c.get();
+		int ins = inputs(), outs = outputs();
+		double[] inGrad = new double[batchSize * ins];
+		WeightGradStorage sampleStorage = new WeightGradStorage(), total = new WeightGradStorage();
+		for (int b = 0; b < batchSize; b++) {
+			System.arraycopy(grad(contexts[b].disableModification(), sampleStorage,
+					Arrays.copyOfRange(outGrad, b * outs, (b + 1) * outs)), 0, inGrad, b * ins, ins);
+			total.accumulate(sampleStorage);
+		}
+		for (Pair<Node, double[]> p : total.all())
+			weightStorage.put(p.first, p.second);
+		return inGrad;
+	}
+
+	/**
+	 * <p>
+	 * Compiles this {@link Computation} into an {@link ExecutionPlan.Step} that
+	 * reads its input from the region of the plan's buffers starting at
+	 * <code>input</code> and writes its output to the region starting at
+	 * <code>output</code>. Space for intermediate results can be reserved with
+	 * {@link ExecutionPlan#allocate(int)}, and {@link Node}s write their weight
+	 * gradients into {@link ExecutionPlan#getGradients()}, at their
+	 * {@link ParameterVector#offset(Node) offset}.
+	 * </p>
+	 * <p>
+	 * The default implementation returns a {@link ExecutionPlan.Step} that calls
+	 * {@link #evaluate(Container, double...)} and
+	 * {@link #grad(Container, WeightGradStorage, double...)}, copying data in and
+	 * out of the plan's buffers. {@link Computation}s should override this to
+	 * work on the buffers directly, without allocating.
+	 * </p>
+	 *
+	 * @param plan   The {@link ExecutionPlan} being built.
+	 * @param input  The index of this {@link Computation}'s input region.
+	 * @param output The index of this {@link Computation}'s output region.
+	 * @return The compiled {@link ExecutionPlan.Step}.
+	 */
+	default ExecutionPlan.Step plan(ExecutionPlan plan, int input, int output) {
+		return new ExecutionPlan.Step() {
+			private final ContainerImpl context = new ContainerImpl();
+			private final double[] in = new double[inputs()];
+			private final WeightGradStorage storage = new WeightGradStorage();
+
+			@Override
+			public void backward(double[] values, double[] grads) {
+				double[] g = grad(context.disableModification(), storage,
+						Arrays.copyOfRange(grads, output, output + outputs()));
+				System.arraycopy(g, 0, grads, input, g.length);
+				for (Pair<Node, double[]> p : storage.all())
+					System.arraycopy(p.second, 0, plan.getGradients(), plan.getParameters().offset(p.first),
+							p.second.length);
+			}
+
+			@Override
+			public void forward(double[] values) {
+				System.arraycopy(values, input, in, 0, in.length);
+				double[] out = evaluate(context.setModifyMode(true), in);
+				System.arraycopy(out, 0, values, output, out.length);
+			}
+		};
+	}
+
 	static Computation chain(Computation... nodes) {
 		return new ChainComputation(nodes);
 	}
@@ -287,6 +422,80 @@ public interface Computation {
 		return store;
 	}
 
+	/**
+	 * Calculates the gradients, with respect to each weight, of the mean loss of
+	 * this {@link Computation} over the provided batch of {@link Sample}s. The
+	 * whole batch is run through
+	 * {@link #evaluateBatch(Container, int, double[])} and
+	 * {@link #gradBatch(Container, WeightGradStorage, int, double[])} at once.
+	 *
+	 * @param lossFunction The loss function to compute the gradient against.
+	 * @param batch        The {@link Sample}s to compute the mean gradient over.
+	 * @return A {@link WeightGradStorage} that contains the derivative of the mean
+	 *         loss with respect to each weight.
+	 */
+	default WeightGradStorage calculateWeightGrads(LossFunction lossFunction, Sample... batch) {
+		return calculateWeightGrads(lossFunction, new Batch(batch));
+	}
+
+	/**
+	 * Calculates the gradients, with respect to each weight, of the mean loss of
+	 * this {@link Computation} over the provided {@link Batch}, as
+	 * {@link #calculateWeightGrads(LossFunction, Sample...)} does, using the
+	 * {@link Batch}'s contiguous input array as is.
+	 *
+	 * @param lossFunction The loss function to compute the gradient against.
+	 * @param batch        The {@link Batch} to compute the mean gradient over.
+	 * @return A {@link WeightGradStorage} that contains the derivative of the mean
+	 *         loss with respect to each weight.
+	 */
+	default WeightGradStorage calculateWeightGrads(LossFunction lossFunction, Batch batch) {
+		int size = batch.size(), outs = outputs(), answerSize = batch.getAnswerSize();
+		double[] answers = batch.getAnswers();
+
+		ContainerImpl c = new ContainerImpl();
+		double[] prediction = evaluateBatch(c, size, batch.getInputs()), lossGrad = new double[prediction.length];
+		for (int b = 0; b < size; b++) {
+			ContainerImpl lc = new ContainerImpl();
+			lossFunction.evaluateLoss(lc, Arrays.copyOfRange(answers, b * answerSize, (b + 1) * answerSize),
+					Arrays.copyOfRange(prediction, b * outs, (b + 1) * outs));
+			double[] g = lossFunction.grad(lc.disableModification());
+			for (int i = 0; i < outs; i++)
+				lossGrad[b * outs + i] = g[i] / size;
+		}
+
+		WeightGradStorage store = new WeightGradStorage();
+		gradBatch(c.disableModification(), store, size, lossGrad);
+		return store;
+	}
+
+	/**
+	 * Evaluates this {@link Computation} on a batch of input vectors, as
+	 * {@link #eval(double...)} does for one. See
+	 * {@link #evaluateBatch(Container, int, double[])}.
+	 *
+	 * @param batchSize The number of input vectors.
+	 * @param input     The input vectors, one after the other.
+	 * @return The output vectors, one after the other.
+	 */
+	default double[] evalBatch(int batchSize, double... input) {
+		return evaluateBatch(new ContainerImpl(), batchSize, input);
+	}
+
+	/**
+	 * Performs one step of gradient descent on the mean loss over the provided
+	 * batch of {@link Sample}s.
+	 *
+	 * @param lossFunction The loss function.
+	 * @param learningRate The learning rate.
+	 * @param batch        The {@link Sample}s.
+	 */
+	default void train(LossFunction lossFunction, double learningRate, Sample... batch) {
+		for (Pair<double[], double[]> x : calculateWeightGrads(lossFunction, batch))
+			for (int i = 0; i < x.first.length; i++)
+				x.first[i] -= x.second[i] * learningRate;
+	}
+
 	default void train(LossFunction lossFunction, double learningRate, Sample sample) {
 		WeightGradStorage wgs = calculateWeightGrads(lossFunction, sample);
 		for (Pair<double[], double[]> x : wgs)
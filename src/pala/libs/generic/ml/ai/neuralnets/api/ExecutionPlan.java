@@ -0,0 +1,228 @@
+package pala.libs.generic.ml.ai.neuralnets.api;
+
+/**
+ * <p>
+ * A network ({@link Computation}) compiled into a sequence of {@link Step}s
+ * that run forward and backward passes over buffers allocated once, upon
+ * compilation, and reused for every sample afterwards.
+ * </p>
+ * <p>
+ * Every value computed in a forward pass, from the network's input through each
+ * intermediate result to the network's output, has a fixed region in a single
+ * <code>values</code> array. The gradient of the loss with respect to each of
+ * these values has the same region in a <code>grads</code> array. Each
+ * {@link Computation} in the network is compiled by
+ * {@link Computation#plan(ExecutionPlan, int, int)} into a {@link Step} that
+ * reads its input region and writes its output region (and, backwards, reads
+ * its output gradient region and writes its input gradient region). Weight
+ * gradients are written into a single vector laid out by the plan's
+ * {@link ParameterVector}, returned by {@link #getGradients()}.
+ * </p>
+ * <p>
+ * Built-in {@link Computation}s compile to {@link Step}s that do not allocate,
+ * so that, once the plan is built, {@link #calculateWeightGrads(LossFunction,
+ * Sample)} and {@link #train(LossFunction, double, Sample)} perform no
+ * allocation at all (provided the {@link LossFunction} supports
+ * {@link LossFunction#evaluateLoss(double[], double[], double[], int)} without
+ * allocating, as the built-in ones do). Other {@link Computation}s are run
+ * through {@link Computation#evaluate(Container, double...)} and
+ * {@link Computation#grad(Container, WeightGradStorage, double...)}, and
+ * allocate as those do.
+ * </p>
+ * <p>
+ * The {@link Step}s read the weights of each {@link Node} directly, so changes
+ * to weights are seen by the plan. An {@link ExecutionPlan} holds the state of
+ * the pass in progress and so must not be used by more than one thread at a
+ * time.
+ * </p>
+ * <p>
+ * A plan compiled {@link #ExecutionPlan(Computation, boolean) for inference
+ * only} allocates no gradient buffers, and can only {@link #evaluate(double...)
+ * evaluate} the network.
+ * </p>
+ *
+ * @author Palanath
+ *
+ */
+public final class ExecutionPlan {
+
+	/**
+	 * A compiled {@link Computation}, which runs on fixed regions of an
+	 * {@link ExecutionPlan}'s buffers.
+	 *
+	 * @author Palanath
+	 *
+	 */
+	public interface Step {
+		/**
+		 * Reads this {@link Step}'s input from the <code>values</code> array and
+		 * writes its output to it.
+		 *
+		 * @param values The values of the {@link ExecutionPlan}.
+		 */
+		void forward(double[] values);
+
+		/**
+		 * Reads the gradient of this {@link Step}'s output from the
+		 * <code>grads</code> array and overwrites the gradient of its input in it,
+		 * also writing this {@link Step}'s weight gradients, if any. The
+		 * <code>values</code> array is as it was left by the last call to
+		 * {@link #forward(double[])}.
+		 *
+		 * @param values The values of the {@link ExecutionPlan}.
+		 * @param grads  The gradients of the {@link ExecutionPlan}.
+		 */
+		void backward(double[] values, double[] grads);
+	}
+
+	private final Computation network;
+	private final ParameterVector parameters;
+	private final int input, output;
+	private int size;
+	private final Step root;
+	private final double[] values, grads, result, gradients;
+
+	/**
+	 * Compiles the provided network into an {@link ExecutionPlan}.
+	 *
+	 * @param network The network.
+	 */
+	public ExecutionPlan(Computation network) {
+		this(network, true);
+	}
+
+	/**
+	 * Compiles the provided network into an {@link ExecutionPlan}, which can
+	 * calculate gradients only if <code>training</code> is <code>true</code>.
+	 * Otherwise, {@link #getGradients()} returns an empty array and
+	 * {@link #calculateWeightGrads(LossFunction, Sample)} and
+	 * {@link #train(LossFunction, double, Sample)} throw an
+	 * {@link IllegalStateException}.
+	 *
+	 * @param network  The network.
+	 * @param training Whether to allocate the buffers for backward passes.
+	 */
+	public ExecutionPlan(Computation network, boolean training) {
+		this.network = network;
+		parameters = new ParameterVector(network);
+		gradients = new double[training ? parameters.size() : 0];
+		input = allocate(network.inputs());
+		output = allocate(network.outputs());
+		root = network.plan(this, input, output);
+		values = new double[size];
+		grads = training ? new double[size] : null;
+		result = new double[network.outputs()];
+	}
+
+	/**
+	 * Reserves a region of the <code>values</code> and <code>grads</code> arrays
+	 * of this plan. This is meant to be called by implementations of
+	 * {@link Computation#plan(ExecutionPlan, int, int)}, to obtain space for
+	 * intermediate results.
+	 *
+	 * @param length The length of the region.
+	 * @return The index of the start of the region.
+	 */
+	public int allocate(int length) {
+		int start = size;
+		size += length;
+		return start;
+	}
+
+	/**
+	 * Calculates the gradient of the loss with respect to every weight of the
+	 * network, for the provided {@link Sample}. The gradients are stored in the
+	 * vector returned by {@link #getGradients()}, which is overwritten by each
+	 * call.
+	 *
+	 * @param lossFunction The {@link LossFunction}.
+	 * @param sample       The {@link Sample}.
+	 * @return The loss of the network on the {@link Sample}, before any weights
+	 *         are changed.
+	 * @throws IllegalStateException If this plan was compiled for inference only.
+	 */
+	public double calculateWeightGrads(LossFunction lossFunction, Sample sample) {
+		if (grads == null)
+			throw new IllegalStateException("This ExecutionPlan was compiled for inference only.");
+		forward(sample.getInputs());
+		double loss = lossFunction.evaluateLoss(sample.getAnswer(), values, grads, output);
+		root.backward(values, grads);
+		return loss;
+	}
+
+	/**
+	 * Evaluates the network on the provided input. The returned array is reused
+	 * by every call to this method.
+	 *
+	 * @param input The input, of length {@link Computation#inputs()}.
+	 * @return The output of the network.
+	 */
+	public double[] evaluate(double... input) {
+		evaluate(input, result);
+		return result;
+	}
+
+	/**
+	 * Evaluates the network on the provided input, writing its output into the
+	 * provided array.
+	 *
+	 * @param input  The input, of length {@link Computation#inputs()}.
+	 * @param output The array to write the output to, of length at least
+	 *               {@link Computation#outputs()}.
+	 */
+	public void evaluate(double[] input, double[] output) {
+		forward(input);
+		System.arraycopy(values, this.output, output, 0, result.length);
+	}
+
+	public Computation getNetwork() {
+		return network;
+	}
+
+	/**
+	 * Returns the vector holding the weight gradients calculated by
+	 * {@link #calculateWeightGrads(LossFunction, Sample)}, laid out by
+	 * {@link #getParameters()}. The same array is returned, and overwritten by
+	 * each calculation, every time.
+	 *
+	 * @return The gradient vector.
+	 */
+	public double[] getGradients() {
+		return gradients;
+	}
+
+	/**
+	 * Returns the {@link ParameterVector} laying out the weights of the network.
+	 * {@link Step}s write the weight gradients of each {@link Node} into
+	 * {@link #getGradients()} starting at the {@link Node}'s
+	 * {@link ParameterVector#offset(Node) offset}.
+	 *
+	 * @return The {@link ParameterVector}.
+	 */
+	public ParameterVector getParameters() {
+		return parameters;
+	}
+
+	/**
+	 * Performs one step of gradient descent on the provided {@link Sample}, as
+	 * {@link Computation#train(LossFunction, double, Sample)} does.
+	 *
+	 * @param lossFunction The {@link LossFunction}.
+	 * @param learningRate The learning rate.
+	 * @param sample       The {@link Sample}.
+	 * @return The loss of the network on the {@link Sample}, before training.
+	 * @throws IllegalStateException If this plan was compiled for inference only.
+	 */
+	public double train(LossFunction lossFunction, double learningRate, Sample sample) {
+		double loss = calculateWeightGrads(lossFunction, sample);
+		parameters.subtract(gradients, learningRate);
+		return loss;
+	}
+
+	private void forward(double[] input) {
+		assert input.length == network.inputs() : "Invalid input size for ExecutionPlan.";
+		System.arraycopy(input, 0, values, this.input, input.length);
+		root.forward(values);
+	}
+
+}
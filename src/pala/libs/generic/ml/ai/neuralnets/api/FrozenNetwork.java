@@ -0,0 +1,114 @@
+package pala.libs.generic.ml.ai.neuralnets.api;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * <p>
+ * An immutable view of a trained network for inference, which can be evaluated
+ * by any number of threads at once. A {@link FrozenNetwork} holds its own copy
+ * of the network and its weights, taken upon construction, so training the
+ * original network afterwards does not affect it, and nothing can modify the
+ * copy.
+ * </p>
+ * <p>
+ * Each evaluation takes an {@link ExecutionPlan} from a pool of idle plans,
+ * compiled {@link ExecutionPlan#ExecutionPlan(Computation, boolean) for
+ * inference only}, and returns it when done; a new plan is only compiled when
+ * every existing one is in use, so the pool holds as many plans as there have
+ * been concurrent evaluations. Evaluation therefore records no
+ * {@link Container} state for backward passes and, once enough plans exist,
+ * {@link #evaluate(double[], double[])} allocates nothing but the pool's queue
+ * node for the plan it returns. The plans belong to the {@link FrozenNetwork},
+ * so they are reclaimed along with it, however long the threads that used them
+ * live. Only the {@link Computation}s that {@link ModelFile} can save are
+ * supported, since the network is copied the same way.
+ * </p>
+ *
+ * @author Palanath
+ *
+ */
+public final class FrozenNetwork {
+
+	private final Computation network;
+	private final Queue<ExecutionPlan> plans = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Creates a {@link FrozenNetwork} of a copy of the provided network, with its
+	 * current weights.
+	 *
+	 * @param network The network.
+	 * @throws IllegalArgumentException If the network contains a
+	 *                                  {@link Computation} that {@link ModelFile}
+	 *                                  cannot save.
+	 */
+	public FrozenNetwork(Computation network) {
+		this(network, true);
+	}
+
+	private FrozenNetwork(Computation network, boolean copy) {
+		this.network = copy ? ModelFile.copy(network) : network;
+	}
+
+	/**
+	 * Loads a {@link FrozenNetwork} from a model file saved by
+	 * {@link ModelFile#save(Computation, Path)}. The loaded network is used as
+	 * is, without being copied again.
+	 *
+	 * @param file The path of the file.
+	 * @return The {@link FrozenNetwork}.
+	 * @throws IOException              If an {@link IOException} occurs while
+	 *                                  reading the file.
+	 * @throws IllegalArgumentException If the file is not a valid model file.
+	 */
+	public static FrozenNetwork load(Path file) throws IOException {
+		return new FrozenNetwork(ModelFile.load(file), false);
+	}
+
+	/**
+	 * Evaluates the network on the provided input.
+	 *
+	 * @param input The input, of length {@link #inputs()}.
+	 * @return A new array holding the output of the network.
+	 */
+	public double[] evaluate(double... input) {
+		double[] output = new double[network.outputs()];
+		evaluate(input, output);
+		return output;
+	}
+
+	/**
+	 * Evaluates the network on the provided input, writing its output into the
+	 * provided array.
+	 *
+	 * @param input  The input, of length {@link #inputs()}.
+	 * @param output The array to write the output to, of length at least
+	 *               {@link #outputs()}.
+	 * @throws IllegalArgumentException If the input is not of length
+	 *                                  {@link #inputs()} or the output is shorter
+	 *                                  than {@link #outputs()}.
+	 */
+	public void evaluate(double[] input, double[] output) {
+		if (input.length != network.inputs() || output.length < network.outputs())
+			throw new IllegalArgumentException("Invalid array size for FrozenNetwork evaluation.");
+		ExecutionPlan plan = plans.poll();
+		if (plan == null)
+			plan = new ExecutionPlan(network, false);
+		try {
+			plan.evaluate(input, output);
+		} finally {
+			plans.offer(plan);
+		}
+	}
+
+	public int inputs() {
+		return network.inputs();
+	}
+
+	public int outputs() {
+		return network.outputs();
+	}
+
+}
@@ -1,5 +1,7 @@
 package pala.libs.generic.ml.ai.neuralnets.api;
 
+import java.util.Arrays;
+
 public interface LossFunction {
 	/**
 	 * @return The number of inputs that this {@link LossFunction} accepts.
@@ -20,6 +22,36 @@ public interface LossFunction {
 	 */
 	double evaluateLoss(Container c, double[] correctAnswer, double... prediction);
 
+	/**
+	 * <p>
+	 * Evaluates this loss function on the prediction stored in
+	 * <code>prediction</code> starting at index <code>offset</code>, and writes
+	 * the derivative of the loss with respect to each element of the prediction
+	 * into <code>grad</code>, starting at the same index. This combines
+	 * {@link #evaluateLoss(Container, double[], double...)} and
+	 * {@link #grad(Container)} for use by {@link ExecutionPlan}s.
+	 * </p>
+	 * <p>
+	 * The default implementation delegates to those two methods. Implementations
+	 * should override it to avoid allocating.
+	 * </p>
+	 *
+	 * @param correctAnswer The correct answer.
+	 * @param prediction    The array containing the prediction.
+	 * @param grad          The array to write the gradient to.
+	 * @param offset        The index of the prediction in <code>prediction</code>
+	 *                      and of the gradient in <code>grad</code>.
+	 * @return The loss.
+	 */
+	default double evaluateLoss(double[] correctAnswer, double[] prediction, double[] grad, int offset) {
+		ContainerImpl c = new ContainerImpl();
+		double loss = evaluateLoss(c, correctAnswer,
+				Arrays.copyOfRange(prediction, offset, offset + inputs()));
+		double[] g = grad(c.disableModification());
+		System.arraycopy(g, 0, grad, offset, g.length);
+		return loss;
+	}
+
 	default double evalLoss(double[] correctAnswer, double... prediction) {
 		return evaluateLoss(Container.DUMMY, correctAnswer, prediction);
 	}
@@ -54,6 +86,13 @@ public interface LossFunction {
 				return new double[] { 2 * (double) c.get() };
 			}
 
+			@Override
+			public double evaluateLoss(double[] correctAnswer, double[] prediction, double[] grad, int offset) {
+				double diff = prediction[offset] - correctAnswer[0];
+				grad[offset] = 2 * diff;
+				return diff * diff;
+			}
+
 			@Override
 			public double evaluateLoss(Container c, double[] correctAnswer, double... prediction) {
 				assert correctAnswer.length == 1 && prediction.length == 1 : "Invalid length for provided arrays.";
@@ -77,6 +116,17 @@ public interface LossFunction {
 				return c.get();
 			}
 
+			@Override
+			public double evaluateLoss(double[] correctAnswer, double[] prediction, double[] grad, int offset) {
+				double res = 0;
+				for (int i = 0; i < inputs; i++) {
+					double diff = prediction[offset + i] - correctAnswer[i];
+					res += diff * diff;
+					grad[offset + i] = diff * (2d / inputs);
+				}
+				return res / inputs;
+			}
+
 			@Override
 			public double evaluateLoss(Container c, double[] correctAnswer, double... prediction) {
 				double[] diffs = new double[inputs];
@@ -112,6 +162,16 @@ public interface LossFunction {
 				return res;
 			}
 
+			@Override
+			public double evaluateLoss(double[] correctAnswer, double[] prediction, double[] grad, int offset) {
+				double sum = 0;
+				for (int i = 0; i < classes; i++) {
+					sum += correctAnswer[i] * Math.log(prediction[offset + i]);
+					grad[offset + i] = correctAnswer[i] / -(prediction[offset + i] + epsilon);
+				}
+				return -sum;
+			}
+
 			@Override
 			public double evaluateLoss(Container c, double[] correctAnswer, double... prediction) {
 				assert correctAnswer.length == classes && classes == prediction.length
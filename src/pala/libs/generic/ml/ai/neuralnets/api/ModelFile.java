@@ -0,0 +1,493 @@
+package pala.libs.generic.ml.ai.neuralnets.api;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import pala.libs.generic.ml.ai.neuralnets.computations.ChainComputation;
+import pala.libs.generic.ml.ai.neuralnets.computations.CombineComputation;
+import pala.libs.generic.ml.ai.neuralnets.computations.CompositeComputation;
+import pala.libs.generic.ml.ai.neuralnets.computations.Convolution2DNode;
+import pala.libs.generic.ml.ai.neuralnets.computations.DenseLayerNode;
+import pala.libs.generic.ml.ai.neuralnets.computations.OneToOneComputation;
+import pala.libs.generic.ml.ai.neuralnets.computations.ShiftNode;
+import pala.libs.generic.ml.ai.neuralnets.computations.SoftmaxComputation;
+import pala.libs.generic.ml.ai.neuralnets.computations.WeightLayerNode;
+import pala.libs.generic.ml.ai.neuralnets.computations.scalar.ReluComputation;
+import pala.libs.generic.ml.ai.neuralnets.computations.scalar.SigmoidComputation;
+import pala.libs.generic.ml.ai.neuralnets.computations.scalar.TanhComputation;
+
+/**
+ * <p>
+ * Saves networks to, and loads them from, a binary model file, which holds both
+ * the structure of the network and the weights of its {@link Node}s. The
+ * following {@link Computation}s can be saved, composed in any way:
+ * {@link ChainComputation}, {@link CombineComputation},
+ * {@link DenseLayerNode}, {@link WeightLayerNode}, {@link ShiftNode},
+ * {@link Convolution2DNode}, {@link ReluComputation},
+ * {@link SigmoidComputation}, {@link TanhComputation} and
+ * {@link SoftmaxComputation}. Subclasses of these are not supported, since
+ * they could not be recreated.
+ * </p>
+ * <p>
+ * Every number in the file is little-endian. The file begins with a 24 byte
+ * header:
+ * </p>
+ * <table border="1">
+ * <tr>
+ * <th>Offset</th>
+ * <th>Type</th>
+ * <th>Value</th>
+ * </tr>
+ * <tr>
+ * <td>0</td>
+ * <td><code>int</code></td>
+ * <td>{@value #MAGIC}, the bytes <code>PNNM</code></td>
+ * </tr>
+ * <tr>
+ * <td>4</td>
+ * <td><code>int</code></td>
+ * <td>The format version, {@value #VERSION}</td>
+ * </tr>
+ * <tr>
+ * <td>8</td>
+ * <td><code>int</code></td>
+ * <td>The number of <code>int</code>s in the structure section</td>
+ * </tr>
+ * <tr>
+ * <td>12</td>
+ * <td><code>int</code></td>
+ * <td>Reserved, <code>0</code></td>
+ * </tr>
+ * <tr>
+ * <td>16</td>
+ * <td><code>long</code></td>
+ * <td>The number of weights in the weight section</td>
+ * </tr>
+ * </table>
+ * <p>
+ * The structure section follows the header. It describes the network as a
+ * tree of <code>int</code>s, written depth first: each {@link Computation} is a
+ * tag followed by its sizes and then its children. Each {@link Computation} is
+ * numbered, from <code>0</code>, in the order it appears; a
+ * {@link Computation} that appears more than once in the network is written in
+ * full the first time and as a reference to its number afterwards.
+ * </p>
+ * <table border="1">
+ * <tr>
+ * <th>Tag</th>
+ * <th>{@link Computation}</th>
+ * <th>Followed by</th>
+ * </tr>
+ * <tr>
+ * <td>0</td>
+ * <td>Reference</td>
+ * <td>The number of an earlier {@link Computation}</td>
+ * </tr>
+ * <tr>
+ * <td>1</td>
+ * <td>{@link ChainComputation}</td>
+ * <td>The number of children, then each child</td>
+ * </tr>
+ * <tr>
+ * <td>2</td>
+ * <td>{@link CombineComputation}</td>
+ * <td>The number of children, then each child</td>
+ * </tr>
+ * <tr>
+ * <td>3</td>
+ * <td>{@link DenseLayerNode}</td>
+ * <td>Its {@link WeightLayerNode}, {@link ShiftNode} and activation
+ * function</td>
+ * </tr>
+ * <tr>
+ * <td>4</td>
+ * <td>{@link WeightLayerNode}</td>
+ * <td>Inputs, outputs</td>
+ * </tr>
+ * <tr>
+ * <td>5</td>
+ * <td>{@link ShiftNode}</td>
+ * <td>Size</td>
+ * </tr>
+ * <tr>
+ * <td>6, 7, 8, 9</td>
+ * <td>{@link ReluComputation}, {@link SigmoidComputation},
+ * {@link TanhComputation}, {@link SoftmaxComputation}</td>
+ * <td>Size</td>
+ * </tr>
+ * <tr>
+ * <td>10</td>
+ * <td>{@link Convolution2DNode}</td>
+ * <td>Channels, input width, input height, filters, kernel width, kernel
+ * height, stride, padding</td>
+ * </tr>
+ * </table>
+ * <p>
+ * The weight section starts at the first multiple of 8 after the structure
+ * section and holds the weights of every {@link Node} as <code>double</code>s,
+ * laid out as a {@link ParameterVector} of the network lays them out.
+ * </p>
+ * <p>
+ * {@link #load(Path)} memory-maps the weight section and copies each
+ * {@link Node}'s weights out of it in bulk, so loading costs no more than a
+ * memory copy of the weights, with no parsing. The weights are copied into
+ * arrays on the heap, since {@link Node}s keep their weights in arrays, and
+ * the mapping is discarded once they are. Every loaded network therefore holds
+ * its own copy of the weights, and processes that load the same file do not
+ * share model memory.
+ * </p>
+ *
+ * @author Palanath
+ *
+ */
+public final class ModelFile {
+
+	/**
+	 * The first four bytes of every model file, <code>PNNM</code>, read as a
+	 * little-endian <code>int</code>.
+	 */
+	public static final int MAGIC = 0x4D4E4E50;
+	/**
+	 * The version of the format written by {@link #save(Computation, Path)}.
+	 */
+	public static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 24;
+	/**
+	 * The size of each mapped region of the weight section. A single
+	 * {@link java.nio.MappedByteBuffer} is limited to
+	 * <code>2<sup>31</sup> - 1</code> bytes.
+	 */
+	private static final int REGION_BITS = 30, REGION_SIZE = 1 << REGION_BITS;
+	/**
+	 * The number of weights written at a time.
+	 */
+	private static final int WRITE_CHUNK = 8192;
+
+	private static final int REFERENCE = 0, CHAIN = 1, COMBINE = 2, DENSE = 3, WEIGHT_LAYER = 4, SHIFT = 5, RELU = 6,
+			SIGMOID = 7, TANH = 8, SOFTMAX = 9, CONVOLUTION_2D = 10;
+
+	private ModelFile() {
+	}
+
+	/**
+	 * Saves the provided network, with its current weights, to the specified
+	 * file, replacing the file if it exists.
+	 *
+	 * @param network The network.
+	 * @param file    The path of the file.
+	 * @throws IOException              If an {@link IOException} occurs while
+	 *                                  writing the file.
+	 * @throws IllegalArgumentException If the network contains a
+	 *                                  {@link Computation} that cannot be saved.
+	 */
+	public static void save(Computation network, Path file) throws IOException {
+		List<Integer> structure = new ArrayList<>();
+		describe(network, structure, new IdentityHashMap<>());
+		ParameterVector parameters = new ParameterVector(network);
+
+		int weightOffset = (HEADER_SIZE + structure.size() * 4 + 7) & ~7;
+		ByteBuffer head = ByteBuffer.allocate(weightOffset).order(ByteOrder.LITTLE_ENDIAN);
+		head.putInt(MAGIC).putInt(VERSION).putInt(structure.size()).putInt(0).putLong(parameters.size());
+		for (int i : structure)
+			head.putInt(i);
+		head.clear();
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (head.hasRemaining())
+				channel.write(head);
+			ByteBuffer chunk = ByteBuffer.allocateDirect(WRITE_CHUNK * 8).order(ByteOrder.LITTLE_ENDIAN);
+			DoubleBuffer doubles = chunk.asDoubleBuffer();
+			for (Node n : parameters.getNodes()) {
+				double[] weights = n.getBackingWeights();
+				for (int i = 0; i < weights.length;) {
+					int count = Math.min(doubles.remaining(), weights.length - i);
+					doubles.put(weights, i, count);
+					i += count;
+					if (!doubles.hasRemaining())
+						flush(channel, chunk, doubles);
+				}
+			}
+			flush(channel, chunk, doubles);
+		}
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer chunk, DoubleBuffer doubles) throws IOException {
+		chunk.limit(doubles.position() * 8).position(0);
+		while (chunk.hasRemaining())
+			channel.write(chunk);
+		chunk.clear();
+		doubles.clear();
+	}
+
+	private static void describe(Computation computation, List<Integer> structure, Map<Computation, Integer> ids) {
+		Integer id = ids.get(computation);
+		if (id != null) {
+			structure.add(REFERENCE);
+			structure.add(id);
+			return;
+		}
+		ids.put(computation, ids.size());
+		Class<?> type = computation.getClass();
+		if (type == DenseLayerNode.class) {
+			structure.add(DENSE);
+			for (Computation c : ((DenseLayerNode) computation).getSubComputations())
+				describe(c, structure, ids);
+		} else if (type == ChainComputation.class || type == CombineComputation.class) {
+			List<? extends Computation> children = ((CompositeComputation) computation).getSubComputations();
+			structure.add(type == ChainComputation.class ? CHAIN : COMBINE);
+			structure.add(children.size());
+			for (Computation c : children)
+				describe(c, structure, ids);
+		} else if (type == WeightLayerNode.class) {
+			structure.add(WEIGHT_LAYER);
+			structure.add(computation.inputs());
+			structure.add(computation.outputs());
+		} else if (type == ShiftNode.class || type == ReluComputation.class || type == SigmoidComputation.class
+				|| type == TanhComputation.class || type == SoftmaxComputation.class) {
+			structure.add(type == ShiftNode.class ? SHIFT
+					: type == ReluComputation.class ? RELU
+							: type == SigmoidComputation.class ? SIGMOID
+									: type == TanhComputation.class ? TANH : SOFTMAX);
+			structure.add(computation.inputs());
+		} else if (type == Convolution2DNode.class) {
+			Convolution2DNode conv = (Convolution2DNode) computation;
+			structure.add(CONVOLUTION_2D);
+			structure.add(conv.getChannels());
+			structure.add(conv.getInputWidth());
+			structure.add(conv.getInputHeight());
+			structure.add(conv.getFilters());
+			structure.add(conv.getKernelWidth());
+			structure.add(conv.getKernelHeight());
+			structure.add(conv.getStride());
+			structure.add(conv.getPadding());
+		} else
+			throw new IllegalArgumentException("Cannot save a " + type.getName() + " to a model file.");
+	}
+
+	/**
+	 * Loads a network from the specified model file.
+	 *
+	 * @param file The path of the file.
+	 * @return The network, with the weights stored in the file.
+	 * @throws IOException              If an {@link IOException} occurs while
+	 *                                  reading or mapping the file.
+	 * @throws IllegalArgumentException If the file is not a valid model file.
+	 */
+	public static Computation load(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer header = read(channel, 0, HEADER_SIZE);
+			if (header.getInt() != MAGIC)
+				throw new IllegalArgumentException("Malformed model file. Not a model file.");
+			int version = header.getInt();
+			if (version != VERSION)
+				throw new IllegalArgumentException("Malformed model file. Unsupported version: " + version);
+			int structureSize = header.getInt();
+			header.getInt();
+			long weightCount = header.getLong();
+			if (structureSize < 0 || HEADER_SIZE + structureSize * 4L > channel.size())
+				throw new IllegalArgumentException("Malformed model file. Invalid structure size: " + structureSize);
+			long weightOffset = (HEADER_SIZE + structureSize * 4L + 7) & ~7;
+			if (weightCount < 0 || weightCount > (channel.size() - weightOffset) / 8)
+				throw new IllegalArgumentException("Malformed model file. Invalid weight count: " + weightCount);
+
+			IntBuffer structure = read(channel, HEADER_SIZE, structureSize * 4).asIntBuffer();
+			Computation network;
+			try {
+				network = build(structure, new ArrayList<>(), new long[] { weightCount });
+			} catch (BufferUnderflowException e) {
+				throw new IllegalArgumentException("Malformed model file. End of structure reached.");
+			}
+			if (structure.hasRemaining())
+				throw new IllegalArgumentException("Malformed model file. Trailing data after structure.");
+
+			ParameterVector parameters = new ParameterVector(network);
+			if (parameters.size() != weightCount)
+				throw new IllegalArgumentException("Malformed model file. Expected " + parameters.size()
+						+ " weights but found " + weightCount + '.');
+			DoubleBuffer[] regions = new DoubleBuffer[(int) ((weightCount * 8 + REGION_SIZE - 1) >>> REGION_BITS)];
+			for (int i = 0; i < regions.length; i++) {
+				long start = (long) i << REGION_BITS;
+				regions[i] = channel
+						.map(MapMode.READ_ONLY, weightOffset + start, Math.min(REGION_SIZE, weightCount * 8 - start))
+						.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+			}
+			long pos = 0;
+			for (Node n : parameters.getNodes()) {
+				double[] weights = n.getBackingWeights();
+				for (int i = 0; i < weights.length;) {
+					DoubleBuffer region = regions[(int) (pos >>> (REGION_BITS - 3))];
+					region.position((int) (pos & (REGION_SIZE / 8 - 1)));
+					int count = Math.min(region.remaining(), weights.length - i);
+					region.get(weights, i, count);
+					i += count;
+					pos += count;
+				}
+			}
+			return network;
+		}
+	}
+
+	/**
+	 * Creates a copy of the provided network, with new {@link Node}s holding
+	 * copies of its weights, as saving and loading it would.
+	 *
+	 * @param network The network.
+	 * @return The copy.
+	 * @throws IllegalArgumentException If the network contains a
+	 *                                  {@link Computation} that cannot be saved.
+	 */
+	static Computation copy(Computation network) {
+		List<Integer> structure = new ArrayList<>();
+		describe(network, structure, new IdentityHashMap<>());
+		IntBuffer buffer = IntBuffer.allocate(structure.size());
+		for (int i : structure)
+			buffer.put(i);
+		buffer.flip();
+		Computation copy = build(buffer, new ArrayList<>(), new long[] { Long.MAX_VALUE });
+		new ParameterVector(copy).restore(new ParameterVector(network).save());
+		return copy;
+	}
+
+	private static ByteBuffer read(FileChannel channel, long position, int size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining())
+			if (channel.read(buffer, position + buffer.position()) < 0)
+				throw new IllegalArgumentException("Malformed model file. End of file reached.");
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Builds the next {@link Computation} described by <code>structure</code>.
+	 * <code>weights[0]</code> holds the number of weights that the
+	 * {@link Node}s built so far leave of the number declared by the file, and is
+	 * reduced by each {@link Node} before it is allocated, so that a malformed
+	 * file cannot make this method allocate more than the file could hold.
+	 */
+	private static Computation build(IntBuffer structure, List<Computation> ids, long[] weights) {
+		int tag = structure.get();
+		if (tag == REFERENCE) {
+			int id = structure.get();
+			if (id < 0 || id >= ids.size() || ids.get(id) == null)
+				throw new IllegalArgumentException("Malformed model file. Reference to unknown computation: " + id);
+			return ids.get(id);
+		}
+		// Reserve this computation's number before building its children.
+		int id = ids.size();
+		ids.add(null);
+		Computation result;
+		switch (tag) {
+		case CHAIN:
+		case COMBINE:
+			int count = count(structure);
+			// Every child takes at least one int.
+			if (count > structure.remaining())
+				throw new IllegalArgumentException("Malformed model file. Invalid child count: " + count);
+			Computation[] children = new Computation[count];
+			for (int i = 0; i < children.length; i++)
+				children[i] = build(structure, ids, weights);
+			if (tag == CHAIN) {
+				if (children.length == 0)
+					throw new IllegalArgumentException("Malformed model file. Empty ChainComputation.");
+				for (int i = 0; i < children.length - 1; i++)
+					if (children[i].outputs() != children[i + 1].inputs())
+						throw new IllegalArgumentException("Malformed model file. Chained sizes do not match.");
+				result = new ChainComputation(children);
+			} else
+				result = new CombineComputation(children);
+			break;
+		case DENSE:
+			Computation layer = build(structure, ids, weights), bias = build(structure, ids, weights),
+					activation = build(structure, ids, weights);
+			if (!(layer instanceof WeightLayerNode) || !(bias instanceof ShiftNode)
+					|| !(activation instanceof OneToOneComputation))
+				throw new IllegalArgumentException("Malformed model file. Invalid parts for a DenseLayerNode.");
+			result = new DenseLayerNode((WeightLayerNode) layer, (ShiftNode) bias, (OneToOneComputation) activation);
+			break;
+		case WEIGHT_LAYER:
+			int inputs = count(structure), outputs = count(structure);
+			take(weights, size(inputs, outputs));
+			result = new WeightLayerNode(inputs, outputs);
+			break;
+		case SHIFT:
+			int size = count(structure);
+			take(weights, size);
+			result = new ShiftNode(size);
+			break;
+		case RELU:
+			result = new ReluComputation(count(structure));
+			break;
+		case SIGMOID:
+			result = new SigmoidComputation(count(structure));
+			break;
+		case TANH:
+			result = new TanhComputation(count(structure));
+			break;
+		case SOFTMAX:
+			result = new SoftmaxComputation(count(structure));
+			break;
+		case CONVOLUTION_2D:
+			int channels = count(structure), width = count(structure), height = count(structure),
+					filters = count(structure), kernelWidth = count(structure), kernelHeight = count(structure),
+					stride = count(structure), padding = count(structure);
+			// The output of each filter is no larger than the padded input.
+			size(channels, width, height);
+			size(filters, width + 2L * padding, height + 2L * padding);
+			take(weights, size(filters, channels, kernelWidth, kernelHeight));
+			result = new Convolution2DNode(channels, width, height, filters, kernelWidth, kernelHeight, stride,
+					padding);
+			break;
+		default:
+			throw new IllegalArgumentException("Malformed model file. Unknown tag: " + tag);
+		}
+		ids.set(id, result);
+		return result;
+	}
+
+	/**
+	 * Returns the product of the provided sizes, as the size of an array.
+	 *
+	 * @throws IllegalArgumentException If the product is too large for an array.
+	 */
+	private static int size(long... factors) {
+		long size = 1;
+		try {
+			for (long f : factors)
+				size = Math.multiplyExact(size, f);
+		} catch (ArithmeticException e) {
+			size = Long.MAX_VALUE;
+		}
+		if (size > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("Malformed model file. Size too large: " + Arrays.toString(factors));
+		return (int) size;
+	}
+
+	private static void take(long[] weights, int count) {
+		if (count > weights[0])
+			throw new IllegalArgumentException("Malformed model file. More weights than declared.");
+		weights[0] -= count;
+	}
+
+	private static int count(IntBuffer structure) {
+		int count = structure.get();
+		if (count < 0)
+			throw new IllegalArgumentException("Malformed model file. Negative size: " + count);
+		return count;
+	}
+
+}
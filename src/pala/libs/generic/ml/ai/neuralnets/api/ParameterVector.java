@@ -0,0 +1,225 @@
+package pala.libs.generic.ml.ai.neuralnets.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import pala.libs.generic.ml.ai.neuralnets.computations.CompositeComputation;
+
+/**
+ * <p>
+ * Lays the weights of every {@link Node} in a network out, one {@link Node}
+ * after another, in a single vector of length {@link #size()}. Each
+ * {@link Node}'s weights occupy the range starting at {@link #offset(Node)}
+ * and of length {@link Node#weights()}. Gradients, snapshots of the weights and
+ * the state kept by optimizers can then all be stored in plain
+ * <code>double</code> arrays of that length, indexed the same way, and
+ * processed with single loops instead of through a {@link Map} keyed by
+ * {@link Node}.
+ * </p>
+ * <p>
+ * The {@link Node}s of a network are the network itself, if it is a
+ * {@link Node}, and the {@link Node}s of each of its
+ * {@link CompositeComputation#getSubComputations() sub-computations}, if it is
+ * a {@link CompositeComputation}, in order. A {@link Node} used more than once
+ * is only laid out once. {@link Node}s keep their own weight arrays; this class
+ * copies between those and vectors of its layout.
+ * </p>
+ *
+ * @author Palanath
+ *
+ */
+public final class ParameterVector {
+
+	private final Node[] nodes;
+	private final int[] offsets;
+	private final Map<Node, Integer> indices = new IdentityHashMap<>();
+	private final int size;
+
+	/**
+	 * Lays out the weights of the {@link Node}s in the provided network.
+	 *
+	 * @param network The network.
+	 */
+	public ParameterVector(Computation network) {
+		List<Node> nodes = new ArrayList<>();
+		collect(network, nodes);
+		this.nodes = nodes.toArray(new Node[nodes.size()]);
+		offsets = new int[this.nodes.length];
+		int size = 0;
+		for (int i = 0; i < this.nodes.length; i++) {
+			offsets[i] = size;
+			size += this.nodes[i].weights();
+		}
+		this.size = size;
+	}
+
+	private void collect(Computation computation, List<Node> nodes) {
+		if (computation instanceof Node) {
+			if (!indices.containsKey(computation)) {
+				indices.put((Node) computation, nodes.size());
+				nodes.add((Node) computation);
+			}
+		} else if (computation instanceof CompositeComputation)
+			for (Computation c : ((CompositeComputation) computation).getSubComputations())
+				collect(c, nodes);
+	}
+
+	/**
+	 * Clips the provided gradient vector so that its Euclidean norm is at most
+	 * <code>maxNorm</code>, by scaling the whole vector down if it is larger.
+	 *
+	 * @param gradients The gradient vector, which is modified in place.
+	 * @param maxNorm   The largest norm to allow.
+	 * @return The norm of the vector before clipping.
+	 */
+	public static double clipNorm(double[] gradients, double maxNorm) {
+		double sum = 0;
+		for (int i = 0; i < gradients.length; i++)
+			sum += gradients[i] * gradients[i];
+		double norm = Math.sqrt(sum);
+		if (norm > maxNorm) {
+			double scale = maxNorm / norm;
+			for (int i = 0; i < gradients.length; i++)
+				gradients[i] *= scale;
+		}
+		return norm;
+	}
+
+	/**
+	 * Copies the gradients in the provided {@link WeightGradStorage} into a new
+	 * vector of this layout. {@link Node}s without gradients in the
+	 * {@link WeightGradStorage} get gradients of <code>0</code>.
+	 *
+	 * @param grads The {@link WeightGradStorage}.
+	 * @return The gradient vector.
+	 */
+	public double[] gather(WeightGradStorage grads) {
+		double[] vector = new double[size];
+		gather(grads, vector);
+		return vector;
+	}
+
+	/**
+	 * Copies the gradients in the provided {@link WeightGradStorage} into the
+	 * provided vector, as {@link #gather(WeightGradStorage)} does.
+	 *
+	 * @param grads  The {@link WeightGradStorage}.
+	 * @param vector The vector, of length {@link #size()}.
+	 * @throws IllegalArgumentException If the {@link WeightGradStorage} contains
+	 *                                  gradients for a {@link Node} that is not
+	 *                                  part of this layout.
+	 */
+	public void gather(WeightGradStorage grads, double[] vector) {
+		assert vector.length == size : "Invalid vector size for ParameterVector.";
+		Arrays.fill(vector, 0);
+		for (Entry<Node, double[]> e : grads.entries())
+			System.arraycopy(e.getValue(), 0, vector, offset(e.getKey()), e.getValue().length);
+	}
+
+	/**
+	 * Returns the {@link Node}s of this layout, in order.
+	 *
+	 * @return An unmodifiable {@link List} of the {@link Node}s.
+	 */
+	public List<Node> getNodes() {
+		return Collections.unmodifiableList(Arrays.asList(nodes));
+	}
+
+	/**
+	 * Returns the index of the first weight of the provided {@link Node} in
+	 * vectors of this layout.
+	 *
+	 * @param node The {@link Node}.
+	 * @return The offset of the {@link Node}'s weights.
+	 * @throws IllegalArgumentException If the {@link Node} is not part of this
+	 *                                  layout.
+	 */
+	public int offset(Node node) {
+		Integer index = indices.get(node);
+		if (index == null)
+			throw new IllegalArgumentException("The Node is not part of this ParameterVector.");
+		return offsets[index];
+	}
+
+	/**
+	 * Copies the provided vector into the weights of the {@link Node}s of this
+	 * layout.
+	 *
+	 * @param vector The vector, of length {@link #size()}.
+	 */
+	public void restore(double[] vector) {
+		assert vector.length == size : "Invalid vector size for ParameterVector.";
+		for (int n = 0; n < nodes.length; n++)
+			System.arraycopy(vector, offsets[n], nodes[n].weights, 0, nodes[n].weights.length);
+	}
+
+	/**
+	 * Copies the weights of the {@link Node}s of this layout into a new vector.
+	 *
+	 * @return The vector.
+	 */
+	public double[] save() {
+		double[] vector = new double[size];
+		save(vector);
+		return vector;
+	}
+
+	/**
+	 * Copies the weights of the {@link Node}s of this layout into the provided
+	 * vector.
+	 *
+	 * @param vector The vector, of length {@link #size()}.
+	 */
+	public void save(double[] vector) {
+		assert vector.length == size : "Invalid vector size for ParameterVector.";
+		for (int n = 0; n < nodes.length; n++)
+			System.arraycopy(nodes[n].weights, 0, vector, offsets[n], nodes[n].weights.length);
+	}
+
+	/**
+	 * Multiplies every weight of the {@link Node}s of this layout by the provided
+	 * factor.
+	 *
+	 * @param factor The factor.
+	 */
+	public void scale(double factor) {
+		for (int n = 0; n < nodes.length; n++) {
+			double[] weights = nodes[n].weights;
+			for (int i = 0; i < weights.length; i++)
+				weights[i] *= factor;
+		}
+	}
+
+	/**
+	 * Returns the total number of weights in the {@link Node}s of this layout,
+	 * which is the length of vectors of this layout.
+	 *
+	 * @return The size of this layout.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Subtracts <code>scale</code> times the provided gradient vector from the
+	 * weights of the {@link Node}s of this layout.
+	 *
+	 * @param gradients The gradient vector, of length {@link #size()}.
+	 * @param scale     The amount to scale the gradients by, e.g. the learning
+	 *                  rate.
+	 */
+	public void subtract(double[] gradients, double scale) {
+		assert gradients.length == size : "Invalid vector size for ParameterVector.";
+		for (int n = 0; n < nodes.length; n++) {
+			double[] weights = nodes[n].weights;
+			for (int i = 0, j = offsets[n]; i < weights.length; i++, j++)
+				weights[i] -= scale * gradients[j];
+		}
+	}
+
+}
@@ -5,6 +5,9 @@ import java.util.Map;
 
 /**
  * An object used to store and save the weights for {@link Node}s in a network.
+ * To save and restore the weights of a whole network repeatedly, the vectors
+ * of a {@link ParameterVector} are cheaper, as they are copied to and from
+ * without any lookups.
  * 
  * @author Palanath
  *
@@ -4,6 +4,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import pala.libs.generic.JavaTools;
 import pala.libs.generic.util.Pair;
@@ -30,6 +31,32 @@ public class WeightGradStorage implements Iterable<Pair<double[], double[]>>, Cl
 		this.weightGrads.put(node, weightGrads);
 	}
 
+	/**
+	 * Adds every weight gradient in the provided {@link WeightGradStorage} to the
+	 * corresponding weight gradient in this {@link WeightGradStorage}. Gradients
+	 * for {@link Node}s not yet in this {@link WeightGradStorage} are copied in.
+	 *
+	 * @param other The {@link WeightGradStorage} whose gradients to add.
+	 */
+	public void accumulate(WeightGradStorage other) {
+		for (Entry<Node, double[]> e : other.weightGrads.entrySet()) {
+			double[] grads = weightGrads.get(e.getKey());
+			if (grads == null)
+				weightGrads.put(e.getKey(), e.getValue().clone());
+			else
+				for (int i = 0; i < grads.length; i++)
+					grads[i] += e.getValue()[i];
+		}
+	}
+
+	/**
+	 * Returns the entries of the backing {@link Map}, for iteration without
+	 * allocating a {@link Pair} per entry.
+	 */
+	Set<Entry<Node, double[]>> entries() {
+		return weightGrads.entrySet();
+	}
+
 	public double[] get(Node node) {
 		return weightGrads.get(node);
 	}
@@ -70,20 +97,19 @@ public class WeightGradStorage implements Iterable<Pair<double[], double[]>>, Cl
 
 	public static WeightGradStorage average(WeightGradStorage... items) {
 		WeightGradStorage res = items[0].clone();
-		for (int i = 1; i < items.length; i++) {
-			final int ind = i;
-			res.all().forEach(a -> {
-				assert items[ind].weightGrads.get(a.first).length == a.second.length : "The " + ind
+		for (Entry<Node, double[]> e : res.weightGrads.entrySet()) {
+			double[] sum = e.getValue();
+			for (int i = 1; i < items.length; i++) {
+				double[] grads = items[i].weightGrads.get(e.getKey());
+				assert grads.length == sum.length : "The " + i
 						+ "th WeightGradStorage has a weight gradient array that does not match the length of the previous WeightGradStorages ("
-						+ a.second.length + ").";
-				for (int j = 0; j < a.second.length; j++)
-					a.second[j] += items[ind].weightGrads.get(a.first)[j];
-			});
+						+ sum.length + ").";
+				for (int j = 0; j < sum.length; j++)
+					sum[j] += grads[j];
+			}
+			for (int j = 0; j < sum.length; j++)
+				sum[j] /= items.length;
 		}
-		res.all().forEach(a -> {
-			for (int i = 0; i < a.second.length; i++)
-				a.second[i] /= items.length;
-		});
 		return res;
 	}
 }
@@ -7,6 +7,7 @@ import java.util.List;
 import pala.libs.generic.ml.ai.neuralnets.api.Computation;
 import pala.libs.generic.ml.ai.neuralnets.api.Container;
 import pala.libs.generic.ml.ai.neuralnets.api.ContainerImpl;
+import pala.libs.generic.ml.ai.neuralnets.api.ExecutionPlan;
 import pala.libs.generic.ml.ai.neuralnets.api.WeightGradStorage;
 
 public class ChainComputation implements CompositeComputation {
@@ -55,6 +56,52 @@ public class ChainComputation implements CompositeComputation {
 		return outGrad;
 	}
 
+	@Override
+	public double[] evaluateBatch(Container c, int batchSize, double[] input) {
+		ContainerImpl[] subcontexts = new ContainerImpl[nodes.length];
+		for (int i = 0; i < nodes.length; i++)
+			input = nodes[i].evaluateBatch(subcontexts[i] = new ContainerImpl(), batchSize, input);
+		c.set(subcontexts);
+		return input;
+	}
+
+	@Override
+	public double[] gradBatch(Container ctx, WeightGradStorage weightStorage, int batchSize, double[] outGrad) {
+		ContainerImpl[] subcontexts = ctx.get();
+		for (int i = nodes.length - 1; i >= 0; i--)
+			outGrad = nodes[i].gradBatch(subcontexts[i].disableModification(), weightStorage, batchSize, outGrad);
+		return outGrad;
+	}
+
+	/**
+	 * Compiles each {@link Computation} in this chain, giving each one's output,
+	 * other than the last's, its own region of the plan, which is the input region
+	 * of the next.
+	 */
+	@Override
+	public ExecutionPlan.Step plan(ExecutionPlan plan, int input, int output) {
+		final ExecutionPlan.Step[] steps = new ExecutionPlan.Step[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			int out = i == nodes.length - 1 ? output : plan.allocate(nodes[i].outputs());
+			steps[i] = nodes[i].plan(plan, input, out);
+			input = out;
+		}
+		return new ExecutionPlan.Step() {
+
+			@Override
+			public void forward(double[] values) {
+				for (int i = 0; i < steps.length; i++)
+					steps[i].forward(values);
+			}
+
+			@Override
+			public void backward(double[] values, double[] grads) {
+				for (int i = steps.length - 1; i >= 0; i--)
+					steps[i].backward(values, grads);
+			}
+		};
+	}
+
 	@Override
 	public List<? extends Computation> getSubComputations() {
 		return Collections.unmodifiableList(Arrays.asList(nodes));
@@ -7,6 +7,7 @@ import java.util.List;
 import pala.libs.generic.ml.ai.neuralnets.api.Computation;
 import pala.libs.generic.ml.ai.neuralnets.api.Container;
 import pala.libs.generic.ml.ai.neuralnets.api.ContainerImpl;
+import pala.libs.generic.ml.ai.neuralnets.api.ExecutionPlan;
 import pala.libs.generic.ml.ai.neuralnets.api.WeightGradStorage;
 
 public class CombineComputation implements CompositeComputation {
@@ -65,6 +66,81 @@ public class CombineComputation implements CompositeComputation {
 		return inputGrad;
 	}
 
+	@Override
+	public double[] evaluateBatch(Container c, int batchSize, double[] input) {
+		double[] o = new double[batchSize * outputs];
+		int iind = 0, oind = 0;
+		ContainerImpl[] subcontexts = new ContainerImpl[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			int ins = nodes[i].inputs(), outs = nodes[i].outputs();
+			double[] subNodeOutput = nodes[i].evaluateBatch(subcontexts[i] = new ContainerImpl(), batchSize,
+					columns(input, batchSize, inputs, iind, ins));
+			for (int b = 0; b < batchSize; b++)
+				System.arraycopy(subNodeOutput, b * outs, o, b * outputs + oind, outs);
+			iind += ins;
+			oind += outs;
+		}
+		c.set(subcontexts);
+		return o;
+	}
+
+	@Override
+	public double[] gradBatch(Container ctx, WeightGradStorage weightStorage, int batchSize, double[] outGrad) {
+		ContainerImpl[] subcontexts = ctx.get();
+
+		double[] inputGrad = new double[batchSize * inputs];
+		int iind = 0, oind = 0;
+		for (int i = 0; i < nodes.length; i++) {
+			int ins = nodes[i].inputs(), outs = nodes[i].outputs();
+			double[] subNodeGrad = nodes[i].gradBatch(subcontexts[i].disableModification(), weightStorage, batchSize,
+					columns(outGrad, batchSize, outputs, oind, outs));
+			for (int b = 0; b < batchSize; b++)
+				System.arraycopy(subNodeGrad, b * ins, inputGrad, b * inputs + iind, ins);
+			iind += ins;
+			oind += outs;
+		}
+		return inputGrad;
+	}
+
+	/**
+	 * Compiles each {@link Computation} to work directly on its part of this
+	 * {@link Computation}'s input and output regions, so nothing is copied.
+	 */
+	@Override
+	public ExecutionPlan.Step plan(ExecutionPlan plan, int input, int output) {
+		final ExecutionPlan.Step[] steps = new ExecutionPlan.Step[nodes.length];
+		for (int i = 0, iind = input, oind = output; i < nodes.length; i++) {
+			steps[i] = nodes[i].plan(plan, iind, oind);
+			iind += nodes[i].inputs();
+			oind += nodes[i].outputs();
+		}
+		return new ExecutionPlan.Step() {
+
+			@Override
+			public void forward(double[] values) {
+				for (int i = 0; i < steps.length; i++)
+					steps[i].forward(values);
+			}
+
+			@Override
+			public void backward(double[] values, double[] grads) {
+				for (int i = 0; i < steps.length; i++)
+					steps[i].backward(values, grads);
+			}
+		};
+	}
+
+	/**
+	 * Copies the columns <code>[start, start + count)</code> of the provided
+	 * row-major matrix, which has <code>width</code> columns, into a new matrix.
+	 */
+	private static double[] columns(double[] matrix, int rows, int width, int start, int count) {
+		double[] res = new double[rows * count];
+		for (int r = 0; r < rows; r++)
+			System.arraycopy(matrix, r * width + start, res, r * count, count);
+		return res;
+	}
+
 	@Override
 	public List<? extends Computation> getSubComputations() {
 		return Collections.unmodifiableList(Arrays.asList(nodes));
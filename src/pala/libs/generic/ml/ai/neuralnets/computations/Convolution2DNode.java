@@ -0,0 +1,427 @@
+package pala.libs.generic.ml.ai.neuralnets.computations;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.IntToDoubleFunction;
+
+import pala.libs.generic.ml.ai.neuralnets.api.Container;
+import pala.libs.generic.ml.ai.neuralnets.api.ExecutionPlan;
+import pala.libs.generic.ml.ai.neuralnets.api.Node;
+import pala.libs.generic.ml.ai.neuralnets.api.WeightGradStorage;
+
+/**
+ * <p>
+ * A 2D convolution over an image with any number of channels, producing an
+ * image with one channel per filter. Each filter spans every input channel, and
+ * is slid over the input in steps of <code>stride</code> pixels, with the input
+ * padded by <code>padding</code> pixels of <code>0</code> on every side.
+ * </p>
+ * <p>
+ * Images are stored channel by channel, and each channel row by row, so that
+ * pixel <code>(x, y)</code> of channel <code>c</code> is at index
+ * <code>(c * height + y) * width + x</code>. The weights are stored filter by
+ * filter, in the same layout as the part of the input each filter covers: the
+ * weight of filter <code>f</code> for pixel <code>(kx, ky)</code> of channel
+ * <code>c</code> is at index
+ * <code>((f * channels + c) * kernelHeight + ky) * kernelWidth + kx</code>.
+ * </p>
+ * <p>
+ * Small filters are convolved with direct loops, which walk each row of the
+ * input and output contiguously. When each filter covers at least
+ * {@link #GEMM_PATCH_SIZE} inputs and there is more than one filter, the
+ * convolution is instead computed by copying the patch of input under each
+ * output pixel into a column of a matrix (<i>im2col</i>), and multiplying the
+ * filter matrix by it with the blocked {@link Matrices} kernels, which reuse
+ * each column for every filter. Batches are processed one image at a time.
+ * </p>
+ *
+ * @author Palanath
+ *
+ */
+public class Convolution2DNode extends Node {
+
+	/**
+	 * The smallest number of inputs covered by each filter for which the im2col
+	 * path is used.
+	 */
+	private static final int GEMM_PATCH_SIZE = 64;
+
+	private final int channels, inputWidth, inputHeight, filters, kernelWidth, kernelHeight, stride, padding,
+			outputWidth, outputHeight;
+	/**
+	 * Whether the im2col path is used.
+	 */
+	private final boolean gemm;
+
+	public Convolution2DNode(int channels, int inputWidth, int inputHeight, int filters, int kernelWidth,
+			int kernelHeight, int stride, int padding) {
+		this((Random) null, channels, inputWidth, inputHeight, filters, kernelWidth, kernelHeight, stride, padding);
+	}
+
+	public Convolution2DNode(IntToDoubleFunction populator, int channels, int inputWidth, int inputHeight,
+			int filters, int kernelWidth, int kernelHeight, int stride, int padding) {
+		this(channels, inputWidth, inputHeight, filters, kernelWidth, kernelHeight, stride, padding);
+		populateWeights(populator);
+	}
+
+	/**
+	 * Creates a new {@link Convolution2DNode}.
+	 *
+	 * @param weightRandomizer The {@link Random} to randomize the weights with, or
+	 *                         <code>null</code> to leave them <code>0</code>.
+	 * @param channels         The number of channels of the input image.
+	 * @param inputWidth       The width of the input image.
+	 * @param inputHeight      The height of the input image.
+	 * @param filters          The number of filters, which is the number of
+	 *                         channels of the output image.
+	 * @param kernelWidth      The width of each filter.
+	 * @param kernelHeight     The height of each filter.
+	 * @param stride           The distance, in pixels, between the positions of
+	 *                         the filters on the input, both horizontally and
+	 *                         vertically.
+	 * @param padding          The number of pixels of <code>0</code> to pad each
+	 *                         side of the input with.
+	 * @throws IllegalArgumentException If the filters do not fit in the padded
+	 *                                  input, or any size is not positive.
+	 */
+	public Convolution2DNode(Random weightRandomizer, int channels, int inputWidth, int inputHeight, int filters,
+			int kernelWidth, int kernelHeight, int stride, int padding) {
+		super(weightRandomizer, channels * inputWidth * inputHeight,
+				filters * outputSize(inputWidth, kernelWidth, stride, padding)
+						* outputSize(inputHeight, kernelHeight, stride, padding),
+				filters * channels * kernelWidth * kernelHeight);
+		if (channels <= 0 || filters <= 0)
+			throw new IllegalArgumentException("Convolution2DNode needs at least one channel and one filter.");
+		this.channels = channels;
+		this.inputWidth = inputWidth;
+		this.inputHeight = inputHeight;
+		this.filters = filters;
+		this.kernelWidth = kernelWidth;
+		this.kernelHeight = kernelHeight;
+		this.stride = stride;
+		this.padding = padding;
+		outputWidth = outputSize(inputWidth, kernelWidth, stride, padding);
+		outputHeight = outputSize(inputHeight, kernelHeight, stride, padding);
+		gemm = filters > 1 && patchSize() >= GEMM_PATCH_SIZE;
+	}
+
+	private static int outputSize(int input, int kernel, int stride, int padding) {
+		if (input <= 0 || kernel <= 0 || stride <= 0 || padding < 0)
+			throw new IllegalArgumentException("Invalid size for Convolution2DNode.");
+		if (kernel > input + 2 * padding)
+			throw new IllegalArgumentException("Convolution2DNode kernel is larger than its padded input.");
+		return (input + 2 * padding - kernel) / stride + 1;
+	}
+
+	public int getChannels() {
+		return channels;
+	}
+
+	public int getFilters() {
+		return filters;
+	}
+
+	public int getInputHeight() {
+		return inputHeight;
+	}
+
+	public int getInputWidth() {
+		return inputWidth;
+	}
+
+	public int getKernelHeight() {
+		return kernelHeight;
+	}
+
+	public int getKernelWidth() {
+		return kernelWidth;
+	}
+
+	public int getOutputHeight() {
+		return outputHeight;
+	}
+
+	public int getOutputWidth() {
+		return outputWidth;
+	}
+
+	public int getPadding() {
+		return padding;
+	}
+
+	public int getStride() {
+		return stride;
+	}
+
+	/**
+	 * The number of rows of the im2col matrix: the number of inputs covered by one
+	 * filter.
+	 */
+	private int patchSize() {
+		return channels * kernelHeight * kernelWidth;
+	}
+
+	/**
+	 * The number of columns of the im2col matrix: the number of pixels in one
+	 * channel of the output.
+	 */
+	private int positions() {
+		return outputHeight * outputWidth;
+	}
+
+	/**
+	 * Copies the patch of the image at <code>input[offset]</code> under each output
+	 * pixel into the columns of <code>col</code>, which is a
+	 * {@link #patchSize()}<code> x </code>{@link #positions()} matrix. Padding is
+	 * copied as <code>0</code>.
+	 */
+	private void im2col(double[] input, int offset, double[] col) {
+		int positions = positions();
+		for (int c = 0, row = 0; c < channels; c++) {
+			int channel = offset + c * inputHeight * inputWidth;
+			for (int ky = 0; ky < kernelHeight; ky++)
+				for (int kx = 0; kx < kernelWidth; kx++, row++) {
+					int dst = row * positions;
+					for (int oy = 0; oy < outputHeight; oy++) {
+						int iy = oy * stride - padding + ky;
+						if (iy < 0 || iy >= inputHeight) {
+							Arrays.fill(col, dst, dst += outputWidth, 0);
+							continue;
+						}
+						int src = channel + iy * inputWidth;
+						for (int ox = 0, ix = kx - padding; ox < outputWidth; ox++, ix += stride)
+							col[dst++] = ix < 0 || ix >= inputWidth ? 0 : input[src + ix];
+					}
+				}
+		}
+	}
+
+	/**
+	 * Adds each element of <code>col</code>, a matrix laid out as by
+	 * {@link #im2col(double[], int, double[])}, to the element of the image at
+	 * <code>input[offset]</code> that it was copied from. Elements copied from
+	 * padding are dropped.
+	 */
+	private void col2im(double[] col, double[] input, int offset) {
+		int positions = positions();
+		for (int c = 0, row = 0; c < channels; c++) {
+			int channel = offset + c * inputHeight * inputWidth;
+			for (int ky = 0; ky < kernelHeight; ky++)
+				for (int kx = 0; kx < kernelWidth; kx++, row++) {
+					int src = row * positions;
+					for (int oy = 0; oy < outputHeight; oy++, src += outputWidth) {
+						int iy = oy * stride - padding + ky;
+						if (iy < 0 || iy >= inputHeight)
+							continue;
+						int dst = channel + iy * inputWidth;
+						for (int ox = 0, ix = kx - padding; ox < outputWidth; ox++, ix += stride)
+							if (ix >= 0 && ix < inputWidth)
+								input[dst + ix] += col[src + ox];
+					}
+				}
+		}
+	}
+
+	/**
+	 * Returns the first output column whose filter position, offset by
+	 * <code>kx</code>, lies within the input.
+	 */
+	private int firstColumn(int kx) {
+		return Math.max(0, Math.floorDiv(padding - kx + stride - 1, stride));
+	}
+
+	/**
+	 * Returns one past the last output column whose filter position, offset by
+	 * <code>kx</code>, lies within the input.
+	 */
+	private int lastColumn(int kx) {
+		return Math.min(outputWidth, Math.floorDiv(inputWidth - 1 + padding - kx, stride) + 1);
+	}
+
+	/**
+	 * Convolves the image at <code>input[inOffset]</code> with direct loops,
+	 * adding the result to <code>output[outOffset]</code>.
+	 */
+	private void convolve(double[] input, int inOffset, double[] output, int outOffset) {
+		for (int f = 0, w = 0; f < filters; f++)
+			for (int c = 0; c < channels; c++)
+				for (int ky = 0; ky < kernelHeight; ky++)
+					for (int kx = 0; kx < kernelWidth; kx++, w++) {
+						double weight = weights[w];
+						int first = firstColumn(kx), last = lastColumn(kx);
+						if (last <= first)
+							continue;
+						for (int oy = 0; oy < outputHeight; oy++) {
+							int iy = oy * stride - padding + ky;
+							if (iy < 0 || iy >= inputHeight)
+								continue;
+							int src = inOffset + (c * inputHeight + iy) * inputWidth + kx - padding,
+									dst = outOffset + (f * outputHeight + oy) * outputWidth;
+							for (int ox = first; ox < last; ox++)
+								output[dst + ox] += weight * input[src + ox * stride];
+						}
+					}
+	}
+
+	/**
+	 * Computes the gradients of a convolution by {@link #convolve(double[], int,
+	 * double[], int)} with direct loops, adding them to <code>inGrad</code> and
+	 * <code>weightGrad</code>.
+	 */
+	private void convolveBackward(double[] input, int inOffset, double[] outGrad, int outOffset, double[] inGrad,
+			double[] weightGrad) {
+		for (int f = 0, w = 0; f < filters; f++)
+			for (int c = 0; c < channels; c++)
+				for (int ky = 0; ky < kernelHeight; ky++)
+					for (int kx = 0; kx < kernelWidth; kx++, w++) {
+						double weight = weights[w], sum = 0;
+						int first = firstColumn(kx), last = lastColumn(kx);
+						if (last <= first)
+							continue;
+						for (int oy = 0; oy < outputHeight; oy++) {
+							int iy = oy * stride - padding + ky;
+							if (iy < 0 || iy >= inputHeight)
+								continue;
+							int src = inOffset + (c * inputHeight + iy) * inputWidth + kx - padding,
+									dst = outOffset + (f * outputHeight + oy) * outputWidth;
+							for (int ox = first; ox < last; ox++) {
+								double g = outGrad[dst + ox];
+								sum += g * input[src + ox * stride];
+								inGrad[src + ox * stride] += weight * g;
+							}
+						}
+						weightGrad[w] += sum;
+					}
+	}
+
+	/**
+	 * Convolves the image at <code>input[inOffset]</code>, writing the result to
+	 * <code>output[outOffset]</code>. On the im2col path, <code>col</code>
+	 * receives the im2col matrix of the image and <code>buffer</code> holds the
+	 * result before it is copied to <code>output</code>; otherwise both are
+	 * unused and may be <code>null</code>.
+	 */
+	private void forward(double[] input, int inOffset, double[] output, int outOffset, double[] col,
+			double[] buffer) {
+		if (!gemm) {
+			Arrays.fill(output, outOffset, outOffset + outputs(), 0);
+			convolve(input, inOffset, output, outOffset);
+			return;
+		}
+		im2col(input, inOffset, col);
+		Arrays.fill(buffer, 0);
+		Matrices.multiply(weights, col, buffer, filters, patchSize(), positions());
+		System.arraycopy(buffer, 0, output, outOffset, buffer.length);
+	}
+
+	/**
+	 * Adds the gradient of the image at <code>input[inOffset]</code> to
+	 * <code>inGrad[inOffset]</code>, and the weight gradients to
+	 * <code>weightGrad</code>, given the gradient of the output in
+	 * <code>outGrad[outOffset]</code>. On the im2col path, <code>col</code> and
+	 * <code>buffer</code> must be of the size of the im2col matrix and
+	 * <code>outBuffer</code> of the size of the output; all are overwritten.
+	 * Otherwise they are unused and may be <code>null</code>.
+	 */
+	private void backward(double[] input, int inOffset, double[] outGrad, int outOffset, double[] inGrad,
+			double[] weightGrad, double[] col, double[] buffer, double[] outBuffer) {
+		if (!gemm) {
+			convolveBackward(input, inOffset, outGrad, outOffset, inGrad, weightGrad);
+			return;
+		}
+		int patchSize = patchSize(), positions = positions();
+		im2col(input, inOffset, col);
+		double[] g = outGrad;
+		if (outOffset != 0 || outGrad.length != outBuffer.length) {
+			System.arraycopy(outGrad, outOffset, outBuffer, 0, outBuffer.length);
+			g = outBuffer;
+		}
+		// dL/dW = dL/dO * col^T, and dL/dcol = W^T * dL/dO.
+		Matrices.multiplyTransposedB(g, col, weightGrad, filters, patchSize, positions);
+		Arrays.fill(buffer, 0);
+		Matrices.multiplyTransposedA(weights, g, buffer, filters, patchSize, positions);
+		col2im(buffer, inGrad, inOffset);
+	}
+
+	/**
+	 * Returns a new array of the size of the im2col matrix, if the im2col path is
+	 * used, and <code>null</code> otherwise.
+	 */
+	private double[] colBuffer() {
+		return gemm ? new double[patchSize() * positions()] : null;
+	}
+
+	/**
+	 * Returns a new array of the size of the output, if the im2col path is used,
+	 * and <code>null</code> otherwise.
+	 */
+	private double[] outBuffer() {
+		return gemm ? new double[outputs()] : null;
+	}
+
+	@Override
+	public double[] evaluate(Container c, double... input) {
+		assert input.length == inputs() : "Invalid input size for Convolution2DNode.";
+		c.set(input);
+		double[] res = new double[outputs()];
+		forward(input, 0, res, 0, colBuffer(), outBuffer());
+		return res;
+	}
+
+	@Override
+	public double[] grad(Container c, WeightGradStorage weightStorage, double... outGrad) {
+		assert outGrad.length == outputs() : "Invalid gradient size for Convolution2DNode.";
+		double[] input = c.get(), weightGrad = new double[weights()], inGrad = new double[inputs()];
+		weightStorage.put(this, weightGrad);
+		backward(input, 0, outGrad, 0, inGrad, weightGrad, colBuffer(), colBuffer(), outBuffer());
+		return inGrad;
+	}
+
+	@Override
+	public double[] evaluateBatch(Container c, int batchSize, double[] input) {
+		assert input.length == batchSize * inputs() : "Invalid batch input size for Convolution2DNode.";
+		c.set(input);
+		double[] res = new double[batchSize * outputs()], col = colBuffer(), buffer = outBuffer();
+		for (int b = 0; b < batchSize; b++)
+			forward(input, b * inputs(), res, b * outputs(), col, buffer);
+		return res;
+	}
+
+	@Override
+	public double[] gradBatch(Container c, WeightGradStorage weightStorage, int batchSize, double[] outGrad) {
+		assert outGrad.length == batchSize * outputs() : "Invalid batch gradient size for Convolution2DNode.";
+		double[] input = c.get(), col = colBuffer(), buffer = colBuffer(), outBuffer = outBuffer(),
+				weightGrad = new double[weights()], inGrad = new double[batchSize * inputs()];
+		weightStorage.put(this, weightGrad);
+		for (int b = 0; b < batchSize; b++)
+			backward(input, b * inputs(), outGrad, b * outputs(), inGrad, weightGrad, col, buffer, outBuffer);
+		return inGrad;
+	}
+
+	@Override
+	public ExecutionPlan.Step plan(ExecutionPlan plan, int input, int output) {
+		// Plans compiled for inference only have no gradients and never run
+		// backward, so they get no backward buffers.
+		final double[] gradients = plan.getGradients(), col = colBuffer(), outBuffer = outBuffer(),
+				buffer = gradients == null ? null : colBuffer(),
+				weightGrad = gradients == null ? null : new double[weights()];
+		final int offset = plan.getParameters().offset(this);
+		return new ExecutionPlan.Step() {
+
+			@Override
+			public void forward(double[] values) {
+				Convolution2DNode.this.forward(values, input, values, output, col, outBuffer);
+			}
+
+			@Override
+			public void backward(double[] values, double[] grads) {
+				Arrays.fill(grads, input, input + inputs(), 0);
+				Arrays.fill(weightGrad, 0);
+				Convolution2DNode.this.backward(values, input, grads, output, grads, weightGrad, col, buffer,
+						outBuffer);
+				System.arraycopy(weightGrad, 0, gradients, offset, weightGrad.length);
+			}
+		};
+	}
+
+}
@@ -71,7 +71,7 @@ public class ConvolutionalNode extends Node {
 					for (int ky = 0; ky < kernelHeight; ky++) {
 						weightgrads[kx + ky * kernelWidth] += inputs[ox + kx + (oy + ky) * inputWidth]
 								* outGrad[ox + oy * owidth];
-						ingrads[ox + kx + (oy + ky) * getInputHeight()] += weights[kx + ky * kernelWidth]
+						ingrads[ox + kx + (oy + ky) * inputWidth] += weights[kx + ky * kernelWidth]
 								* outGrad[ox + oy * owidth];
 					}
 		return ingrads;
@@ -25,6 +25,22 @@ public class DenseLayerNode extends ChainComputation {
 				activationFunction);
 	}
 
+	/**
+	 * Creates a {@link DenseLayerNode} out of existing parts, e.g. ones whose
+	 * weights were loaded from a file.
+	 *
+	 * @param weights            The {@link WeightLayerNode}.
+	 * @param bias               The {@link ShiftNode}, with as many weights as the
+	 *                           {@link WeightLayerNode} has outputs.
+	 * @param activationFunction The activation function.
+	 * @throws IllegalArgumentException If the sizes of the parts do not match.
+	 */
+	public DenseLayerNode(WeightLayerNode weights, ShiftNode bias, OneToOneComputation activationFunction) {
+		super(weights, bias, activationFunction);
+		if (weights.outputs() != bias.inputs() || bias.outputs() != activationFunction.inputs())
+			throw new IllegalArgumentException("The parts of a DenseLayerNode must have matching sizes.");
+	}
+
 	public static DenseLayerNode withRelu(int inputs, int outputs) {
 		return new DenseLayerNode(inputs, new ReluComputation(outputs));
 	}
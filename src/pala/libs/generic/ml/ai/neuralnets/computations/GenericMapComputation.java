@@ -1,7 +1,10 @@
 package pala.libs.generic.ml.ai.neuralnets.computations;
 
+import java.util.Arrays;
+
 import pala.libs.generic.ml.ai.neuralnets.api.Computation;
 import pala.libs.generic.ml.ai.neuralnets.api.Container;
+import pala.libs.generic.ml.ai.neuralnets.api.ExecutionPlan;
 import pala.libs.generic.ml.ai.neuralnets.api.WeightGradStorage;
 
 public interface GenericMapComputation extends Computation {
@@ -47,6 +50,26 @@ public interface GenericMapComputation extends Computation {
 		return output;
 	}
 
+	@Override
+	default ExecutionPlan.Step plan(ExecutionPlan plan, int input, int output) {
+		final int inputs = inputs(), outputs = outputs();
+		return new ExecutionPlan.Step() {
+
+			@Override
+			public void forward(double[] values) {
+				for (int i = 0; i < outputs; i++)
+					values[output + i] = values[input + map(i)];
+			}
+
+			@Override
+			public void backward(double[] values, double[] grads) {
+				Arrays.fill(grads, input, input + inputs, 0);
+				for (int i = 0; i < outputs; i++)
+					grads[input + map(i)] += grads[output + i];
+			}
+		};
+	}
+
 	interface Mapper {
 		int map(int output);
 	}
@@ -0,0 +1,198 @@
+package pala.libs.generic.ml.ai.neuralnets.computations;
+
+/**
+ * <p>
+ * The elementwise, reduction and matrix-vector loops over <code>double</code>
+ * arrays that the built-in {@link pala.libs.generic.ml.ai.neuralnets.api.Computation}s
+ * and {@link Matrices} spend their time in.
+ * Every operation works on a range of <code>n</code> elements of each array,
+ * starting at the given offset.
+ * </p>
+ * <p>
+ * This class implements each kernel with a plain scalar loop. Subclasses
+ * override them with SIMD implementations; {@link #get()} returns the
+ * implementation selected when this class is loaded. The SIMD kernels,
+ * <code>VectorKernels</code>, are built on the JDK Vector API
+ * (<code>jdk.incubator.vector</code>) and are compiled separately, from the
+ * <code>vector</code> source tree, since they require JDK 16 or later. They are
+ * used if they are on the class path and the JVM was started with
+ * <code>--add-modules jdk.incubator.vector</code>. Setting the system property
+ * {@value #PROPERTY} to <code>scalar</code> forces the scalar kernels.
+ * </p>
+ * <p>
+ * Results of the SIMD kernels may differ from the scalar ones in the last bits,
+ * since they sum in a different order and may use fused multiply-adds.
+ * </p>
+ *
+ * @author Palanath
+ *
+ */
+public class Kernels {
+
+	/**
+	 * The system property used to select the kernels.
+	 */
+	public static final String PROPERTY = "pala.libs.generic.ml.kernels";
+
+	private static final Kernels SCALAR = new Kernels();
+
+	/**
+	 * Loads the Vector API kernels, if they are available, upon first use.
+	 */
+	private static final class VectorHolder {
+		private static final Kernels VECTOR = load();
+
+		private static Kernels load() {
+			try {
+				return (Kernels) Class.forName(Kernels.class.getPackage().getName() + ".VectorKernels")
+						.getConstructor().newInstance();
+			} catch (ReflectiveOperationException | LinkageError e) {
+				return null;
+			}
+		}
+	}
+
+	private static final Kernels SELECTED = "scalar".equals(System.getProperty(PROPERTY)) || vector() == null
+			? SCALAR
+			: vector();
+
+	/**
+	 * Returns the selected {@link Kernels}: the Vector API kernels if they are
+	 * available and not disabled, and the scalar kernels otherwise.
+	 *
+	 * @return The {@link Kernels}.
+	 */
+	public static Kernels get() {
+		return SELECTED;
+	}
+
+	/**
+	 * Returns the scalar {@link Kernels}, which are always available.
+	 *
+	 * @return The scalar {@link Kernels}.
+	 */
+	public static Kernels scalar() {
+		return SCALAR;
+	}
+
+	/**
+	 * Returns the Vector API {@link Kernels}, regardless of the {@link #PROPERTY}
+	 * setting, or <code>null</code> if they are unavailable.
+	 *
+	 * @return The Vector API {@link Kernels}, or <code>null</code>.
+	 */
+	public static Kernels vector() {
+		return VectorHolder.VECTOR;
+	}
+
+	protected Kernels() {
+	}
+
+	/**
+	 * Computes <code>y[i] = a[i] + b[i]</code>.
+	 */
+	public void add(double[] a, int aOffset, double[] b, int bOffset, double[] y, int yOffset, int n) {
+		for (int i = 0; i < n; i++)
+			y[yOffset + i] = a[aOffset + i] + b[bOffset + i];
+	}
+
+	/**
+	 * Computes <code>y[i] += alpha * x[i]</code>.
+	 */
+	public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int n) {
+		for (int i = 0; i < n; i++)
+			y[yOffset + i] += alpha * x[xOffset + i];
+	}
+
+	/**
+	 * Returns the sum of <code>a[i] * b[i]</code>.
+	 */
+	public double dot(double[] a, int aOffset, double[] b, int bOffset, int n) {
+		double sum = 0;
+		for (int i = 0; i < n; i++)
+			sum += a[aOffset + i] * b[bOffset + i];
+		return sum;
+	}
+
+	/**
+	 * Computes <code>y[i] = exp(x[i])</code>.
+	 */
+	public void exp(double[] x, int xOffset, double[] y, int yOffset, int n) {
+		for (int i = 0; i < n; i++)
+			y[yOffset + i] = Math.exp(x[xOffset + i]);
+	}
+
+	/**
+	 * Returns the largest <code>x[i]</code>, or negative infinity if
+	 * <code>n</code> is <code>0</code>.
+	 */
+	public double max(double[] x, int xOffset, int n) {
+		double max = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < n; i++)
+			if (x[xOffset + i] > max)
+				max = x[xOffset + i];
+		return max;
+	}
+
+	/**
+	 * Computes <code>y = x * W</code>, where <code>x</code> is a row vector of
+	 * length <code>m</code> and <code>W</code> is the row-major <code>m x n</code>
+	 * matrix at <code>w[wOffset]</code>, by adding each row of <code>W</code>,
+	 * scaled, to <code>y</code>.
+	 */
+	public void multiplyVector(double[] x, int xOffset, double[] w, int wOffset, double[] y, int yOffset, int m,
+			int n) {
+		for (int i = 0; i < n; i++)
+			y[yOffset + i] = 0;
+		for (int i = 0; i < m; i++)
+			axpy(x[xOffset + i], w, wOffset + i * n, y, yOffset, n);
+	}
+
+	/**
+	 * Computes <code>y = W * x</code>, where <code>W</code> is the row-major
+	 * <code>m x n</code> matrix at <code>w[wOffset]</code> and <code>x</code> is a
+	 * column vector of length <code>n</code>, as one dot product per row.
+	 */
+	public void multiplyVectorTransposed(double[] w, int wOffset, double[] x, int xOffset, double[] y, int yOffset,
+			int m, int n) {
+		for (int i = 0; i < m; i++)
+			y[yOffset + i] = dot(w, wOffset + i * n, x, xOffset, n);
+	}
+
+	/**
+	 * Computes <code>y[i] = max(x[i], 0)</code>.
+	 */
+	public void relu(double[] x, int xOffset, double[] y, int yOffset, int n) {
+		for (int i = 0; i < n; i++) {
+			double v = x[xOffset + i];
+			y[yOffset + i] = v > 0 ? v : 0;
+		}
+	}
+
+	/**
+	 * Computes <code>y[i] = alpha * x[i]</code>.
+	 */
+	public void scale(double alpha, double[] x, int xOffset, double[] y, int yOffset, int n) {
+		for (int i = 0; i < n; i++)
+			y[yOffset + i] = alpha * x[xOffset + i];
+	}
+
+	/**
+	 * Returns the sum of <code>x[i]</code>.
+	 */
+	public double sum(double[] x, int xOffset, int n) {
+		double sum = 0;
+		for (int i = 0; i < n; i++)
+			sum += x[xOffset + i];
+		return sum;
+	}
+
+	/**
+	 * Computes <code>y[i] = tanh(x[i])</code>.
+	 */
+	public void tanh(double[] x, int xOffset, double[] y, int yOffset, int n) {
+		for (int i = 0; i < n; i++)
+			y[yOffset + i] = Math.tanh(x[xOffset + i]);
+	}
+
+}
@@ -0,0 +1,115 @@
+package pala.libs.generic.ml.ai.neuralnets.computations;
+
+/**
+ * <p>
+ * Matrix multiplication kernels over row-major <code>double</code> arrays,
+ * used by batched {@link pala.libs.generic.ml.ai.neuralnets.api.Computation}s.
+ * A matrix with <code>r</code> rows and <code>c</code> columns is stored in
+ * <code>r * c</code> consecutive elements, where element <code>(i, j)</code>
+ * is at index <code>i * c + j</code>.
+ * </p>
+ * <p>
+ * Every kernel <i>adds</i> its product into the destination matrix, so the
+ * destination should be zeroed first if only the product is wanted. The
+ * kernels are blocked so that the rows of the right-hand matrix being read stay
+ * in cache while they are reused for a block of rows of the left-hand matrix.
+ * The innermost loops are run by the selected {@link Kernels}.
+ * </p>
+ *
+ * @author Palanath
+ *
+ */
+public final class Matrices {
+
+	/**
+	 * The number of rows and columns in each block of the blocked kernels.
+	 */
+	private static final int BLOCK = 64;
+
+	private Matrices() {
+	}
+
+	/**
+	 * Computes <code>C += A * B</code>, where <code>A</code> is
+	 * <code>m x k</code>, <code>B</code> is <code>k x n</code> and <code>C</code>
+	 * is <code>m x n</code>.
+	 *
+	 * @param a The left-hand matrix.
+	 * @param b The right-hand matrix.
+	 * @param c The destination matrix.
+	 * @param m The number of rows of <code>A</code> and <code>C</code>.
+	 * @param k The number of columns of <code>A</code> and rows of <code>B</code>.
+	 * @param n The number of columns of <code>B</code> and <code>C</code>.
+	 */
+	public static void multiply(double[] a, double[] b, double[] c, int m, int k, int n) {
+		Kernels kernels = Kernels.get();
+		for (int i0 = 0; i0 < m; i0 += BLOCK)
+			for (int p0 = 0; p0 < k; p0 += BLOCK) {
+				int imax = Math.min(i0 + BLOCK, m), pmax = Math.min(p0 + BLOCK, k);
+				for (int i = i0; i < imax; i++) {
+					int crow = i * n;
+					for (int p = p0; p < pmax; p++) {
+						double aip = a[i * k + p];
+						if (aip == 0)
+							continue;
+						kernels.axpy(aip, b, p * n, c, crow, n);
+					}
+				}
+			}
+	}
+
+	/**
+	 * Computes <code>C += A<sup>T</sup> * B</code>, where <code>A</code> is
+	 * <code>m x k</code>, <code>B</code> is <code>m x n</code> and <code>C</code>
+	 * is <code>k x n</code>.
+	 *
+	 * @param a The left-hand matrix, which is transposed.
+	 * @param b The right-hand matrix.
+	 * @param c The destination matrix.
+	 * @param m The number of rows of <code>A</code> and <code>B</code>.
+	 * @param k The number of columns of <code>A</code> and rows of <code>C</code>.
+	 * @param n The number of columns of <code>B</code> and <code>C</code>.
+	 */
+	public static void multiplyTransposedA(double[] a, double[] b, double[] c, int m, int k, int n) {
+		Kernels kernels = Kernels.get();
+		for (int r0 = 0; r0 < m; r0 += BLOCK)
+			for (int p0 = 0; p0 < k; p0 += BLOCK) {
+				int rmax = Math.min(r0 + BLOCK, m), pmax = Math.min(p0 + BLOCK, k);
+				for (int p = p0; p < pmax; p++) {
+					int crow = p * n;
+					for (int r = r0; r < rmax; r++) {
+						double arp = a[r * k + p];
+						if (arp == 0)
+							continue;
+						kernels.axpy(arp, b, r * n, c, crow, n);
+					}
+				}
+			}
+	}
+
+	/**
+	 * Computes <code>C += A * B<sup>T</sup></code>, where <code>A</code> is
+	 * <code>m x n</code>, <code>B</code> is <code>k x n</code> and <code>C</code>
+	 * is <code>m x k</code>.
+	 *
+	 * @param a The left-hand matrix.
+	 * @param b The right-hand matrix, which is transposed.
+	 * @param c The destination matrix.
+	 * @param m The number of rows of <code>A</code> and <code>C</code>.
+	 * @param k The number of rows of <code>B</code> and columns of <code>C</code>.
+	 * @param n The number of columns of <code>A</code> and <code>B</code>.
+	 */
+	public static void multiplyTransposedB(double[] a, double[] b, double[] c, int m, int k, int n) {
+		Kernels kernels = Kernels.get();
+		for (int i0 = 0; i0 < m; i0 += BLOCK)
+			for (int p0 = 0; p0 < k; p0 += BLOCK) {
+				int imax = Math.min(i0 + BLOCK, m), pmax = Math.min(p0 + BLOCK, k);
+				for (int i = i0; i < imax; i++) {
+					int arow = i * n;
+					for (int p = p0; p < pmax; p++)
+						c[i * k + p] += kernels.dot(a, arow, b, p * n, n);
+				}
+			}
+	}
+
+}
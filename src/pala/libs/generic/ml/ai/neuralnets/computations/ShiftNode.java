@@ -4,6 +4,7 @@ import java.util.Random;
 import java.util.function.IntToDoubleFunction;
 
 import pala.libs.generic.ml.ai.neuralnets.api.Container;
+import pala.libs.generic.ml.ai.neuralnets.api.ExecutionPlan;
 import pala.libs.generic.ml.ai.neuralnets.api.Node;
 import pala.libs.generic.ml.ai.neuralnets.api.WeightGradStorage;
 
@@ -43,12 +44,51 @@ public class ShiftNode extends Node {
 		return outGrad;
 	}
 
+	@Override
+	public double[] gradBatch(Container c, WeightGradStorage weightStorage, int batchSize, double[] outGrad) {
+		double[] weightGrad = new double[weights.length];
+		Kernels kernels = Kernels.get();
+		for (int b = 0; b < batchSize; b++)
+			kernels.axpy(1, outGrad, b * weights.length, weightGrad, 0, weights.length);
+		weightStorage.put(this, weightGrad);
+		return outGrad;
+	}
+
+	@Override
+	public double[] evaluateBatch(Container c, int batchSize, double[] input) {
+		assert input.length == batchSize * weights.length : "Invalid batch input size for ShiftNode.";
+		double[] res = new double[input.length];
+		Kernels kernels = Kernels.get();
+		for (int b = 0; b < batchSize; b++)
+			kernels.add(input, b * weights.length, weights, 0, res, b * weights.length, weights.length);
+		return res;
+	}
+
+	@Override
+	public ExecutionPlan.Step plan(ExecutionPlan plan, int input, int output) {
+		final double[] weightGrad = plan.getGradients();
+		final int offset = plan.getParameters().offset(this);
+		final Kernels kernels = Kernels.get();
+		return new ExecutionPlan.Step() {
+
+			@Override
+			public void forward(double[] values) {
+				kernels.add(values, input, weights, 0, values, output, weights.length);
+			}
+
+			@Override
+			public void backward(double[] values, double[] grads) {
+				System.arraycopy(grads, output, weightGrad, offset, weights.length);
+				System.arraycopy(grads, output, grads, input, weights.length);
+			}
+		};
+	}
+
 	@Override
 	public double[] evaluate(Container c, double... input) {
 		assert input.length == weights.length : "Invalid input array for ShiftNode evaluation.";
-		double[] res = input.clone();
-		for (int i = 0; i < input.length; i++)
-			res[i] += weights[i];
+		double[] res = new double[input.length];
+		Kernels.get().add(input, 0, weights, 0, res, 0, input.length);
 		return res;
 	}
 
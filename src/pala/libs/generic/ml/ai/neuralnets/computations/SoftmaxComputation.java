@@ -1,6 +1,7 @@
 package pala.libs.generic.ml.ai.neuralnets.computations;
 
 import pala.libs.generic.ml.ai.neuralnets.api.Container;
+import pala.libs.generic.ml.ai.neuralnets.api.ExecutionPlan;
 import pala.libs.generic.ml.ai.neuralnets.api.WeightGradStorage;
 
 public class SoftmaxComputation extends OneToOneComputation {
@@ -13,23 +14,70 @@ public class SoftmaxComputation extends OneToOneComputation {
 	public double[] grad(Container c, WeightGradStorage weightStorage, double... outGrad) {
 		assert outGrad.length == outputs() : "Invalid gradient array size for SoftmaxComputation";
 		double[] softmaxEvaluations = c.get(), res = new double[inputs()];
+		double dot = Kernels.get().dot(outGrad, 0, softmaxEvaluations, 0, res.length);
 		for (int i = 0; i < res.length; i++)
-			for (int j = 0; j < outGrad.length; j++)
-				res[i] += outGrad[j] * softmaxEvaluations[i] * ((i == j ? 1 : 0) - softmaxEvaluations[j]);
+			res[i] = softmaxEvaluations[i] * (outGrad[i] - dot);
 		return res;
 	}
 
 	@Override
-	public double[] evaluate(Container c, double... input) {
-		assert input.length == inputs() : "Invalid input array size for SoftmaxComputation";
+	public double[] gradBatch(Container c, WeightGradStorage weightStorage, int batchSize, double[] outGrad) {
+		double[] softmaxEvaluations = c.get(), res = new double[outGrad.length];
+		int n = inputs();
+		Kernels kernels = Kernels.get();
+		for (int b = 0; b < batchSize; b++) {
+			// The Jacobian-vector product simplifies to s_i * (g_i - SUM_j g_j * s_j).
+			int off = b * n;
+			double dot = kernels.dot(outGrad, off, softmaxEvaluations, off, n);
+			for (int i = 0; i < n; i++)
+				res[off + i] = softmaxEvaluations[off + i] * (outGrad[off + i] - dot);
+		}
+		return res;
+	}
 
-		double total = 0, res[] = new double[inputs()];
+	@Override
+	public double[] evaluateBatch(Container c, int batchSize, double[] input) {
+		assert input.length == batchSize * inputs() : "Invalid batch input size for SoftmaxComputation";
+		double[] res = new double[input.length];
+		int n = inputs();
+		for (int b = 0; b < batchSize; b++)
+			softmax(input, b * n, res, b * n, n);
+		c.set(res);
+		return res;
+	}
 
-		for (int i = 0; i < input.length; i++)
-			total += (res[i] = Math.exp(input[i]));
-		for (int i = 0; i < res.length; i++)
-			res[i] /= total;
+	@Override
+	public ExecutionPlan.Step plan(ExecutionPlan plan, int input, int output) {
+		final int n = inputs();
+		final Kernels kernels = Kernels.get();
+		return new ExecutionPlan.Step() {
+
+			@Override
+			public void forward(double[] values) {
+				softmax(values, input, values, output, n);
+			}
+
+			@Override
+			public void backward(double[] values, double[] grads) {
+				double dot = kernels.dot(grads, output, values, output, n);
+				for (int i = 0; i < n; i++)
+					grads[input + i] = values[output + i] * (grads[output + i] - dot);
+			}
+		};
+	}
+
+	private static void softmax(double[] input, int inputOffset, double[] output, int outputOffset, int n) {
+		Kernels kernels = Kernels.get();
+		kernels.exp(input, inputOffset, output, outputOffset, n);
+		kernels.scale(1 / kernels.sum(output, outputOffset, n), output, outputOffset, output, outputOffset, n);
+	}
+
+	@Override
+	public double[] evaluate(Container c, double... input) {
+		assert input.length == inputs() : "Invalid input array size for SoftmaxComputation";
 
+		double[] res = new double[inputs()];
+		softmax(input, 0, res, 0, res.length);
 		c.set(res);
 		return res;
 	}
@@ -4,6 +4,7 @@ import java.util.Random;
 import java.util.function.IntToDoubleFunction;
 
 import pala.libs.generic.ml.ai.neuralnets.api.Container;
+import pala.libs.generic.ml.ai.neuralnets.api.ExecutionPlan;
 import pala.libs.generic.ml.ai.neuralnets.api.Node;
 import pala.libs.generic.ml.ai.neuralnets.api.WeightGradStorage;
 
@@ -39,6 +40,7 @@ public class WeightLayerNode extends Node {
 		assert outGrad.length == outputs() : "WeightLayerNode received invalid gradient from subsequent node.";
 		double[] inputs = c.get(), res = new double[inputs()], weightGrad = new double[weights.length];
 		weightStorage.put(this, weightGrad);
+		Kernels kernels = Kernels.get();
 		for (int i = 0; i < res.length; i++) {
 			// dL/dI_i = SUM from (x=0) to (outputs()) of (dO_x/dI_i * dL/dO_x)
 			//
@@ -53,18 +55,63 @@ public class WeightLayerNode extends Node {
 			// where w_[i->x] is the weight going from input node i to output node x. That
 			// is element i*outputs()+x in the weights array.
 
-			for (int x = 0; x < outputs(); x++) {
-				res[i] += weights[i * outputs() + x] * outGrad[x];
+			res[i] = kernels.dot(weights, i * outputs(), outGrad, 0, outputs());
 
-				// Also, the change in any weight, w_[i->x], with respect to the output its
-				// connection goes to, O_x, is simply going to be the input that the datum comes
-				// from: dO_x/dw_[i->x] = I_i
-				weightGrad[i * outputs() + x] = inputs[i] * outGrad[x];
-			}
+			// Also, the change in any weight, w_[i->x], with respect to the output its
+			// connection goes to, O_x, is simply going to be the input that the datum comes
+			// from: dO_x/dw_[i->x] = I_i
+			kernels.scale(inputs[i], outGrad, 0, weightGrad, i * outputs(), outputs());
 		}
 		return res;
 	}
 
+	/**
+	 * Evaluates the whole batch as a single matrix-matrix multiplication of the
+	 * <code>batchSize x inputs()</code> input matrix by the
+	 * <code>inputs() x outputs()</code> weight matrix.
+	 */
+	@Override
+	public double[] evaluateBatch(Container c, int batchSize, double[] input) {
+		assert input.length == batchSize * inputs() : "Invalid batch input size for WeightLayerNode.";
+		c.set(input);
+		double[] out = new double[batchSize * outputs()];
+		Matrices.multiply(input, weights, out, batchSize, inputs(), outputs());
+		return out;
+	}
+
+	@Override
+	public double[] gradBatch(Container c, WeightGradStorage weightStorage, int batchSize, double[] outGrad) {
+		assert outGrad.length == batchSize * outputs() : "Invalid batch gradient size for WeightLayerNode.";
+		double[] inputs = c.get(), res = new double[batchSize * inputs()], weightGrad = new double[weights.length];
+		weightStorage.put(this, weightGrad);
+		// dL/dI = dL/dO * W^T, and dL/dW = I^T * dL/dO, each summed over the batch.
+		Matrices.multiplyTransposedB(outGrad, weights, res, batchSize, inputs(), outputs());
+		Matrices.multiplyTransposedA(inputs, outGrad, weightGrad, batchSize, inputs(), outputs());
+		return res;
+	}
+
+	@Override
+	public ExecutionPlan.Step plan(ExecutionPlan plan, int input, int output) {
+		final int inputs = inputs(), outputs = outputs();
+		final double[] weightGrad = plan.getGradients();
+		final int offset = plan.getParameters().offset(this);
+		final Kernels kernels = Kernels.get();
+		return new ExecutionPlan.Step() {
+
+			@Override
+			public void forward(double[] values) {
+				kernels.multiplyVector(values, input, weights, 0, values, output, inputs, outputs);
+			}
+
+			@Override
+			public void backward(double[] values, double[] grads) {
+				for (int i = 0; i < inputs; i++)
+					kernels.scale(values[input + i], grads, output, weightGrad, offset + i * outputs, outputs);
+				kernels.multiplyVectorTransposed(weights, 0, grads, output, grads, input, inputs, outputs);
+			}
+		};
+	}
+
 	public final double getWeight(int input, int output) {
 		return weights[input * outputs() + output];
 	}
@@ -78,11 +125,8 @@ public class WeightLayerNode extends Node {
 		assert input.length == inputs() : "Invalid array size for input to WeightLayerNode. Expected: " + inputs()
 				+ " but received " + input.length;
 		c.set(input);
-		final int inputs = inputs();
 		double[] out = new double[outputs()];
-		for (int i = 0; i < inputs; i++)
-			for (int j = 0; j < out.length; j++)
-				out[j] += input[i] * weights[i * out.length + j];
+		Kernels.get().multiplyVector(input, 0, weights, 0, out, 0, inputs(), out.length);
 		return out;
 	}
 
@@ -1,6 +1,9 @@
 package pala.libs.generic.ml.ai.neuralnets.computations.scalar;
 
 import pala.libs.generic.ml.ai.neuralnets.api.Container;
+import pala.libs.generic.ml.ai.neuralnets.api.ExecutionPlan;
+import pala.libs.generic.ml.ai.neuralnets.api.WeightGradStorage;
+import pala.libs.generic.ml.ai.neuralnets.computations.Kernels;
 
 public class ReluComputation extends ScalarComputation {
 
@@ -13,6 +16,41 @@ public class ReluComputation extends ScalarComputation {
 		return (boolean) c.get() ? 1 : 0;
 	}
 
+	@Override
+	public double[] evaluateBatch(Container c, int batchSize, double[] input) {
+		double[] res = new double[input.length];
+		Kernels.get().relu(input, 0, res, 0, input.length);
+		c.set(res);
+		return res;
+	}
+
+	@Override
+	public double[] gradBatch(Container c, WeightGradStorage weightStorage, int batchSize, double[] outGrad) {
+		double[] outputs = c.get(), res = new double[outGrad.length];
+		for (int i = 0; i < res.length; i++)
+			res[i] = outputs[i] > 0 ? outGrad[i] : 0;
+		return res;
+	}
+
+	@Override
+	public ExecutionPlan.Step plan(ExecutionPlan plan, int input, int output) {
+		final int n = inputs();
+		final Kernels kernels = Kernels.get();
+		return new ExecutionPlan.Step() {
+
+			@Override
+			public void forward(double[] values) {
+				kernels.relu(values, input, values, output, n);
+			}
+
+			@Override
+			public void backward(double[] values, double[] grads) {
+				for (int i = 0; i < n; i++)
+					grads[input + i] = values[output + i] > 0 ? grads[output + i] : 0;
+			}
+		};
+	}
+
 	@Override
 	public double eval(Container c, double input) {
 		boolean x = input > 0;
@@ -1,6 +1,8 @@
 package pala.libs.generic.ml.ai.neuralnets.computations.scalar;
 
 import pala.libs.generic.ml.ai.neuralnets.api.Container;
+import pala.libs.generic.ml.ai.neuralnets.api.ExecutionPlan;
+import pala.libs.generic.ml.ai.neuralnets.api.WeightGradStorage;
 
 public class SigmoidComputation extends ScalarComputation {
 
@@ -14,6 +16,44 @@ public class SigmoidComputation extends ScalarComputation {
 		return sig * (1 - sig);
 	}
 
+	@Override
+	public double[] evaluateBatch(Container c, int batchSize, double[] input) {
+		double[] res = new double[input.length];
+		for (int i = 0; i < input.length; i++)
+			res[i] = 1 / (1 + Math.exp(input[i]));
+		c.set(res);
+		return res;
+	}
+
+	@Override
+	public double[] gradBatch(Container c, WeightGradStorage weightStorage, int batchSize, double[] outGrad) {
+		double[] sigs = c.get(), res = new double[outGrad.length];
+		for (int i = 0; i < res.length; i++)
+			res[i] = outGrad[i] * sigs[i] * (1 - sigs[i]);
+		return res;
+	}
+
+	@Override
+	public ExecutionPlan.Step plan(ExecutionPlan plan, int input, int output) {
+		final int n = inputs();
+		return new ExecutionPlan.Step() {
+
+			@Override
+			public void forward(double[] values) {
+				for (int i = 0; i < n; i++)
+					values[output + i] = 1 / (1 + Math.exp(values[input + i]));
+			}
+
+			@Override
+			public void backward(double[] values, double[] grads) {
+				for (int i = 0; i < n; i++) {
+					double sig = values[output + i];
+					grads[input + i] = grads[output + i] * sig * (1 - sig);
+				}
+			}
+		};
+	}
+
 	@Override
 	public double eval(Container c, double input) {
 		double sig = 1 / (1 + Math.exp(input));
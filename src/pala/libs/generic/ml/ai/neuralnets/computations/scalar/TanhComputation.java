@@ -1,6 +1,9 @@
 package pala.libs.generic.ml.ai.neuralnets.computations.scalar;
 
 import pala.libs.generic.ml.ai.neuralnets.api.Container;
+import pala.libs.generic.ml.ai.neuralnets.api.ExecutionPlan;
+import pala.libs.generic.ml.ai.neuralnets.api.WeightGradStorage;
+import pala.libs.generic.ml.ai.neuralnets.computations.Kernels;
 
 public class TanhComputation extends ScalarComputation {
 
@@ -14,6 +17,43 @@ public class TanhComputation extends ScalarComputation {
 		return 1 - tanh * tanh;
 	}
 
+	@Override
+	public double[] evaluateBatch(Container c, int batchSize, double[] input) {
+		double[] res = new double[input.length];
+		Kernels.get().tanh(input, 0, res, 0, input.length);
+		c.set(res);
+		return res;
+	}
+
+	@Override
+	public double[] gradBatch(Container c, WeightGradStorage weightStorage, int batchSize, double[] outGrad) {
+		double[] tanhs = c.get(), res = new double[outGrad.length];
+		for (int i = 0; i < res.length; i++)
+			res[i] = outGrad[i] * (1 - tanhs[i] * tanhs[i]);
+		return res;
+	}
+
+	@Override
+	public ExecutionPlan.Step plan(ExecutionPlan plan, int input, int output) {
+		final int n = inputs();
+		final Kernels kernels = Kernels.get();
+		return new ExecutionPlan.Step() {
+
+			@Override
+			public void forward(double[] values) {
+				kernels.tanh(values, input, values, output, n);
+			}
+
+			@Override
+			public void backward(double[] values, double[] grads) {
+				for (int i = 0; i < n; i++) {
+					double tanh = values[output + i];
+					grads[input + i] = grads[output + i] * (1 - tanh * tanh);
+				}
+			}
+		};
+	}
+
 	@Override
 	public double eval(Container c, double input) {
 		double res = Math.tanh(input);
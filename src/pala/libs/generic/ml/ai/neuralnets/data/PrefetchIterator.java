@@ -0,0 +1,120 @@
+package pala.libs.generic.ml.ai.neuralnets.data;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import pala.libs.generic.util.UncheckedExceptionWrapper;
+
+/**
+ * <p>
+ * An {@link Iterator} that drains another {@link Iterator} on a background
+ * thread, keeping up to a fixed number of its elements ready ahead of the
+ * consumer. Wrapping a source of {@link pala.libs.generic.ml.ai.neuralnets.api.Sample}s
+ * whose elements are read or parsed from a file lets that work overlap with
+ * whatever the consumer, such as an optimizer, does with each element.
+ * </p>
+ * <p>
+ * The background thread is a daemon thread, started upon construction, and
+ * ends once the source is exhausted or this iterator is {@link #close()
+ * closed}. If the source throws, the exception is rethrown, wrapped in an
+ * {@link UncheckedExceptionWrapper}, from {@link #hasNext()} or
+ * {@link #next()} once the elements before it have been consumed. This
+ * iterator must only be consumed by one thread at a time.
+ * </p>
+ *
+ * @author Palanath
+ *
+ * @param <T> The type of the elements.
+ */
+public final class PrefetchIterator<T> implements Iterator<T>, AutoCloseable {
+
+	/**
+	 * Queued in place of <code>null</code> elements, and after the last element.
+	 */
+	private static final Object NULL = new Object(), END = new Object();
+
+	private static final class Failure {
+		private final Throwable cause;
+
+		private Failure(Throwable cause) {
+			this.cause = cause;
+		}
+	}
+
+	private final BlockingQueue<Object> queue;
+	private final Thread thread;
+	/**
+	 * The element taken from the queue but not yet returned, or <code>null</code>.
+	 */
+	private Object next;
+
+	/**
+	 * Creates a {@link PrefetchIterator} and starts reading from the provided
+	 * source.
+	 *
+	 * @param source   The {@link Iterator} to read from, which is only used by the
+	 *                 background thread from now on.
+	 * @param capacity The largest number of elements to read ahead.
+	 * @throws IllegalArgumentException If <code>capacity</code> is not positive.
+	 */
+	public PrefetchIterator(Iterator<? extends T> source, int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Prefetch capacity must be positive: " + capacity);
+		queue = new ArrayBlockingQueue<>(capacity);
+		thread = new Thread(() -> {
+			try {
+				try {
+					while (source.hasNext()) {
+						T t = source.next();
+						queue.put(t == null ? NULL : t);
+					}
+				} catch (RuntimeException | Error e) {
+					queue.put(new Failure(e));
+					return;
+				}
+				queue.put(END);
+			} catch (InterruptedException e) {
+				// Closed.
+			}
+		}, "Prefetch");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the background thread. Elements not yet consumed are discarded.
+	 */
+	@Override
+	public void close() {
+		thread.interrupt();
+		queue.clear();
+		next = END;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next == null)
+			try {
+				next = queue.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new UncheckedExceptionWrapper(e);
+			}
+		if (next instanceof Failure)
+			throw new UncheckedExceptionWrapper(((Failure) next).cause);
+		return next != END;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public T next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		Object t = next;
+		next = null;
+		return t == NULL ? null : (T) t;
+	}
+
+}
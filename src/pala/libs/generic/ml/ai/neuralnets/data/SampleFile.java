@@ -0,0 +1,247 @@
+package pala.libs.generic.ml.ai.neuralnets.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import pala.libs.generic.ml.ai.neuralnets.api.Sample;
+
+/**
+ * <p>
+ * A file of {@link Sample}s that all have the same number of inputs and the
+ * same number of answers, stored as fixed-size records of little-endian
+ * <code>double</code>s so that any {@link Sample} can be read directly by its
+ * index. The file begins with a 24 byte header, of the <code>int</code>
+ * {@value #MAGIC} (the bytes <code>PSMP</code>), the <code>int</code> format
+ * version {@value #VERSION}, the <code>int</code> number of inputs, the
+ * <code>int</code> number of answers and the <code>long</code> number of
+ * {@link Sample}s. Each {@link Sample}'s record follows, holding its answer and
+ * then its inputs.
+ * </p>
+ * <p>
+ * The file is memory-mapped upon construction, so reading a {@link Sample}
+ * costs a copy of its record and nothing more, and a {@link SampleFile} may be
+ * read by any number of threads at once.
+ * </p>
+ *
+ * @author Palanath
+ *
+ */
+public final class SampleFile implements Iterable<Sample> {
+
+	/**
+	 * The first four bytes of every sample file, <code>PSMP</code>, read as a
+	 * little-endian <code>int</code>.
+	 */
+	public static final int MAGIC = 0x504D5350;
+	/**
+	 * The version of the format written by
+	 * {@link #write(Path, int, int, Iterator)}.
+	 */
+	public static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 24;
+	/**
+	 * The largest size of each mapped region of the file. Each region holds a
+	 * whole number of records, so that no record spans two regions.
+	 */
+	private static final int REGION_SIZE = 1 << 30;
+
+	private final DoubleBuffer[] regions;
+	private final int inputs, answers, recordsPerRegion;
+	private final long size;
+
+	/**
+	 * Opens and maps the specified sample file. The file is not read again if it
+	 * changes afterwards.
+	 *
+	 * @param file The path of the file.
+	 * @throws IOException              If an {@link IOException} occurs while
+	 *                                  opening or mapping the file.
+	 * @throws IllegalArgumentException If the file is not a valid sample file.
+	 */
+	public SampleFile(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining())
+				if (channel.read(header) < 0)
+					throw new IllegalArgumentException("Malformed sample file. End of file reached.");
+			header.flip();
+			if (header.getInt() != MAGIC)
+				throw new IllegalArgumentException("Malformed sample file. Not a sample file.");
+			int version = header.getInt();
+			if (version != VERSION)
+				throw new IllegalArgumentException("Malformed sample file. Unsupported version: " + version);
+			inputs = header.getInt();
+			answers = header.getInt();
+			size = header.getLong();
+			long record = (inputs + (long) answers) * 8;
+			if (inputs < 0 || answers < 0 || record == 0 || record > REGION_SIZE)
+				throw new IllegalArgumentException("Malformed sample file. Invalid sample size.");
+			if (size < 0 || size > (channel.size() - HEADER_SIZE) / record)
+				throw new IllegalArgumentException("Malformed sample file. Invalid sample count: " + size);
+
+			recordsPerRegion = (int) (REGION_SIZE / record);
+			regions = new DoubleBuffer[(int) ((size + recordsPerRegion - 1) / recordsPerRegion)];
+			for (int i = 0; i < regions.length; i++) {
+				long first = (long) i * recordsPerRegion;
+				regions[i] = channel.map(MapMode.READ_ONLY, HEADER_SIZE + first * record,
+						Math.min(recordsPerRegion, size - first) * record).order(ByteOrder.LITTLE_ENDIAN)
+						.asDoubleBuffer();
+			}
+		}
+	}
+
+	/**
+	 * Writes the provided {@link Sample}s to the specified file, replacing the
+	 * file if it exists.
+	 *
+	 * @param file    The path of the file.
+	 * @param inputs  The number of inputs of every {@link Sample}.
+	 * @param answers The number of answers of every {@link Sample}.
+	 * @param samples The {@link Sample}s.
+	 * @return The number of {@link Sample}s written.
+	 * @throws IOException              If an {@link IOException} occurs while
+	 *                                  writing the file.
+	 * @throws IllegalArgumentException If a {@link Sample} has a different size.
+	 */
+	public static long write(Path file, int inputs, int answers, Iterator<? extends Sample> samples)
+			throws IOException {
+		if (inputs < 0 || answers < 0 || inputs + answers == 0)
+			throw new IllegalArgumentException("Invalid sample size.");
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(1 << 16, (inputs + answers) * 8))
+					.order(ByteOrder.LITTLE_ENDIAN);
+			buffer.position(HEADER_SIZE);
+			long count = 0;
+			while (samples.hasNext()) {
+				Sample s = samples.next();
+				if (s.getInputs().length != inputs || s.getAnswer().length != answers)
+					throw new IllegalArgumentException("Sample " + count + " has the wrong size.");
+				if (buffer.remaining() < (inputs + answers) * 8)
+					flush(channel, buffer);
+				buffer.asDoubleBuffer().put(s.getAnswer()).put(s.getInputs());
+				buffer.position(buffer.position() + (inputs + answers) * 8);
+				count++;
+			}
+			flush(channel, buffer);
+
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(inputs).putInt(answers).putLong(count).flip();
+			long pos = 0;
+			while (buffer.hasRemaining())
+				pos += channel.write(buffer, pos);
+			return count;
+		}
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	public int answers() {
+		return answers;
+	}
+
+	/**
+	 * Reads the {@link Sample} at the specified index.
+	 *
+	 * @param index The index.
+	 * @return A new {@link Sample}.
+	 * @throws IndexOutOfBoundsException If the index is not less than
+	 *                                   {@link #size()}.
+	 */
+	public Sample get(long index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Sample index out of bounds: " + index);
+		DoubleBuffer region = regions[(int) (index / recordsPerRegion)].duplicate();
+		region.position((int) (index % recordsPerRegion) * (inputs + answers));
+		double[] answer = new double[answers], input = new double[inputs];
+		region.get(answer).get(input);
+		return new Sample(answer, input);
+	}
+
+	public int inputs() {
+		return inputs;
+	}
+
+	/**
+	 * Returns an {@link Iterator} over every {@link Sample}, in order.
+	 */
+	@Override
+	public Iterator<Sample> iterator() {
+		return new Iterator<Sample>() {
+			private long next;
+
+			@Override
+			public boolean hasNext() {
+				return next < size;
+			}
+
+			@Override
+			public Sample next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return get(next++);
+			}
+		};
+	}
+
+	/**
+	 * Returns an {@link Iterator} over every {@link Sample}, in an order chosen
+	 * uniformly at random by the provided {@link Random}. Unlike
+	 * {@link Samples#shuffle(Iterator, int, Random)}, this shuffles the whole file,
+	 * at the cost of an <code>int</code> per {@link Sample}.
+	 *
+	 * @param random The {@link Random}.
+	 * @return The {@link Iterator}.
+	 * @throws IllegalStateException If the file holds more {@link Sample}s than an
+	 *                               array can index.
+	 */
+	public Iterator<Sample> iterator(Random random) {
+		if (size > Integer.MAX_VALUE - 8)
+			throw new IllegalStateException("Too many samples to shuffle the whole file.");
+		int[] order = new int[(int) size];
+		for (int i = 0; i < order.length; i++) {
+			int j = random.nextInt(i + 1);
+			order[i] = order[j];
+			order[j] = i;
+		}
+		return new Iterator<Sample>() {
+			private int next;
+
+			@Override
+			public boolean hasNext() {
+				return next < order.length;
+			}
+
+			@Override
+			public Sample next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return get(order[next++]);
+			}
+		};
+	}
+
+	/**
+	 * Returns the number of {@link Sample}s in the file.
+	 *
+	 * @return The number of {@link Sample}s.
+	 */
+	public long size() {
+		return size;
+	}
+
+}
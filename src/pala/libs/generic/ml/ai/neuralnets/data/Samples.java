@@ -0,0 +1,198 @@
+package pala.libs.generic.ml.ai.neuralnets.data;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Spliterators;
+
+import pala.libs.generic.json.JSONArray;
+import pala.libs.generic.json.JSONLinesReader;
+import pala.libs.generic.json.JSONNumber;
+import pala.libs.generic.json.JSONObject;
+import pala.libs.generic.json.JSONValue;
+import pala.libs.generic.ml.ai.neuralnets.api.Batch;
+import pala.libs.generic.ml.ai.neuralnets.api.Sample;
+
+/**
+ * <p>
+ * Building blocks for pipelines that feed {@link Sample}s to optimizers. Each
+ * stage takes an {@link Iterator} and returns one, so they compose freely, e.g.
+ * </p>
+ *
+ * <pre>
+ * <code>try (PrefetchIterator&lt;Batch&gt; batches = Samples.prefetch(
+ * 		Samples.batch(Samples.shuffle(Samples.jsonLines(path), 10000, random), 64), 4)) {
+ * 	optimizer.optimizeBatches(network, batches);
+ * }</code>
+ * </pre>
+ * <p>
+ * Every stage is lazy: {@link Sample}s are read from the source only as they
+ * are needed. Stages before a {@link #prefetch(Iterator, int) prefetch} run on
+ * its background thread, overlapping with the training that consumes its
+ * output.
+ * </p>
+ *
+ * @author Palanath
+ *
+ */
+public final class Samples {
+
+	private Samples() {
+	}
+
+	/**
+	 * Groups the provided {@link Sample}s into {@link Batch}es of
+	 * <code>batchSize</code> {@link Sample}s each, copying their inputs and
+	 * answers into contiguous arrays. The last {@link Batch} holds whatever
+	 * {@link Sample}s remain, and so may be smaller.
+	 *
+	 * @param samples   The {@link Sample}s.
+	 * @param batchSize The number of {@link Sample}s in each {@link Batch}.
+	 * @return An {@link Iterator} over the {@link Batch}es.
+	 * @throws IllegalArgumentException If <code>batchSize</code> is not positive.
+	 */
+	public static Iterator<Batch> batch(Iterator<? extends Sample> samples, int batchSize) {
+		if (batchSize < 1)
+			throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+		return new Iterator<Batch>() {
+
+			@Override
+			public boolean hasNext() {
+				return samples.hasNext();
+			}
+
+			@Override
+			public Batch next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				Sample[] batch = new Sample[batchSize];
+				int size = 0;
+				while (size < batchSize && samples.hasNext())
+					batch[size++] = samples.next();
+				if (size < batchSize) {
+					Sample[] last = new Sample[size];
+					System.arraycopy(batch, 0, last, 0, size);
+					batch = last;
+				}
+				return new Batch(batch);
+			}
+		};
+	}
+
+	/**
+	 * Reads {@link Sample}s from a JSON Lines file, in which each line is an
+	 * object with an <code>"inputs"</code> array and an <code>"answer"</code>
+	 * array of numbers. The file is memory-mapped by this method and its lines
+	 * are parsed as they are iterated over.
+	 *
+	 * @param file The path of the file.
+	 * @return An {@link Iterator} over the {@link Sample}s in the file.
+	 * @throws IOException If an {@link IOException} occurs while opening or
+	 *                     mapping the file.
+	 */
+	public static Iterator<Sample> jsonLines(Path file) throws IOException {
+		Iterator<JSONValue> records = Spliterators.iterator(new JSONLinesReader(file).spliterator());
+		return new Iterator<Sample>() {
+
+			@Override
+			public boolean hasNext() {
+				return records.hasNext();
+			}
+
+			@Override
+			public Sample next() {
+				JSONValue record = records.next();
+				if (!(record instanceof JSONObject))
+					throw new IllegalArgumentException("Sample records must be JSON objects.");
+				return new Sample(toArray(((JSONObject) record).get("answer")),
+						toArray(((JSONObject) record).get("inputs")));
+			}
+		};
+	}
+
+	private static double[] toArray(JSONValue value) {
+		if (!(value instanceof JSONArray))
+			throw new IllegalArgumentException("Sample records must have \"inputs\" and \"answer\" arrays.");
+		JSONArray array = (JSONArray) value;
+		double[] res = new double[array.size()];
+		for (int i = 0; i < res.length; i++) {
+			if (!(array.get(i) instanceof JSONNumber))
+				throw new IllegalArgumentException("Sample arrays must only contain numbers.");
+			res[i] = ((JSONNumber) array.get(i)).doubleValue();
+		}
+		return res;
+	}
+
+	/**
+	 * Reads the provided {@link Iterator} ahead on a background thread. See
+	 * {@link PrefetchIterator}.
+	 *
+	 * @param <T>      The type of the elements.
+	 * @param source   The {@link Iterator} to read from.
+	 * @param capacity The largest number of elements to read ahead.
+	 * @return The {@link PrefetchIterator}, which should be closed if it is not
+	 *         consumed to the end.
+	 */
+	public static <T> PrefetchIterator<T> prefetch(Iterator<? extends T> source, int capacity) {
+		return new PrefetchIterator<>(source, capacity);
+	}
+
+	/**
+	 * <p>
+	 * Shuffles the provided {@link Sample}s using a buffer of at most
+	 * <code>bufferSize</code> {@link Sample}s. The buffer is filled first; then,
+	 * for each {@link Sample} returned, a {@link Sample} is chosen from the buffer
+	 * uniformly at random and replaced by the next one from the source. Once the
+	 * source is exhausted, the rest of the buffer is returned in random order.
+	 * </p>
+	 * <p>
+	 * Only {@link Sample}s within <code>bufferSize</code> of each other in the
+	 * source can swap places, so the buffer should be large compared to any runs
+	 * of similar {@link Sample}s in the source. A source that can be read in any
+	 * order, like a {@link SampleFile}, can instead be shuffled whole with
+	 * {@link SampleFile#iterator(Random)}.
+	 * </p>
+	 *
+	 * @param <S>        The type of the {@link Sample}s.
+	 * @param samples    The {@link Sample}s.
+	 * @param bufferSize The size of the buffer.
+	 * @param random     The {@link Random} to choose {@link Sample}s with.
+	 * @return An {@link Iterator} over the shuffled {@link Sample}s.
+	 * @throws IllegalArgumentException If <code>bufferSize</code> is not positive.
+	 */
+	public static <S extends Sample> Iterator<S> shuffle(Iterator<? extends S> samples, int bufferSize,
+			Random random) {
+		if (bufferSize < 1)
+			throw new IllegalArgumentException("Shuffle buffer size must be positive: " + bufferSize);
+		return new Iterator<S>() {
+			@SuppressWarnings("unchecked")
+			private final S[] buffer = (S[]) new Sample[bufferSize];
+			private int size;
+
+			@Override
+			public boolean hasNext() {
+				return size != 0 || samples.hasNext();
+			}
+
+			@Override
+			public S next() {
+				while (size < buffer.length && samples.hasNext())
+					buffer[size++] = samples.next();
+				if (size == 0)
+					throw new NoSuchElementException();
+				int i = random.nextInt(size);
+				S res = buffer[i];
+				if (samples.hasNext())
+					buffer[i] = samples.next();
+				else {
+					buffer[i] = buffer[--size];
+					buffer[size] = null;
+				}
+				return res;
+			}
+		};
+	}
+
+}
@@ -0,0 +1,99 @@
+package pala.libs.generic.ml.ai.neuralnets.optimizers;
+
+import java.util.Arrays;
+
+import pala.libs.generic.ml.ai.neuralnets.api.LossFunction;
+import pala.libs.generic.ml.ai.neuralnets.api.ParameterVector;
+
+/**
+ * <p>
+ * Adam: stochastic gradient descent using running averages of both the
+ * gradients (the first moment, <code>m</code>) and the squared gradients (the
+ * second moment, <code>v</code>) of each weight, corrected for their bias
+ * towards <code>0</code> in early steps:
+ * </p>
+ * 
+ * <pre>
+ * m = beta1 * m + (1 - beta1) * g
+ * v = beta2 * v + (1 - beta2) * g * g
+ * w = w - learningRate * (m / (1 - beta1^t)) / (sqrt(v / (1 - beta2^t)) + epsilon)
+ * </pre>
+ * <p>
+ * where <code>t</code> is the number of steps taken so far, including the
+ * current one.
+ * </p>
+ *
+ * @author Palanath
+ *
+ */
+public class AdamOptimizer extends StatefulOptimizer {
+
+	private double beta1, beta2, epsilon;
+	private double[] m, v;
+	/**
+	 * <code>beta1^t</code> and <code>beta2^t</code>, updated every step.
+	 */
+	private double beta1Power, beta2Power;
+
+	public AdamOptimizer(LossFunction lossFunction, double learningRate) {
+		this(lossFunction, learningRate, 0.9, 0.999, 1e-8);
+	}
+
+	public AdamOptimizer(LossFunction lossFunction, double learningRate, double beta1, double beta2,
+			double epsilon) {
+		super(lossFunction, learningRate);
+		this.beta1 = beta1;
+		this.beta2 = beta2;
+		this.epsilon = epsilon;
+	}
+
+	public double getBeta1() {
+		return beta1;
+	}
+
+	public void setBeta1(double beta1) {
+		this.beta1 = beta1;
+	}
+
+	public double getBeta2() {
+		return beta2;
+	}
+
+	public void setBeta2(double beta2) {
+		this.beta2 = beta2;
+	}
+
+	public double getEpsilon() {
+		return epsilon;
+	}
+
+	public void setEpsilon(double epsilon) {
+		this.epsilon = epsilon;
+	}
+
+	@Override
+	protected void reset(int size) {
+		if (m == null || m.length != size) {
+			m = new double[size];
+			v = new double[size];
+		} else {
+			Arrays.fill(m, 0);
+			Arrays.fill(v, 0);
+		}
+		beta1Power = beta2Power = 1;
+	}
+
+	@Override
+	protected void step(ParameterVector parameters, double[] gradients) {
+		beta1Power *= beta1;
+		beta2Power *= beta2;
+		double correction1 = 1 - beta1Power, correction2 = 1 - beta2Power;
+		for (int i = 0; i < gradients.length; i++) {
+			double g = gradients[i];
+			double mi = m[i] = beta1 * m[i] + (1 - beta1) * g, vi = v[i] = beta2 * v[i] + (1 - beta2) * g * g;
+			gradients[i] = mi / correction1 / (Math.sqrt(vi / correction2) + epsilon);
+		}
+		subtractGrads(parameters, gradients, getLearningRate());
+	}
+
+}
@@ -0,0 +1,51 @@
+package pala.libs.generic.ml.ai.neuralnets.optimizers;
+
+import pala.libs.generic.ml.ai.neuralnets.api.LossFunction;
+import pala.libs.generic.ml.ai.neuralnets.api.ParameterVector;
+
+/**
+ * <p>
+ * AdamW: {@link AdamOptimizer Adam} with decoupled weight decay. Before each
+ * Adam step, every weight is shrunk towards <code>0</code> by a factor of
+ * <code>1 - learningRate * weightDecay</code>. Unlike adding an L2 penalty to
+ * the loss, the decay is not scaled by Adam's per-weight step sizes.
+ * </p>
+ *
+ * @author Palanath
+ *
+ */
+public class AdamWOptimizer extends AdamOptimizer {
+
+	private double weightDecay;
+
+	public AdamWOptimizer(LossFunction lossFunction, double learningRate) {
+		this(lossFunction, learningRate, 0.01);
+	}
+
+	public AdamWOptimizer(LossFunction lossFunction, double learningRate, double weightDecay) {
+		super(lossFunction, learningRate);
+		this.weightDecay = weightDecay;
+	}
+
+	public AdamWOptimizer(LossFunction lossFunction, double learningRate, double beta1, double beta2,
+			double epsilon, double weightDecay) {
+		super(lossFunction, learningRate, beta1, beta2, epsilon);
+		this.weightDecay = weightDecay;
+	}
+
+	public double getWeightDecay() {
+		return weightDecay;
+	}
+
+	public void setWeightDecay(double weightDecay) {
+		this.weightDecay = weightDecay;
+	}
+
+	@Override
+	protected void step(ParameterVector parameters, double[] gradients) {
+		if (weightDecay != 0)
+			parameters.scale(1 - getLearningRate() * weightDecay);
+		super.step(parameters, gradients);
+	}
+
+}
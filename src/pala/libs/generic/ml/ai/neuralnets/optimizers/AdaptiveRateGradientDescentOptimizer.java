@@ -5,11 +5,10 @@ import java.util.Iterator;
 import java.util.List;
 
 import pala.libs.generic.ml.ai.neuralnets.api.Computation;
+import pala.libs.generic.ml.ai.neuralnets.api.ExecutionPlan;
 import pala.libs.generic.ml.ai.neuralnets.api.LossFunction;
+import pala.libs.generic.ml.ai.neuralnets.api.ParameterVector;
 import pala.libs.generic.ml.ai.neuralnets.api.Sample;
-import pala.libs.generic.ml.ai.neuralnets.api.Snapshot;
-import pala.libs.generic.ml.ai.neuralnets.api.Snapshottable;
-import pala.libs.generic.ml.ai.neuralnets.api.WeightGradStorage;
 
 /**
  * The {@link AdaptiveRateGradientDescentOptimizer} attempts to find a good
@@ -140,10 +139,15 @@ public class AdaptiveRateGradientDescentOptimizer extends Optimizer {
 
 	@Override
 	public void optimize(Computation networkToOptimize, Iterator<? extends Sample> labeledSampleGenerator) {
-		assert networkToOptimize instanceof Snapshottable : "Network can't be optimized.";
+		if (!labeledSampleGenerator.hasNext())
+			return;
+		// Snapshots of the weights are kept as vectors laid out by the network's
+		// ParameterVector, allocated once and reused for every sample.
+		ExecutionPlan plan = new ExecutionPlan(networkToOptimize);
+		ParameterVector params = plan.getParameters();
+		double[] s = new double[params.size()], bestSnapshot = new double[params.size()];
 		NEXT_SAMPLE: while (labeledSampleGenerator.hasNext()) {
 			Sample sample = labeledSampleGenerator.next();
-			Snapshottable net = (Snapshottable) networkToOptimize;
 
 			List<LearningRateRecord> records = new ArrayList<>();
 
@@ -152,47 +156,44 @@ public class AdaptiveRateGradientDescentOptimizer extends Optimizer {
 				rate = Double.MIN_NORMAL;
 
 			// Original state.
-			Snapshot s = new Snapshot();
-			net.save(s);
-			Snapshot bestSnapshot = s;
-			double bestLoss = getLossFunction().evalLoss(sample.getAnswer(),
-					networkToOptimize.eval(sample.getInputs()));
+			params.save(s);
+			boolean improved = false;
+
+			// Calculate gradients (and the loss before any change).
+			double bestLoss = plan.calculateWeightGrads(getLossFunction(), sample);
 
 			// Network is optimal right now for this sample.
 			if (bestLoss == 0)
 				continue;
-
-			// Calculate gradients.
-			WeightGradStorage grads = networkToOptimize.calculateWeightGrads(getLossFunction(), sample);
+			double[] grads = plan.getGradients();
 
 			for (int i = 0; i < rateGranularity; i++) {
 				// Attempt optimization at rate.
-				subtractGrads(grads, rate);
+				subtractGrads(params, grads, rate);
 
 				// Gauge performance.
-				double newLoss = getLossFunction().evalLoss(sample.getAnswer(),
-						networkToOptimize.eval(sample.getInputs()));
+				double newLoss = getLossFunction().evalLoss(sample.getAnswer(), plan.evaluate(sample.getInputs()));
 
 				// Check performance.
 				if (newLoss < bestLoss) {
 					bestLoss = newLoss;
-					bestSnapshot = new Snapshot();
-					net.save(bestSnapshot);
+					params.save(bestSnapshot);
+					improved = true;
 
 					// Try the next learning rate from the same state we were in when we started on
 					// this sample.
-					net.restore(s);
+					params.restore(s);
 					records.add(new LearningRateRecord(rate, newLoss));
 					rate *= 10;
 				} else {
 					// Best loss found already. It's at the end of the records list.
 					if (resultHandler != null)
 						resultHandler.handle(networkToOptimize, sample, records);
-					net.restore(bestSnapshot);
+					params.restore(improved ? bestSnapshot : s);
 					continue NEXT_SAMPLE;
 				}
 			}
-			net.restore(bestSnapshot);
+			params.restore(improved ? bestSnapshot : s);
 			if (resultHandler != null)
 				resultHandler.handle(networkToOptimize, sample, records);
 		}
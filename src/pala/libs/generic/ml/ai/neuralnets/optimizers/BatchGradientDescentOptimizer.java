@@ -1,24 +1,92 @@
 package pala.libs.generic.ml.ai.neuralnets.optimizers;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.StreamSupport;
 
 import pala.libs.generic.JavaTools;
+import pala.libs.generic.ml.ai.neuralnets.api.Batch;
 import pala.libs.generic.ml.ai.neuralnets.api.Computation;
+import pala.libs.generic.ml.ai.neuralnets.api.ExecutionPlan;
 import pala.libs.generic.ml.ai.neuralnets.api.LossFunction;
-import pala.libs.generic.ml.ai.neuralnets.api.Node;
+import pala.libs.generic.ml.ai.neuralnets.api.ParameterVector;
 import pala.libs.generic.ml.ai.neuralnets.api.Sample;
-import pala.libs.generic.ml.ai.neuralnets.api.WeightGradStorage;
-import pala.libs.generic.util.Pair;
 
+/**
+ * <p>
+ * A gradient descent {@link Optimizer} that averages the weight gradients of
+ * every sample it is given and then performs a single update step.
+ * </p>
+ * <p>
+ * Gradients are computed with an {@link ExecutionPlan} and summed into a single
+ * gradient vector laid out by the plan's {@link ParameterVector}. By default,
+ * samples are processed one after another on the calling thread. If a
+ * {@link #setPool(ForkJoinPool) pool} is set, samples are instead split across
+ * the threads of the pool. Each thread sums the gradients of the samples it
+ * processes into its own vector, computing them with its own
+ * {@link ExecutionPlan}, and the vectors are then added together pairwise, in
+ * parallel, before the update. Gradient memory is then proportional to the
+ * number of threads, not the number of samples.
+ * </p>
+ * <p>
+ * A {@link Batch} given to {@link #optimizeBatch(Computation, Batch)} is
+ * instead evaluated all at once, from its contiguous arrays, unless a pool is
+ * set.
+ * </p>
+ *
+ * @author Palanath
+ *
+ */
 public class BatchGradientDescentOptimizer extends Optimizer {
 
 	private double learningRate;
 	/**
-	 * Gets called every time one sample is completed.
+	 * Gets called every time one sample is completed. When a {@link #pool} is
+	 * set, it is called from the pool's threads, possibly concurrently.
 	 */
 	private Runnable callback;
+	/**
+	 * The pool to process samples in, or <code>null</code> to process them on the
+	 * calling thread.
+	 */
+	private ForkJoinPool pool;
+	/**
+	 * The network that the {@link #spareWorkers} were compiled for.
+	 */
+	private Computation network;
+	/**
+	 * {@link Worker}s left over from earlier optimizations of {@link #network},
+	 * with their gradients cleared. They are reused for as long as the same
+	 * network is optimized, so that each thread's {@link ExecutionPlan} is only
+	 * compiled once.
+	 */
+	private final Queue<Worker> spareWorkers = new ConcurrentLinkedQueue<>();
+
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Sets the {@link ForkJoinPool} that samples are processed in. If
+	 * <code>null</code> (the default), samples are processed serially, on the
+	 * thread that calls <code>optimize</code>. Otherwise, the network being
+	 * optimized must support evaluation from multiple threads at once, which all
+	 * built-in {@link Computation}s do.
+	 *
+	 * @param pool The {@link ForkJoinPool}, e.g. {@link ForkJoinPool#commonPool()}.
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
 
 	public Runnable getCallback() {
 		return callback;
@@ -41,29 +109,21 @@ public class BatchGradientDescentOptimizer extends Optimizer {
 		this.learningRate = learningRate;
 	}
 
+	/**
+	 * Optimizes the provided network on the samples of the provided
+	 * {@link Iterator}, as {@link #optimize(Computation, Iterator)} does.
+	 * <code>sampleCount</code> is only checked for <code>0</code>, in which case
+	 * nothing is done; the gradients are averaged over the number of samples
+	 * actually returned by the {@link Iterator}.
+	 *
+	 * @param networkToOptimze       The network.
+	 * @param labeledSampleGenerator The samples.
+	 * @param sampleCount            The number of samples.
+	 */
 	public void optimizeEfficient(Computation networkToOptimze, Iterator<? extends Sample> labeledSampleGenerator,
 			int sampleCount) {
-		if (sampleCount == 0)
-			return;
-		WeightGradStorage wgs = networkToOptimze.calculateWeightGrads(getLossFunction(), labeledSampleGenerator.next())
-				.clone();
-		if (callback != null)
-			callback.run();
-		for (Pair<double[], double[]> x : wgs)
-			for (int i = 0; i < x.second.length; i++)
-				x.second[i] /= sampleCount;
-		while (labeledSampleGenerator.hasNext()) {
-			if (callback != null)
-				callback.run();
-			for (Pair<Node, double[]> grads : networkToOptimze
-					.calculateWeightGrads(getLossFunction(), labeledSampleGenerator.next()).all())
-				for (int i = 0; i < grads.second.length; i++)
-					wgs.get(grads.first)[i] += grads.second[i];
-		}
-		for (Pair<double[], double[]> g : wgs)
-			for (int i = 0; i < g.second.length; i++)
-				g.second[i] /= sampleCount;
-		subtractGrads(wgs, learningRate);
+		if (sampleCount != 0)
+			optimize(networkToOptimze, labeledSampleGenerator);
 	}
 
 	@Override
@@ -73,23 +133,160 @@ public class BatchGradientDescentOptimizer extends Optimizer {
 
 	@Override
 	public void optimize(Computation networkToOptimze, Iterator<? extends Sample> labeledSampleGenerator) {
-		List<WeightGradStorage> grads = new ArrayList<>();
-		while (labeledSampleGenerator.hasNext()) {
-			grads.add(networkToOptimze.calculateWeightGrads(getLossFunction(), labeledSampleGenerator.next()));
+		if (pool != null) {
+			optimizeParallel(networkToOptimze, labeledSampleGenerator);
+			return;
+		}
+		if (!labeledSampleGenerator.hasNext())
+			return;
+		use(networkToOptimze);
+		Worker worker = takeWorker();
+		try {
+			while (labeledSampleGenerator.hasNext())
+				worker.add(labeledSampleGenerator.next());
+			update(worker.plan.getParameters(), worker.grads, worker.count);
+		} finally {
+			returnWorker(worker);
+		}
+	}
+
+	/**
+	 * Optimizes the provided network on the provided {@link Batch} with a single
+	 * update step. Unless a {@link #setPool(ForkJoinPool) pool} is set, the
+	 * gradients of the whole {@link Batch} are computed at once, from its
+	 * contiguous arrays, by
+	 * {@link Computation#calculateWeightGrads(LossFunction, Batch)}.
+	 */
+	@Override
+	public void optimizeBatch(Computation networkToOptimize, Batch batch) {
+		if (pool != null) {
+			optimizeParallel(networkToOptimize, batch.iterator());
+			return;
+		}
+		subtractGrads(networkToOptimize.calculateWeightGrads(getLossFunction(), batch), learningRate);
+		if (callback != null)
+			for (int i = 0; i < batch.size(); i++)
+				callback.run();
+	}
+
+	private void optimizeParallel(Computation networkToOptimize, Iterator<? extends Sample> labeledSampleGenerator) {
+		use(networkToOptimize);
+		// Each thread only ever reads and writes its own entry.
+		Map<Thread, Worker> local = new ConcurrentHashMap<>();
+		try {
+			// Terminal operations of parallel streams run in the pool they are invoked
+			// from, so this processes the samples in the configured pool.
+			pool.submit(() -> StreamSupport.stream(Spliterators.spliteratorUnknownSize(labeledSampleGenerator, 0), true)
+					.forEach(a -> {
+						Worker w = local.get(Thread.currentThread());
+						if (w == null)
+							local.put(Thread.currentThread(), w = takeWorker());
+						w.add(a);
+					})).join();
+			if (local.isEmpty())
+				return;
+
+			List<Worker> workers = new ArrayList<>(local.values());
+			int count = 0;
+			for (Worker w : workers)
+				count += w.count;
+			update(workers.get(0).plan.getParameters(), pool.invoke(new Reduction(workers, 0, workers.size())),
+					count);
+		} finally {
+			for (Worker w : local.values())
+				returnWorker(w);
+		}
+	}
+
+	/**
+	 * Discards the {@link #spareWorkers} if they were compiled for a network other
+	 * than the provided one.
+	 */
+	private void use(Computation network) {
+		if (this.network != network) {
+			spareWorkers.clear();
+			this.network = network;
+		}
+	}
+
+	private Worker takeWorker() {
+		Worker w = spareWorkers.poll();
+		return w == null ? new Worker(network) : w;
+	}
+
+	private void returnWorker(Worker worker) {
+		worker.clear();
+		spareWorkers.add(worker);
+	}
+
+	private void update(ParameterVector parameters, double[] gradSum, int count) {
+		for (int i = 0; i < gradSum.length; i++)
+			gradSum[i] /= count;
+		subtractGrads(parameters, gradSum, learningRate);
+	}
+
+	/**
+	 * The state of one thread of {@link #optimizeParallel(Computation, Iterator)},
+	 * or of a serial optimization: the sum of the weight gradients of the samples
+	 * it has processed, and the {@link ExecutionPlan} it computes them with.
+	 */
+	private final class Worker {
+		private final ExecutionPlan plan;
+		private final double[] grads;
+		private int count;
+
+		private Worker(Computation network) {
+			plan = new ExecutionPlan(network);
+			grads = new double[plan.getParameters().size()];
+		}
+
+		private void clear() {
+			Arrays.fill(grads, 0);
+			count = 0;
+		}
+
+		private void add(Sample sample) {
+			plan.calculateWeightGrads(getLossFunction(), sample);
+			double[] g = plan.getGradients();
+			for (int i = 0; i < grads.length; i++)
+				grads[i] += g[i];
+			count++;
 			if (callback != null)
 				callback.run();
 		}
+	}
+
+	/**
+	 * Sums the gradients of a range of {@link Worker}s by splitting the range in
+	 * half and summing each half in parallel. The result is the buffer of the
+	 * first {@link Worker} in the range, which is added to in place.
+	 */
+	private static final class Reduction extends RecursiveTask<double[]> {
+		/**
+		 * SUID
+		 */
+		private static final long serialVersionUID = 1L;
+		private final List<Worker> workers;
+		private final int from, to;
+
+		private Reduction(List<Worker> workers, int from, int to) {
+			this.workers = workers;
+			this.from = from;
+			this.to = to;
+		}
 
-		// Average weight grad storages
-		WeightGradStorage wgs = grads.get(0).clone();
-		for (Pair<Node, double[]> ngs : wgs.all()) {
-			for (int i = 1; i < grads.size(); i++)
-				for (int j = 0; j < ngs.second.length; j++)
-					ngs.second[j] += grads.get(i).get(ngs.first)[j];// Sum up all weight grads
-			for (int i = 0; i < ngs.second.length; i++)
-				ngs.second[i] /= grads.size(); // Divide by total number.
+		@Override
+		protected double[] compute() {
+			if (to - from == 1)
+				return workers.get(from).grads;
+			int mid = (from + to) >>> 1;
+			Reduction left = new Reduction(workers, from, mid);
+			left.fork();
+			double[] right = new Reduction(workers, mid, to).compute(), res = left.join();
+			for (int i = 0; i < res.length; i++)
+				res[i] += right[i];
+			return res;
 		}
-		subtractGrads(wgs, learningRate);
 	}
 
 }
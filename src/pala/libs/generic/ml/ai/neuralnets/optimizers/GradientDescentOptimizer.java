@@ -3,6 +3,7 @@ package pala.libs.generic.ml.ai.neuralnets.optimizers;
 import java.util.Iterator;
 
 import pala.libs.generic.ml.ai.neuralnets.api.Computation;
+import pala.libs.generic.ml.ai.neuralnets.api.ExecutionPlan;
 import pala.libs.generic.ml.ai.neuralnets.api.LossFunction;
 import pala.libs.generic.ml.ai.neuralnets.api.Sample;
 
@@ -18,6 +19,11 @@ import pala.libs.generic.ml.ai.neuralnets.api.Sample;
 public class GradientDescentOptimizer extends Optimizer {
 
 	private double learningRate;
+	/**
+	 * The plan compiled for the network last optimized, which is reused for as
+	 * long as the same network is optimized.
+	 */
+	private ExecutionPlan plan;
 
 	public double getLearningRate() {
 		return learningRate;
@@ -34,12 +40,12 @@ public class GradientDescentOptimizer extends Optimizer {
 
 	@Override
 	public void optimize(Computation networkToOptimize, Iterator<? extends Sample> labeledSamples) {
-		while (labeledSamples.hasNext()) {
-			networkToOptimize.calculateWeightGrads(getLossFunction(), labeledSamples.next()).forEach(a -> {
-				for (int i = 0; i < a.first.length; i++)
-					a.first[i] -= learningRate * a.second[i];
-			});
-		}
+		if (!labeledSamples.hasNext())
+			return;
+		if (plan == null || plan.getNetwork() != networkToOptimize)
+			plan = new ExecutionPlan(networkToOptimize);
+		while (labeledSamples.hasNext())
+			plan.train(getLossFunction(), learningRate, labeledSamples.next());
 	}
 
 }
@@ -0,0 +1,80 @@
+package pala.libs.generic.ml.ai.neuralnets.optimizers;
+
+import java.util.Arrays;
+
+import pala.libs.generic.ml.ai.neuralnets.api.LossFunction;
+import pala.libs.generic.ml.ai.neuralnets.api.ParameterVector;
+
+/**
+ * <p>
+ * Stochastic gradient descent with momentum. A velocity is kept for each
+ * weight, which decays by the {@link #momentum} factor every step and is added
+ * to by the gradient:
+ * </p>
+ * 
+ * <pre>
+ * v = momentum * v + g
+ * w = w - learningRate * v
+ * </pre>
+ * <p>
+ * With {@link #setNesterov(boolean) Nesterov momentum}, the step looks ahead
+ * along the velocity, instead using <code>g + momentum * v</code>.
+ * </p>
+ *
+ * @author Palanath
+ *
+ */
+public class MomentumOptimizer extends StatefulOptimizer {
+
+	private double momentum;
+	private boolean nesterov;
+	private double[] velocity;
+
+	public MomentumOptimizer(LossFunction lossFunction, double learningRate) {
+		this(lossFunction, learningRate, 0.9);
+	}
+
+	public MomentumOptimizer(LossFunction lossFunction, double learningRate, double momentum) {
+		this(lossFunction, learningRate, momentum, false);
+	}
+
+	public MomentumOptimizer(LossFunction lossFunction, double learningRate, double momentum, boolean nesterov) {
+		super(lossFunction, learningRate);
+		this.momentum = momentum;
+		this.nesterov = nesterov;
+	}
+
+	public double getMomentum() {
+		return momentum;
+	}
+
+	public void setMomentum(double momentum) {
+		this.momentum = momentum;
+	}
+
+	public boolean isNesterov() {
+		return nesterov;
+	}
+
+	public void setNesterov(boolean nesterov) {
+		this.nesterov = nesterov;
+	}
+
+	@Override
+	protected void reset(int size) {
+		if (velocity == null || velocity.length != size)
+			velocity = new double[size];
+		else
+			Arrays.fill(velocity, 0);
+	}
+
+	@Override
+	protected void step(ParameterVector parameters, double[] gradients) {
+		for (int i = 0; i < gradients.length; i++) {
+			double v = velocity[i] = momentum * velocity[i] + gradients[i];
+			gradients[i] = nesterov ? gradients[i] + momentum * v : v;
+		}
+		subtractGrads(parameters, gradients, getLearningRate());
+	}
+
+}
@@ -4,9 +4,11 @@ import java.util.Iterator;
 import java.util.function.BiFunction;
 
 import pala.libs.generic.JavaTools;
+import pala.libs.generic.ml.ai.neuralnets.api.Batch;
 import pala.libs.generic.ml.ai.neuralnets.api.Computation;
 import pala.libs.generic.ml.ai.neuralnets.api.LossFunction;
 import pala.libs.generic.ml.ai.neuralnets.api.Node;
+import pala.libs.generic.ml.ai.neuralnets.api.ParameterVector;
 import pala.libs.generic.ml.ai.neuralnets.api.Sample;
 import pala.libs.generic.ml.ai.neuralnets.api.WeightGradStorage;
 import pala.libs.generic.util.Pair;
@@ -54,6 +56,38 @@ public abstract class Optimizer {
 
 	public abstract void optimize(Computation networkToOptimze, Iterator<? extends Sample> labeledSampleGenerator);
 
+	/**
+	 * Optimizes the provided {@link Computation} on one {@link Batch}. By default,
+	 * this is the same as calling {@link #optimize(Computation, Iterator)} with
+	 * the {@link Batch}'s {@link Sample}s. Optimizers that make one update step
+	 * per {@link Batch} override this to compute its gradients from the
+	 * {@link Batch}'s contiguous arrays at once.
+	 *
+	 * @param networkToOptimize The {@link Computation} to optimize.
+	 * @param batch             The {@link Batch}.
+	 */
+	public void optimizeBatch(Computation networkToOptimize, Batch batch) {
+		optimize(networkToOptimize, batch.iterator());
+	}
+
+	/**
+	 * Optimizes the provided {@link Computation} on each of the provided
+	 * {@link Batch}es in turn, with one call to
+	 * {@link #optimizeBatch(Computation, Batch)} per {@link Batch}. For a
+	 * {@link BatchGradientDescentOptimizer}, this is mini-batch gradient descent.
+	 * {@link Batch}es are taken from the {@link Iterator} only when the previous
+	 * one is done, so a
+	 * {@link pala.libs.generic.ml.ai.neuralnets.data.PrefetchIterator} can
+	 * assemble the next {@link Batch} while the current one is trained on.
+	 *
+	 * @param networkToOptimize The {@link Computation} to optimize.
+	 * @param batches           The {@link Batch}es.
+	 */
+	public void optimizeBatches(Computation networkToOptimize, Iterator<? extends Batch> batches) {
+		while (batches.hasNext())
+			optimizeBatch(networkToOptimize, batches.next());
+	}
+
 	public final void optimize(int iterations, Computation networkToOptimze,
 			Iterator<? extends Sample> labeledSampleGenerator) {
 		for (int i = 0; i < iterations; i++)
@@ -91,6 +125,29 @@ public abstract class Optimizer {
 
 	}
 
+	/**
+	 * Subtracts <code>learningRate</code> times the provided gradient vector from
+	 * the weights laid out by the provided {@link ParameterVector}, replacing
+	 * weights that become <code>0</code> using the
+	 * {@link #getZeroWeightAdjuster() zero weight adjuster}, if any.
+	 *
+	 * @param parameters   The layout of the gradient vector.
+	 * @param gradients    The gradient vector.
+	 * @param learningRate The learning rate.
+	 */
+	void subtractGrads(ParameterVector parameters, double[] gradients, double learningRate) {
+		if (zeroWeightAdjuster == null) {
+			parameters.subtract(gradients, learningRate);
+			return;
+		}
+		for (Node n : parameters.getNodes()) {
+			double[] weights = n.getBackingWeights();
+			for (int i = 0, j = parameters.offset(n); i < weights.length; i++, j++)
+				if ((weights[i] -= learningRate * gradients[j]) == 0)
+					weights[i] = zeroWeightAdjuster.apply(n, i);
+		}
+	}
+
 	void subtractGrads(WeightGradStorage weightGrads, double learningRate) {
 		for (Pair<Node, double[]> v : weightGrads.all())
 			for (int i = 0; i < v.first.weights(); i++)
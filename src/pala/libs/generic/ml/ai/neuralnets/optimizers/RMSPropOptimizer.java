@@ -0,0 +1,71 @@
+package pala.libs.generic.ml.ai.neuralnets.optimizers;
+
+import java.util.Arrays;
+
+import pala.libs.generic.ml.ai.neuralnets.api.LossFunction;
+import pala.libs.generic.ml.ai.neuralnets.api.ParameterVector;
+
+/**
+ * <p>
+ * RMSProp: stochastic gradient descent with the step for each weight divided by
+ * a running root mean square of that weight's recent gradients, so that every
+ * weight moves at a similar rate regardless of the scale of its gradients:
+ * </p>
+ * 
+ * <pre>
+ * s = decay * s + (1 - decay) * g * g
+ * w = w - learningRate * g / (sqrt(s) + epsilon)
+ * </pre>
+ *
+ * @author Palanath
+ *
+ */
+public class RMSPropOptimizer extends StatefulOptimizer {
+
+	private double decay, epsilon;
+	private double[] meanSquares;
+
+	public RMSPropOptimizer(LossFunction lossFunction, double learningRate) {
+		this(lossFunction, learningRate, 0.9, 1e-8);
+	}
+
+	public RMSPropOptimizer(LossFunction lossFunction, double learningRate, double decay, double epsilon) {
+		super(lossFunction, learningRate);
+		this.decay = decay;
+		this.epsilon = epsilon;
+	}
+
+	public double getDecay() {
+		return decay;
+	}
+
+	public void setDecay(double decay) {
+		this.decay = decay;
+	}
+
+	public double getEpsilon() {
+		return epsilon;
+	}
+
+	public void setEpsilon(double epsilon) {
+		this.epsilon = epsilon;
+	}
+
+	@Override
+	protected void reset(int size) {
+		if (meanSquares == null || meanSquares.length != size)
+			meanSquares = new double[size];
+		else
+			Arrays.fill(meanSquares, 0);
+	}
+
+	@Override
+	protected void step(ParameterVector parameters, double[] gradients) {
+		for (int i = 0; i < gradients.length; i++) {
+			double g = gradients[i], s = meanSquares[i] = decay * meanSquares[i] + (1 - decay) * g * g;
+			gradients[i] = g / (Math.sqrt(s) + epsilon);
+		}
+		subtractGrads(parameters, gradients, getLearningRate());
+	}
+
+}
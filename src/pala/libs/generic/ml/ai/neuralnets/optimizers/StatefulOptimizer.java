@@ -0,0 +1,89 @@
+package pala.libs.generic.ml.ai.neuralnets.optimizers;
+
+import java.util.Iterator;
+
+import pala.libs.generic.ml.ai.neuralnets.api.Computation;
+import pala.libs.generic.ml.ai.neuralnets.api.ExecutionPlan;
+import pala.libs.generic.ml.ai.neuralnets.api.LossFunction;
+import pala.libs.generic.ml.ai.neuralnets.api.ParameterVector;
+import pala.libs.generic.ml.ai.neuralnets.api.Sample;
+
+/**
+ * <p>
+ * A stochastic gradient descent {@link Optimizer} that keeps state across
+ * update steps, such as running averages of past gradients. One update step is
+ * performed per sample.
+ * </p>
+ * <p>
+ * The state is stored in vectors laid out by the {@link ParameterVector} of the
+ * network being optimized, which are allocated by {@link #reset(int)} the first
+ * time a network is optimized and then updated in place by every step. The
+ * state is kept for as long as the same network is optimized; optimizing a
+ * different network, or calling {@link #reset()}, discards it.
+ * </p>
+ *
+ * @author Palanath
+ *
+ */
+public abstract class StatefulOptimizer extends Optimizer {
+
+	private double learningRate;
+	private ExecutionPlan plan;
+
+	public StatefulOptimizer(LossFunction lossFunction, double learningRate) {
+		super(lossFunction);
+		this.learningRate = learningRate;
+	}
+
+	public double getLearningRate() {
+		return learningRate;
+	}
+
+	public void setLearningRate(double learningRate) {
+		this.learningRate = learningRate;
+	}
+
+	@Override
+	public void optimize(Computation networkToOptimize, Iterator<? extends Sample> labeledSamples) {
+		if (!labeledSamples.hasNext())
+			return;
+		if (plan == null || plan.getNetwork() != networkToOptimize) {
+			plan = new ExecutionPlan(networkToOptimize);
+			reset(plan.getParameters().size());
+		}
+		while (labeledSamples.hasNext()) {
+			plan.calculateWeightGrads(getLossFunction(), labeledSamples.next());
+			step(plan.getParameters(), plan.getGradients());
+		}
+	}
+
+	/**
+	 * Discards the state of this optimizer, so that the next call to
+	 * <code>optimize</code> starts afresh.
+	 */
+	public void reset() {
+		plan = null;
+	}
+
+	/**
+	 * Allocates (or clears) the state of this optimizer for a network with the
+	 * specified number of weights.
+	 *
+	 * @param size The number of weights, which is the length of the vectors of
+	 *             the network's {@link ParameterVector}.
+	 */
+	protected abstract void reset(int size);
+
+	/**
+	 * Performs one update step. Implementations turn the provided gradients into
+	 * the step to take, updating their state, and then apply it with
+	 * {@link #subtractGrads(ParameterVector, double[], double)}.
+	 *
+	 * @param parameters The layout of the network's weights.
+	 * @param gradients  The gradient of the loss on the current sample with
+	 *                   respect to each weight. This array belongs to the
+	 *                   optimizer's {@link ExecutionPlan} and may be overwritten.
+	 */
+	protected abstract void step(ParameterVector parameters, double[] gradients);
+
+}
@@ -0,0 +1,456 @@
+package pala.libs.generic.ml.mdp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import pala.libs.generic.ml.mdp.TransitionFunction.Transition;
+import pala.libs.generic.util.functions.TriDoubleFunction;
+
+/**
+ * <p>
+ * A Markov Decision Process compiled into flat, primitive arrays, so that it
+ * can be solved in time proportional to the number of transitions with
+ * non-zero probability rather than to
+ * <code>|states|&sup2; &middot; |actions|</code>.
+ * </p>
+ * <p>
+ * Upon construction, every state and every action is given an index, in the
+ * order that the provided collections iterate over them. Each
+ * <code>(state, action)</code> pair is then a <i>row</i>, with index
+ * <code>state * actionCount() + action</code>, and the successors of all rows
+ * are stored one row after another, in the manner of a compressed sparse row
+ * matrix: the transitions of row <code>r</code> are those from
+ * <code>rows[r]</code> to <code>rows[r + 1]</code> in the
+ * <code>successors</code> and <code>probabilities</code> arrays. Since rewards
+ * are only ever needed weighted by the probability of their transition, each
+ * row stores just its expected reward, so the value of taking an action is
+ * </p>
+ *
+ * <pre>
+ * <code>Q(s, a) = expectedReward(s, a) + decayFactor * &Sigma; probability * value(successor)</code>
+ * </pre>
+ * <p>
+ * The solvers in this class operate on <code>double[]</code> value functions
+ * and <code>int[]</code> policies indexed by state index, and
+ * {@link #solution(double[], int[])} converts them back into an
+ * {@link MDPSolution}.
+ * </p>
+ *
+ * @author Palanath
+ *
+ * @param <S> The type of the states.
+ * @param <A> The type of the actions.
+ */
+public final class CompiledMDP<S, A> {
+
+	private final List<S> states;
+	private final List<A> actions;
+	private final Map<S, Integer> indices;
+
+	private final int[] rows, successors;
+	private final double[] probabilities, expectedRewards;
+	/**
+	 * The states with a transition into each state, stored like the successors of
+	 * each row, or <code>null</code> until {@link #predecessors()} first builds
+	 * them.
+	 */
+	private int[][] predecessors;
+
+	/**
+	 * <p>
+	 * Compiles the Markov Decision Process made up of the provided states,
+	 * actions, transition probability function and reward function.
+	 * </p>
+	 * <p>
+	 * If <code>transitionProbabilityFunction</code> is a
+	 * {@link TransitionFunction}, only the transitions it stores are visited.
+	 * Otherwise, it is queried once for every
+	 * <code>(state, action, state)</code> triplet, which costs as much as one
+	 * sweep of {@link pala.libs.generic.JavaTools#evaluateDiscountedRewardsSum(Object, Object, Collection, TriDoubleFunction, TriDoubleFunction, double, Map)
+	 * evaluateDiscountedRewardsSum(...)} over every state and action. In either
+	 * case, the reward function is only queried for transitions with non-zero
+	 * probability, and transitions into states that are not in
+	 * <code>states</code> are ignored.
+	 * </p>
+	 *
+	 * @param states                        The states of the Markov Decision
+	 *                                      Process.
+	 * @param actions                       The actions of the Markov Decision
+	 *                                      Process.
+	 * @param transitionProbabilityFunction The probability of arriving in the
+	 *                                      third argument by taking the second
+	 *                                      argument while in the first.
+	 * @param rewardFunction                The reward gained for that transition.
+	 * @throws IllegalArgumentException If <code>states</code> or
+	 *                                  <code>actions</code> is empty or has
+	 *                                  duplicates, or if there are too many
+	 *                                  rows or transitions to index with an
+	 *                                  <code>int</code>.
+	 */
+	@SuppressWarnings("unchecked")
+	public CompiledMDP(Collection<? extends S> states, Collection<? extends A> actions,
+			TriDoubleFunction<? super S, ? super A, ? super S> transitionProbabilityFunction,
+			TriDoubleFunction<? super S, ? super A, ? super S> rewardFunction) {
+		if (states.isEmpty())
+			throw new IllegalArgumentException("Set of states cannot be empty.");
+		if (actions.isEmpty())
+			throw new IllegalArgumentException("Set of actions cannot be empty.");
+		this.states = new ArrayList<>(states);
+		this.actions = new ArrayList<>(actions);
+		indices = new HashMap<>();
+		for (int i = 0; i < this.states.size(); i++)
+			if (indices.put(this.states.get(i), i) != null)
+				throw new IllegalArgumentException("Duplicate state: " + this.states.get(i));
+		if (new HashSet<>(this.actions).size() != this.actions.size())
+			throw new IllegalArgumentException("Set of actions cannot have duplicates.");
+		long rowCount = (long) this.states.size() * this.actions.size();
+		if (rowCount >= Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("Too many (state, action) pairs: " + rowCount);
+
+		rows = new int[(int) rowCount + 1];
+		expectedRewards = new double[(int) rowCount];
+		int[] successors = new int[(int) rowCount];
+		double[] probabilities = new double[(int) rowCount];
+		int size = 0;
+
+		// If the function is a TransitionFunction, its getTransitions method is only
+		// called with states and actions from the provided collections, so the cast
+		// is safe.
+		TransitionFunction<S, A> sparse = transitionProbabilityFunction instanceof TransitionFunction
+				? (TransitionFunction<S, A>) transitionProbabilityFunction
+				: null;
+		int row = 0;
+		for (S s : this.states)
+			for (A a : this.actions) {
+				double reward = 0;
+				if (sparse != null)
+					for (Transition<S> t : sparse.getTransitions(s, a)) {
+						Integer succ = indices.get(t.getResultingState());
+						if (succ == null || t.getProb() == 0)
+							continue;
+						if (size == successors.length) {
+							int cap = grow(size);
+							successors = Arrays.copyOf(successors, cap);
+							probabilities = Arrays.copyOf(probabilities, cap);
+						}
+						successors[size] = succ;
+						probabilities[size++] = t.getProb();
+						reward += t.getProb() * rewardFunction.run(s, a, t.getResultingState());
+					}
+				else
+					for (int i = 0; i < this.states.size(); i++) {
+						S r = this.states.get(i);
+						double prob = transitionProbabilityFunction.run(s, a, r);
+						if (prob == 0)
+							continue;
+						if (size == successors.length) {
+							int cap = grow(size);
+							successors = Arrays.copyOf(successors, cap);
+							probabilities = Arrays.copyOf(probabilities, cap);
+						}
+						successors[size] = i;
+						probabilities[size++] = prob;
+						reward += prob * rewardFunction.run(s, a, r);
+					}
+				expectedRewards[row] = reward;
+				rows[++row] = size;
+			}
+
+		this.successors = size == successors.length ? successors : Arrays.copyOf(successors, size);
+		this.probabilities = size == probabilities.length ? probabilities : Arrays.copyOf(probabilities, size);
+	}
+
+	private static int grow(int size) {
+		if (size >= Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("Too many transitions.");
+		return (int) Math.min(Integer.MAX_VALUE - 8, size + (size >> 1) + 16L);
+	}
+
+	public int actionCount() {
+		return actions.size();
+	}
+
+	public A getAction(int index) {
+		return actions.get(index);
+	}
+
+	public S getState(int index) {
+		return states.get(index);
+	}
+
+	/**
+	 * Returns the index of the provided state, or <code>-1</code> if it is not a
+	 * state of this {@link CompiledMDP}.
+	 *
+	 * @param state The state.
+	 * @return Its index.
+	 */
+	public int indexOf(S state) {
+		Integer i = indices.get(state);
+		return i == null ? -1 : i;
+	}
+
+	public int stateCount() {
+		return states.size();
+	}
+
+	/**
+	 * Returns the number of transitions with non-zero probability, which is what
+	 * one sweep over every state and action costs.
+	 *
+	 * @return The number of transitions.
+	 */
+	public int transitionCount() {
+		return successors.length;
+	}
+
+	/**
+	 * Calculates the expected discounted reward of taking the specified action in
+	 * the specified state, given the provided value function.
+	 *
+	 * @param values      The value of each state, by index.
+	 * @param decayFactor The factor that future rewards are discounted by.
+	 * @param state       The index of the state.
+	 * @param action      The index of the action.
+	 * @return The expected discounted reward.
+	 */
+	public double q(double[] values, double decayFactor, int state, int action) {
+		int row = state * actions.size() + action;
+		double tot = 0;
+		for (int i = rows[row]; i < rows[row + 1]; i++)
+			tot += probabilities[i] * values[successors[i]];
+		return expectedRewards[row] + decayFactor * tot;
+	}
+
+	/**
+	 * Returns the index of the action with the greatest {@link #q(double[], double, int, int)
+	 * q(...)} in the specified state, preferring the first of equal actions.
+	 *
+	 * @param values      The value of each state, by index.
+	 * @param decayFactor The factor that future rewards are discounted by.
+	 * @param state       The index of the state.
+	 * @return The index of the best action.
+	 */
+	public int greedyAction(double[] values, double decayFactor, int state) {
+		int best = 0;
+		double max = q(values, decayFactor, state, 0);
+		for (int a = 1; a < actions.size(); a++) {
+			double q = q(values, decayFactor, state, a);
+			if (q > max) {
+				max = q;
+				best = a;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the {@link #greedyAction(double[], double, int) greedy action} of
+	 * every state.
+	 *
+	 * @param values      The value of each state, by index.
+	 * @param decayFactor The factor that future rewards are discounted by.
+	 * @return The index of the best action of each state, by index.
+	 */
+	public int[] greedyPolicy(double[] values, double decayFactor) {
+		int[] policy = new int[states.size()];
+		for (int s = 0; s < policy.length; s++)
+			policy[s] = greedyAction(values, decayFactor, s);
+		return policy;
+	}
+
+	/**
+	 * Returns the largest {@link #q(double[], double, int, int) q(...)} over every
+	 * action in the specified state.
+	 *
+	 * @param values      The value of each state, by index.
+	 * @param decayFactor The factor that future rewards are discounted by.
+	 * @param state       The index of the state.
+	 * @return The largest expected discounted reward.
+	 */
+	public double maxQ(double[] values, double decayFactor, int state) {
+		double max = q(values, decayFactor, state, 0);
+		for (int a = 1; a < actions.size(); a++)
+			max = Math.max(max, q(values, decayFactor, state, a));
+		return max;
+	}
+
+	/**
+	 * Replaces the value of every state, in order and in place, with the
+	 * {@link #q(double[], double, int, int) q(...)} of the action the provided
+	 * policy takes in it.
+	 *
+	 * @param values      The value of each state, by index, which is updated.
+	 * @param policy      The index of the action taken in each state, by index.
+	 * @param decayFactor The factor that future rewards are discounted by.
+	 * @return The largest absolute change in value.
+	 */
+	double evaluate(double[] values, int[] policy, double decayFactor) {
+		double residual = 0;
+		for (int s = 0; s < values.length; s++) {
+			double old = values[s];
+			values[s] = q(values, decayFactor, s, policy[s]);
+			residual = Math.max(residual, Math.abs(values[s] - old));
+		}
+		return residual;
+	}
+
+	/**
+	 * Replaces the value of each state from <code>start</code> to
+	 * <code>end</code>, exclusive, with its {@link #maxQ(double[], double, int)
+	 * maxQ(...)}. If <code>from</code> and <code>to</code> are the same array,
+	 * states are updated in place, so later states see the new values of earlier
+	 * ones.
+	 *
+	 * @param from        The values to read.
+	 * @param to          The array to write the new values into.
+	 * @param decayFactor The factor that future rewards are discounted by.
+	 * @param start       The index of the first state.
+	 * @param end         The index after the last state.
+	 * @return The largest absolute change in value, the Bellman residual of the
+	 *         range.
+	 */
+	double sweep(double[] from, double[] to, double decayFactor, int start, int end) {
+		double residual = 0;
+		for (int s = start; s < end; s++) {
+			double old = from[s];
+			to[s] = maxQ(from, decayFactor, s);
+			residual = Math.max(residual, Math.abs(to[s] - old));
+		}
+		return residual;
+	}
+
+	/**
+	 * Returns, for each state, the states that have a transition into it under
+	 * some action, each listed once. The result is two arrays, in compressed
+	 * sparse row form: the predecessors of state <code>t</code> are those from
+	 * <code>result[0][t]</code> to <code>result[0][t + 1]</code> in
+	 * <code>result[1]</code>. They are built on the first call and shared after.
+	 *
+	 * @return The predecessors of every state.
+	 */
+	synchronized int[][] predecessors() {
+		if (predecessors == null) {
+			int n = states.size(), a = actions.size();
+			int[] starts = new int[n + 1], last = new int[n];
+			Arrays.fill(last, -1);
+			for (int s = 0; s < n; s++)
+				for (int i = rows[s * a]; i < rows[(s + 1) * a]; i++)
+					if (last[successors[i]] != s) {
+						last[successors[i]] = s;
+						starts[successors[i] + 1]++;
+					}
+			for (int t = 0; t < n; t++)
+				starts[t + 1] += starts[t];
+
+			int[] preds = new int[starts[n]], next = Arrays.copyOf(starts, n);
+			Arrays.fill(last, -1);
+			for (int s = 0; s < n; s++)
+				for (int i = rows[s * a]; i < rows[(s + 1) * a]; i++)
+					if (last[successors[i]] != s) {
+						last[successors[i]] = s;
+						preds[next[successors[i]]++] = s;
+					}
+			predecessors = new int[][] { starts, preds };
+		}
+		return predecessors;
+	}
+
+	/**
+	 * Performs <code>itercount</code> sweeps of policy iteration, each of which
+	 * updates the value of every state, in order and in place, under the provided
+	 * policy, and then replaces the policy with the {@link #greedyPolicy(double[], double)
+	 * greedy policy} for the updated values.
+	 *
+	 * @param values      The value of each state, by index, which is updated.
+	 * @param policy      The index of the action taken in each state, by index,
+	 *                    which is updated.
+	 * @param decayFactor The factor that future rewards are discounted by.
+	 * @param itercount   The number of sweeps.
+	 */
+	public void policyIteration(double[] values, int[] policy, double decayFactor, int itercount) {
+		while (itercount-- > 0) {
+			evaluate(values, policy, decayFactor);
+			for (int s = 0; s < values.length; s++)
+				policy[s] = greedyAction(values, decayFactor, s);
+		}
+	}
+
+	/**
+	 * Performs policy iteration from the value function that is <code>0</code>
+	 * everywhere and the policy that takes the first action everywhere.
+	 *
+	 * @param decayFactor The factor that future rewards are discounted by.
+	 * @param itercount   The number of sweeps.
+	 * @return The resulting {@link MDPSolution}.
+	 * @see #policyIteration(double[], int[], double, int)
+	 */
+	public MDPSolution<S, A> policyIteration(double decayFactor, int itercount) {
+		double[] values = new double[states.size()];
+		int[] policy = new int[states.size()];
+		policyIteration(values, policy, decayFactor, itercount);
+		return solution(values, policy);
+	}
+
+	/**
+	 * Converts the provided value function and policy into an {@link MDPSolution}
+	 * keyed by the states themselves.
+	 *
+	 * @param values The value of each state, by index.
+	 * @param policy The index of the action taken in each state, by index.
+	 * @return The {@link MDPSolution}.
+	 */
+	public MDPSolution<S, A> solution(double[] values, int[] policy) {
+		Map<S, Double> valueFunction = new HashMap<>();
+		Map<S, A> pol = new HashMap<>();
+		for (int s = 0; s < states.size(); s++) {
+			valueFunction.put(states.get(s), values[s]);
+			pol.put(states.get(s), actions.get(policy[s]));
+		}
+		return new MDPSolution<>(valueFunction, pol);
+	}
+
+	/**
+	 * Performs <code>itercount</code> synchronous sweeps of value iteration, each
+	 * of which replaces the value of every state with its
+	 * {@link #maxQ(double[], double, int) maxQ(...)} under the values from before
+	 * the sweep.
+	 *
+	 * @param values      The value of each state, by index, which is updated.
+	 * @param decayFactor The factor that future rewards are discounted by.
+	 * @param itercount   The number of sweeps.
+	 */
+	public void valueIteration(double[] values, double decayFactor, int itercount) {
+		double[] prev = values, next = new double[values.length];
+		while (itercount-- > 0) {
+			sweep(prev, next, decayFactor, 0, next.length);
+			double[] t = prev;
+			prev = next;
+			next = t;
+		}
+		if (prev != values)
+			System.arraycopy(prev, 0, values, 0, values.length);
+	}
+
+	/**
+	 * Performs value iteration from the value function that is <code>0</code>
+	 * everywhere, and then extracts the {@link #greedyPolicy(double[], double)
+	 * greedy policy}.
+	 *
+	 * @param decayFactor The factor that future rewards are discounted by.
+	 * @param itercount   The number of sweeps.
+	 * @return The resulting {@link MDPSolution}.
+	 * @see #valueIteration(double[], double, int)
+	 */
+	public MDPSolution<S, A> valueIteration(double decayFactor, int itercount) {
+		double[] values = new double[states.size()];
+		valueIteration(values, decayFactor, itercount);
+		return solution(values, greedyPolicy(values, decayFactor));
+	}
+
+}
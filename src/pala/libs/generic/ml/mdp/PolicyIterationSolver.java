@@ -0,0 +1,289 @@
+package pala.libs.generic.ml.mdp;
+
+import java.util.BitSet;
+
+/**
+ * <p>
+ * Solves a {@link CompiledMDP} by modified policy iteration. Each iteration
+ * performs an improvement step followed by a partial evaluation of the
+ * improved policy:
+ * </p>
+ * <ol>
+ * <li>The improvement step visits states in order, finds each one's
+ * {@link CompiledMDP#q(double[], double, int, int) best action} and updates
+ * its value, in place, to that action's value. A state's action is only
+ * replaced by one that is strictly better, so that ties cannot make the policy
+ * oscillate. The states whose action changed are recorded, and are available
+ * from {@link #getChangedStates()}.</li>
+ * <li>The evaluation step then sweeps every state, in place, with the action of
+ * the policy, at most {@link #setEvaluationSweeps(int) evaluationSweeps} times
+ * and stopping early once the values change by less than
+ * {@link #setEpsilon(double) epsilon}. Evaluation sweeps only consider one
+ * action per state, so they are much cheaper than improvement steps.</li>
+ * </ol>
+ * <p>
+ * The best action of a state can only change if the value of one of its
+ * successors does, so improvement steps only visit the states that are
+ * <i>dirty</i>. Every state starts out dirty, and a state becomes clean when it
+ * is improved. Whenever the value of a state has moved by <code>epsilon</code>
+ * or more since it last did so, every state with a transition into it becomes
+ * dirty again. Near convergence, when few values still move, this makes
+ * improvement steps far cheaper than a visit of every state and action.
+ * </p>
+ * <p>
+ * Once an improvement step of only the dirty states changes no state's action
+ * and no state's value by <code>epsilon</code> or more, the next improvement
+ * step visits every state, to confirm that the smaller moves of the remaining
+ * values have not added up. Iteration stops once such a full improvement step
+ * also changes nothing, i.e. once the policy is stable and its values are the
+ * fixed point of the Bellman equation to within <code>epsilon</code>, or once
+ * {@link #setMaxIterations(int) maxIterations} iterations have been performed.
+ * With <code>evaluationSweeps</code> set to <code>0</code>, this is
+ * Gauss-Seidel value iteration; as it grows, this approaches classic policy
+ * iteration, which evaluates each policy exactly.
+ * </p>
+ * <p>
+ * An {@link IterationListener} can be {@link #setListener(IterationListener)
+ * set} to observe each iteration.
+ * </p>
+ *
+ * @author Palanath
+ *
+ * @param <S> The type of the states.
+ * @param <A> The type of the actions.
+ */
+public class PolicyIterationSolver<S, A> {
+
+	/**
+	 * Receives the statistics of each iteration performed by a
+	 * {@link PolicyIterationSolver}.
+	 *
+	 * @author Palanath
+	 *
+	 */
+	@FunctionalInterface
+	public interface IterationListener {
+		/**
+		 * Called after each iteration, on the thread that called
+		 * {@link PolicyIterationSolver#solve(double[], int[])}.
+		 *
+		 * @param iteration        The number of the iteration, starting from
+		 *                         <code>1</code>.
+		 * @param improved         The number of states visited by the improvement
+		 *                         step.
+		 * @param changes          The number of states whose action was changed by
+		 *                         the improvement step.
+		 * @param residual         The largest absolute change in the value of any
+		 *                         state during the improvement step.
+		 * @param evaluationSweeps The number of evaluation sweeps performed.
+		 * @param nanos            The time the iteration took, in nanoseconds.
+		 */
+		void iteration(int iteration, int improved, int changes, double residual, int evaluationSweeps, long nanos);
+	}
+
+	private final CompiledMDP<S, A> mdp;
+	private double decayFactor, epsilon;
+	private int evaluationSweeps = 20, maxIterations = Integer.MAX_VALUE;
+	private IterationListener listener;
+	private final BitSet changedStates = new BitSet();
+
+	/**
+	 * Creates a {@link PolicyIterationSolver} for the provided {@link CompiledMDP}.
+	 *
+	 * @param mdp         The {@link CompiledMDP}.
+	 * @param decayFactor The factor that future rewards are discounted by.
+	 * @param epsilon     The change in value below which evaluation and iteration
+	 *                    stop.
+	 */
+	public PolicyIterationSolver(CompiledMDP<S, A> mdp, double decayFactor, double epsilon) {
+		this.mdp = mdp;
+		this.decayFactor = decayFactor;
+		this.epsilon = epsilon;
+	}
+
+	public double getDecayFactor() {
+		return decayFactor;
+	}
+
+	public void setDecayFactor(double decayFactor) {
+		this.decayFactor = decayFactor;
+	}
+
+	public double getEpsilon() {
+		return epsilon;
+	}
+
+	public void setEpsilon(double epsilon) {
+		this.epsilon = epsilon;
+	}
+
+	public int getEvaluationSweeps() {
+		return evaluationSweeps;
+	}
+
+	/**
+	 * Sets the largest number of evaluation sweeps performed after each
+	 * improvement step. The default is <code>20</code>.
+	 *
+	 * @param evaluationSweeps The largest number of evaluation sweeps.
+	 */
+	public void setEvaluationSweeps(int evaluationSweeps) {
+		this.evaluationSweeps = evaluationSweeps;
+	}
+
+	public int getMaxIterations() {
+		return maxIterations;
+	}
+
+	/**
+	 * Sets the largest number of iterations performed by one call to
+	 * {@link #solve(double[], int[])}. This is unlimited by default, so it should
+	 * be set if the decay factor is not less than <code>1</code>.
+	 *
+	 * @param maxIterations The largest number of iterations.
+	 */
+	public void setMaxIterations(int maxIterations) {
+		this.maxIterations = maxIterations;
+	}
+
+	public IterationListener getListener() {
+		return listener;
+	}
+
+	public void setListener(IterationListener listener) {
+		this.listener = listener;
+	}
+
+	public CompiledMDP<S, A> getMDP() {
+		return mdp;
+	}
+
+	/**
+	 * Returns the states whose action was changed by the most recent improvement
+	 * step of {@link #solve(double[], int[])}. The returned {@link BitSet} is
+	 * reused, and cleared at the start of every improvement step.
+	 *
+	 * @return The indices of the changed states.
+	 */
+	public BitSet getChangedStates() {
+		return changedStates;
+	}
+
+	/**
+	 * Improves the provided policy and its value function until both are stable,
+	 * as described in the {@link PolicyIterationSolver class documentation}.
+	 *
+	 * @param values The value of each state, by index, which is updated.
+	 * @param policy The index of the action taken in each state, by index, which
+	 *               is updated.
+	 * @return The number of iterations performed.
+	 * @throws IllegalStateException If the values of an improvement step or an
+	 *                               evaluation sweep change by an amount that is
+	 *                               not finite, e.g. because a reward is
+	 *                               <code>NaN</code>, in which case the values
+	 *                               would never converge.
+	 */
+	public int solve(double[] values, int[] policy) {
+		int[][] predecessors = mdp.predecessors();
+		boolean[] dirty = new boolean[values.length];
+		// The value of each state when its predecessors were last made dirty.
+		double[] marked = values.clone();
+		boolean full = true;
+
+		int iterations = 0;
+		while (iterations < maxIterations) {
+			long start = System.nanoTime();
+
+			// Improvement.
+			changedStates.clear();
+			int improved = 0;
+			double residual = 0;
+			for (int s = 0; s < values.length; s++) {
+				if (!full && !dirty[s])
+					continue;
+				dirty[s] = false;
+				improved++;
+				int best = policy[s];
+				double max = mdp.q(values, decayFactor, s, best);
+				for (int a = 0; a < mdp.actionCount(); a++)
+					if (a != policy[s]) {
+						double q = mdp.q(values, decayFactor, s, a);
+						if (q > max) {
+							max = q;
+							best = a;
+						}
+					}
+				if (best != policy[s]) {
+					policy[s] = best;
+					changedStates.set(s);
+				}
+				residual = Math.max(residual, Math.abs(max - values[s]));
+				values[s] = max;
+				mark(s, values, marked, dirty, predecessors);
+			}
+			iterations++;
+			if (!Double.isFinite(residual))
+				throw new IllegalStateException(
+						"Values diverged: the residual of improvement step " + iterations + " is " + residual + '.');
+			int changes = changedStates.cardinality();
+			if (changes == 0 && residual < epsilon) {
+				if (listener != null)
+					listener.iteration(iterations, improved, changes, residual, 0, System.nanoTime() - start);
+				if (full)
+					break;
+				full = true;
+				continue;
+			}
+			full = false;
+
+			// Partial evaluation.
+			int sweeps = 0;
+			while (sweeps < evaluationSweeps) {
+				sweeps++;
+				double change = 0;
+				for (int s = 0; s < values.length; s++) {
+					double old = values[s];
+					values[s] = mdp.q(values, decayFactor, s, policy[s]);
+					change = Math.max(change, Math.abs(values[s] - old));
+					mark(s, values, marked, dirty, predecessors);
+				}
+				if (change < epsilon)
+					break;
+				if (!Double.isFinite(change))
+					throw new IllegalStateException("Values diverged: an evaluation sweep of iteration " + iterations
+							+ " changed them by " + change + '.');
+			}
+
+			if (listener != null)
+				listener.iteration(iterations, improved, changes, residual, sweeps, System.nanoTime() - start);
+		}
+		return iterations;
+	}
+
+	/**
+	 * Makes every predecessor of the specified state dirty if its value has moved
+	 * by <code>epsilon</code> or more since they were last made dirty by it.
+	 */
+	private void mark(int state, double[] values, double[] marked, boolean[] dirty, int[][] predecessors) {
+		if (Math.abs(values[state] - marked[state]) >= epsilon) {
+			marked[state] = values[state];
+			for (int i = predecessors[0][state]; i < predecessors[0][state + 1]; i++)
+				dirty[predecessors[1][i]] = true;
+		}
+	}
+
+	/**
+	 * Solves the {@link CompiledMDP} from the value function that is
+	 * <code>0</code> everywhere and the policy that takes the first action
+	 * everywhere.
+	 *
+	 * @return The resulting {@link MDPSolution}.
+	 */
+	public MDPSolution<S, A> solve() {
+		double[] values = new double[mdp.stateCount()];
+		int[] policy = new int[values.length];
+		solve(values, policy);
+		return mdp.solution(values, policy);
+	}
+
+}
@@ -5,7 +5,14 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 
 import pala.libs.generic.JavaTools;
 import pala.libs.generic.util.Triplet;
@@ -27,6 +34,18 @@ import pala.libs.generic.util.functions.TriDoubleFunction;
  * the full set of available states that can be transitioned to; just the ones
  * with non-zero probability.)
  * </p>
+ * <p>
+ * Transitions can also be {@link #sample(Object, Object, Random) sampled}. The
+ * first time the transitions of a <code>(fromState, action)</code> pair are
+ * sampled, they are compiled into an alias table, which is cached and lets
+ * every later sample be drawn in constant time, with a single random number
+ * and no allocation. Pairs that are never sampled get no table. The map of
+ * transitions provided upon construction is copied, so modifying it afterwards
+ * does not affect the {@link TransitionFunction}. Sampling may be done from any
+ * number of threads at once; see
+ * {@link #rollouts(Object, Function, TriDoubleFunction, int, int, long, ForkJoinPool)
+ * rollouts(...)}.
+ * </p>
  * 
  * @author Palanath
  *
@@ -35,17 +54,29 @@ import pala.libs.generic.util.functions.TriDoubleFunction;
  */
 public final class TransitionFunction<S, A> implements TriDoubleFunction<S, A, S>, BiFunction<S, A, S> {
 
+	/**
+	 * Creates a {@link TransitionFunction} from a copy of the provided map, which
+	 * maps each <code>fromState</code> and <code>action</code> to the weight of
+	 * each <code>toState</code>. The weights of each pair are normalized in the
+	 * copy so that they sum to <code>1</code>.
+	 *
+	 * @param jumps The transitions.
+	 */
 	public TransitionFunction(Map<S, Map<A, Map<S, Double>>> jumps) {
-		this.transitions = jumps;
-		for (Map<A, Map<S, Double>> v : jumps.values())
-			for (Map<S, Double> v2 : v.values()) {
+		transitions = new HashMap<>();
+		for (Entry<S, Map<A, Map<S, Double>>> e : jumps.entrySet()) {
+			Map<A, Map<S, Double>> actions = new HashMap<>();
+			for (Entry<A, Map<S, Double>> e2 : e.getValue().entrySet()) {
 				double prob = 0;
-				for (double d : v2.values())
+				for (double d : e2.getValue().values())
 					prob += d;
-				for (Entry<S, Double> e : v2.entrySet())
-					e.setValue(e.getValue() / prob);
+				Map<S, Double> probs = new HashMap<>();
+				for (Entry<S, Double> e3 : e2.getValue().entrySet())
+					probs.put(e3.getKey(), e3.getValue() / prob);
+				actions.put(e2.getKey(), probs);
 			}
-
+			transitions.put(e.getKey(), actions);
+		}
 	}
 
 	public static final class Builder<S, A> {
@@ -99,6 +130,91 @@ public final class TransitionFunction<S, A> implements TriDoubleFunction<S, A, S
 	}
 
 	private final Map<S, Map<A, Map<S, Double>>> transitions;
+	/**
+	 * The {@link AliasTable}s built so far, keyed by <code>fromState</code> and
+	 * then by <code>action</code>.
+	 */
+	private final Map<S, Map<A, AliasTable<S>>> tables = new ConcurrentHashMap<>();
+
+	/**
+	 * <p>
+	 * The transitions from one <code>(fromState, action)</code> pair, compiled
+	 * for sampling by Vose's alias method. The unit interval is divided into one
+	 * equal slot per transition; slot <code>i</code> is split between transition
+	 * <code>i</code>, which owns the first <code>accept[i]</code> of it, and
+	 * transition <code>alias[i]</code>, which owns the rest. Sampling picks a slot
+	 * and a point within it using one random number.
+	 * </p>
+	 *
+	 * @param <S> The type of the state.
+	 */
+	private static final class AliasTable<S> {
+		private final Transition<S>[] transitions;
+		private final double[] accept;
+		private final int[] alias;
+
+		@SuppressWarnings("unchecked")
+		private AliasTable(Map<S, Double> probs) {
+			int n = probs.size();
+			transitions = (Transition<S>[]) new Transition<?>[n];
+			accept = new double[n];
+			alias = new int[n];
+
+			int i = 0;
+			for (Entry<S, Double> e : probs.entrySet()) {
+				transitions[i] = new Transition<>(e.getKey(), e.getValue());
+				accept[i++] = e.getValue() * n;
+			}
+
+			// Slots that are under- and over-full, as stacks.
+			int[] small = new int[n], large = new int[n];
+			int smalls = 0, larges = 0;
+			for (i = 0; i < n; i++)
+				if (accept[i] < 1)
+					small[smalls++] = i;
+				else
+					large[larges++] = i;
+			while (smalls != 0 && larges != 0) {
+				int s = small[--smalls], l = large[larges - 1];
+				alias[s] = l;
+				if ((accept[l] -= 1 - accept[s]) < 1) {
+					larges--;
+					small[smalls++] = l;
+				}
+			}
+			// Whatever is left is full, up to rounding error.
+			while (larges != 0)
+				accept[large[--larges]] = 1;
+			while (smalls != 0)
+				accept[small[--smalls]] = 1;
+		}
+
+		private S sample(double r) {
+			double u = r * accept.length;
+			int i = Math.min((int) u, accept.length - 1);
+			return (u - i < accept[i] ? transitions[i] : transitions[alias[i]]).resultingState;
+		}
+	}
+
+	/**
+	 * Returns the {@link AliasTable} of the provided pair, building it if this is
+	 * the first time the pair is sampled, or <code>null</code> if the pair has no
+	 * transitions.
+	 */
+	private AliasTable<S> table(S fromState, A action) {
+		Map<A, AliasTable<S>> m = tables.get(fromState);
+		AliasTable<S> table;
+		if (m != null && (table = m.get(action)) != null)
+			return table;
+
+		Map<A, Map<S, Double>> m1 = transitions.get(fromState);
+		Map<S, Double> m2;
+		if (m1 == null || (m2 = m1.get(action)) == null || m2.isEmpty())
+			return null;
+		if (m == null)
+			m = tables.computeIfAbsent(fromState, a -> new ConcurrentHashMap<>());
+		return m.computeIfAbsent(action, a -> new AliasTable<>(m2));
+	}
 
 	public List<Transition<S>> getTransitions(S fromState, A action) {
 		Map<A, Map<S, Double>> m1 = transitions.get(fromState);
@@ -141,20 +257,104 @@ public final class TransitionFunction<S, A> implements TriDoubleFunction<S, A, S
 		return getProb(first, second, third);
 	}
 
+	/**
+	 * Samples a transition from this {@link TransitionFunction} going from the
+	 * provided <code>fromState</code> by taking the provided <code>action</code>,
+	 * using {@link ThreadLocalRandom}. See {@link #sample(Object, Object, Random)}.
+	 */
+	@Override
+	public S apply(S fromState, A action) {
+		return sample(fromState, action, ThreadLocalRandom.current());
+	}
+
 	/**
 	 * Samples a transition from this {@link TransitionFunction} going from the
 	 * provided <code>fromState</code> by taking the provided <code>action</code>.
 	 * This method returns one of the possible states that can be arrived at by
 	 * taking the provided action while in the provided states, with probability in
 	 * accordance with the likelihood of arriving in the resulting state.
+	 * 
+	 * @param fromState The state to transition from.
+	 * @param action    The action to take.
+	 * @param random    The {@link Random} to draw the sample with. Providing one
+	 *                  with a fixed seed makes the sample reproducible.
+	 * @return The state transitioned into.
+	 * @throws IllegalArgumentException If there are no transitions from the
+	 *                                  provided state by taking the provided
+	 *                                  action.
 	 */
-	@Override
-	public S apply(S fromState, A action) {
-		double r = Math.random();
-		List<Transition<S>> list = getTransitions(fromState, action);
-		for (Transition<S> tr : list)
-			if ((r -= tr.prob) <= 0)
-				return tr.resultingState;
-		return list.get(list.size() - 1).resultingState;
+	public S sample(S fromState, A action, Random random) {
+		AliasTable<S> table = table(fromState, action);
+		if (table == null)
+			throw new IllegalArgumentException(
+					"No transitions from state " + fromState + " by taking action " + action + '.');
+		return table.sample(random.nextDouble());
+	}
+
+	/**
+	 * Runs the provided policy for <code>steps</code> steps, starting from
+	 * <code>startingState</code> and sampling each transition with the provided
+	 * {@link Random}, and returns the total reward gained.
+	 * 
+	 * @param startingState  The state to start in.
+	 * @param policy         The action to take in each state.
+	 * @param rewardFunction The reward for each transition, given the state
+	 *                       transitioned from, the action taken, and the state
+	 *                       transitioned into.
+	 * @param steps          The number of transitions to make.
+	 * @param random         The {@link Random} to sample transitions with.
+	 * @return The total reward.
+	 */
+	public double rollout(S startingState, Function<? super S, ? extends A> policy,
+			TriDoubleFunction<? super S, ? super A, ? super S> rewardFunction, int steps, Random random) {
+		double reward = 0;
+		while (steps-- > 0) {
+			A action = policy.apply(startingState);
+			S newState = sample(startingState, action, random);
+			reward += rewardFunction.run(startingState, action, newState);
+			startingState = newState;
+		}
+		return reward;
+	}
+
+	/**
+	 * Performs <code>count</code>
+	 * {@link #rollout(Object, Function, TriDoubleFunction, int, Random) rollouts}
+	 * of the provided policy, and returns the total reward of each. Every rollout
+	 * is given its own {@link Random}, seeded from <code>seed</code> by its index,
+	 * so the results are the same whether or not they are computed in parallel,
+	 * and in whatever order.
+	 * 
+	 * @param startingState  The state every rollout starts in.
+	 * @param policy         The action to take in each state, which may be called
+	 *                       from multiple threads at once if a pool is provided.
+	 * @param rewardFunction The reward for each transition, which may also be
+	 *                       called from multiple threads at once.
+	 * @param steps          The number of transitions each rollout makes.
+	 * @param count          The number of rollouts.
+	 * @param seed           The seed that every rollout's {@link Random} is
+	 *                       derived from.
+	 * @param pool           The {@link ForkJoinPool} to perform the rollouts in, or
+	 *                       <code>null</code> to perform them on the calling
+	 *                       thread.
+	 * @return The total reward of each rollout.
+	 */
+	public double[] rollouts(S startingState, Function<? super S, ? extends A> policy,
+			TriDoubleFunction<? super S, ? super A, ? super S> rewardFunction, int steps, int count, long seed,
+			ForkJoinPool pool) {
+		SplittableRandom seeds = new SplittableRandom(seed);
+		long[] rolloutSeeds = new long[count];
+		for (int i = 0; i < count; i++)
+			rolloutSeeds[i] = seeds.nextLong();
+		double[] rewards = new double[count];
+		if (pool == null)
+			for (int i = 0; i < count; i++)
+				rewards[i] = rollout(startingState, policy, rewardFunction, steps, new Random(rolloutSeeds[i]));
+		else
+			// Terminal operations of parallel streams run in the pool they are invoked
+			// from, so this performs the rollouts in the provided pool.
+			pool.submit(() -> IntStream.range(0, count).parallel().forEach(i -> rewards[i] = rollout(startingState,
+					policy, rewardFunction, steps, new Random(rolloutSeeds[i])))).join();
+		return rewards;
 	}
-}
\ No newline at end of file
+}
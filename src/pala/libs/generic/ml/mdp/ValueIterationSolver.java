@@ -0,0 +1,238 @@
+package pala.libs.generic.ml.mdp;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * <p>
+ * Solves a {@link CompiledMDP} by value iteration, sweeping until the Bellman
+ * residual, the largest absolute change in the value of any state over one
+ * sweep, is below {@link #setEpsilon(double) epsilon}, or until
+ * {@link #setMaxSweeps(int) maxSweeps} sweeps have been performed.
+ * </p>
+ * <p>
+ * Two kinds of sweep are supported:
+ * </p>
+ * <ul>
+ * <li>{@link Mode#JACOBI Jacobi} sweeps compute every new value from the values
+ * of the previous sweep, as
+ * {@link CompiledMDP#valueIteration(double[], double, int)} does. If a
+ * {@link #setPool(ForkJoinPool) pool} is set, the states are partitioned
+ * across its threads.</li>
+ * <li>{@link Mode#GAUSS_SEIDEL Gauss-Seidel} sweeps update the values in place,
+ * in state order, so each update already sees the new values of the states
+ * before it. This usually needs fewer sweeps to converge, and no second array,
+ * but is always performed on the calling thread.</li>
+ * </ul>
+ * <p>
+ * A {@link SweepListener} can be {@link #setListener(SweepListener) set} to
+ * observe the residual and duration of every sweep, e.g. to tune the mode,
+ * pool or epsilon.
+ * </p>
+ *
+ * @author Palanath
+ *
+ * @param <S> The type of the states.
+ * @param <A> The type of the actions.
+ */
+public class ValueIterationSolver<S, A> {
+
+	public enum Mode {
+		JACOBI, GAUSS_SEIDEL;
+	}
+
+	/**
+	 * Receives the statistics of each sweep performed by a
+	 * {@link ValueIterationSolver}.
+	 *
+	 * @author Palanath
+	 *
+	 */
+	@FunctionalInterface
+	public interface SweepListener {
+		/**
+		 * Called after each sweep, on the thread that called
+		 * {@link ValueIterationSolver#solve(double[])}.
+		 *
+		 * @param sweep    The number of the sweep, starting from <code>1</code>.
+		 * @param residual The largest absolute change in the value of any state
+		 *                 during the sweep.
+		 * @param nanos    The time the sweep took, in nanoseconds.
+		 */
+		void sweep(int sweep, double residual, long nanos);
+	}
+
+	private final CompiledMDP<S, A> mdp;
+	private double decayFactor, epsilon;
+	private int maxSweeps = Integer.MAX_VALUE;
+	private Mode mode = Mode.JACOBI;
+	/**
+	 * The pool to perform Jacobi sweeps in, or <code>null</code> to perform them
+	 * on the calling thread.
+	 */
+	private ForkJoinPool pool;
+	private SweepListener listener;
+
+	/**
+	 * Creates a {@link ValueIterationSolver} for the provided {@link CompiledMDP}.
+	 *
+	 * @param mdp         The {@link CompiledMDP}.
+	 * @param decayFactor The factor that future rewards are discounted by.
+	 * @param epsilon     The residual below which iteration stops.
+	 */
+	public ValueIterationSolver(CompiledMDP<S, A> mdp, double decayFactor, double epsilon) {
+		this.mdp = mdp;
+		this.decayFactor = decayFactor;
+		this.epsilon = epsilon;
+	}
+
+	public double getDecayFactor() {
+		return decayFactor;
+	}
+
+	public void setDecayFactor(double decayFactor) {
+		this.decayFactor = decayFactor;
+	}
+
+	public double getEpsilon() {
+		return epsilon;
+	}
+
+	public void setEpsilon(double epsilon) {
+		this.epsilon = epsilon;
+	}
+
+	public int getMaxSweeps() {
+		return maxSweeps;
+	}
+
+	/**
+	 * Sets the largest number of sweeps performed by one call to
+	 * {@link #solve(double[])}, regardless of the residual. This is unlimited by
+	 * default, so it should be set if the decay factor is not less than
+	 * <code>1</code>, in which case the values may never converge.
+	 *
+	 * @param maxSweeps The largest number of sweeps.
+	 */
+	public void setMaxSweeps(int maxSweeps) {
+		this.maxSweeps = maxSweeps;
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	public void setMode(Mode mode) {
+		this.mode = mode;
+	}
+
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Sets the {@link ForkJoinPool} that {@link Mode#JACOBI Jacobi} sweeps are
+	 * performed in. If <code>null</code> (the default), they are performed on the
+	 * calling thread.
+	 *
+	 * @param pool The {@link ForkJoinPool}, e.g. {@link ForkJoinPool#commonPool()}.
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	public SweepListener getListener() {
+		return listener;
+	}
+
+	public void setListener(SweepListener listener) {
+		this.listener = listener;
+	}
+
+	public CompiledMDP<S, A> getMDP() {
+		return mdp;
+	}
+
+	/**
+	 * Sweeps the provided value function until it converges, as described in the
+	 * {@link ValueIterationSolver class documentation}.
+	 *
+	 * @param values The value of each state, by index, which is updated.
+	 * @return The number of sweeps performed.
+	 * @throws IllegalStateException If a sweep's residual is not finite, e.g.
+	 *                               because a reward is <code>NaN</code>, in
+	 *                               which case the values would never converge.
+	 */
+	public int solve(double[] values) {
+		double[] prev = values, next = mode == Mode.JACOBI ? new double[values.length] : values;
+		int sweeps = 0;
+		while (sweeps < maxSweeps) {
+			long start = System.nanoTime();
+			double residual = pool == null || mode == Mode.GAUSS_SEIDEL
+					? mdp.sweep(prev, next, decayFactor, 0, values.length)
+					: pool.invoke(new Sweep(prev, next, 0, values.length,
+							Math.max(1024, values.length / (pool.getParallelism() * 8))));
+			sweeps++;
+			if (listener != null)
+				listener.sweep(sweeps, residual, System.nanoTime() - start);
+			double[] t = prev;
+			prev = next;
+			next = t;
+			if (residual < epsilon)
+				break;
+			if (!Double.isFinite(residual))
+				throw new IllegalStateException(
+						"Values diverged: the residual of sweep " + sweeps + " is " + residual + '.');
+		}
+		if (prev != values)
+			System.arraycopy(prev, 0, values, 0, values.length);
+		return sweeps;
+	}
+
+	/**
+	 * Solves the {@link CompiledMDP} from the value function that is
+	 * <code>0</code> everywhere, and then extracts the
+	 * {@link CompiledMDP#greedyPolicy(double[], double) greedy policy}.
+	 *
+	 * @return The resulting {@link MDPSolution}.
+	 */
+	public MDPSolution<S, A> solve() {
+		double[] values = new double[mdp.stateCount()];
+		solve(values);
+		return mdp.solution(values, mdp.greedyPolicy(values, decayFactor));
+	}
+
+	/**
+	 * Performs a Jacobi sweep over a range of states by splitting the range in
+	 * half until it is no larger than <code>threshold</code>, and returns the
+	 * residual of the range.
+	 */
+	private final class Sweep extends RecursiveTask<Double> {
+		/**
+		 * SUID
+		 */
+		private static final long serialVersionUID = 1L;
+		private final double[] from, to;
+		private final int start, end, threshold;
+
+		private Sweep(double[] from, double[] to, int start, int end, int threshold) {
+			this.from = from;
+			this.to = to;
+			this.start = start;
+			this.end = end;
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected Double compute() {
+			if (end - start <= threshold)
+				return mdp.sweep(from, to, decayFactor, start, end);
+			int mid = (start + end) >>> 1;
+			Sweep left = new Sweep(from, to, start, mid, threshold);
+			left.fork();
+			double right = new Sweep(from, to, mid, end, threshold).compute();
+			return Math.max(left.join(), right);
+		}
+	}
+
+}
@@ -0,0 +1,111 @@
+package pala.libs.generic.ml.ai.neuralnets.computations;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * <p>
+ * {@link Kernels} implemented with the JDK Vector API, using the widest
+ * <code>double</code> vectors the CPU supports. Each kernel processes whole
+ * vectors and then finishes the remaining elements with the scalar loop.
+ * </p>
+ * <p>
+ * This class requires JDK 16 or later and the <code>jdk.incubator.vector</code>
+ * module, and is loaded reflectively by {@link Kernels#vector()}.
+ * </p>
+ *
+ * @author Palanath
+ *
+ */
+public final class VectorKernels extends Kernels {
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+	private static final int LENGTH = SPECIES.length();
+
+	public VectorKernels() {
+	}
+
+	@Override
+	public void add(double[] a, int aOffset, double[] b, int bOffset, double[] y, int yOffset, int n) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(n); i < bound; i += LENGTH)
+			DoubleVector.fromArray(SPECIES, a, aOffset + i).add(DoubleVector.fromArray(SPECIES, b, bOffset + i))
+					.intoArray(y, yOffset + i);
+		super.add(a, aOffset + i, b, bOffset + i, y, yOffset + i, n - i);
+	}
+
+	@Override
+	public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int n) {
+		DoubleVector a = DoubleVector.broadcast(SPECIES, alpha);
+		int i = 0;
+		for (int bound = SPECIES.loopBound(n); i < bound; i += LENGTH)
+			DoubleVector.fromArray(SPECIES, x, xOffset + i).fma(a, DoubleVector.fromArray(SPECIES, y, yOffset + i))
+					.intoArray(y, yOffset + i);
+		super.axpy(alpha, x, xOffset + i, y, yOffset + i, n - i);
+	}
+
+	@Override
+	public double dot(double[] a, int aOffset, double[] b, int bOffset, int n) {
+		DoubleVector sum = DoubleVector.zero(SPECIES);
+		int i = 0;
+		for (int bound = SPECIES.loopBound(n); i < bound; i += LENGTH)
+			sum = DoubleVector.fromArray(SPECIES, a, aOffset + i).fma(DoubleVector.fromArray(SPECIES, b, bOffset + i),
+					sum);
+		return sum.reduceLanes(VectorOperators.ADD) + super.dot(a, aOffset + i, b, bOffset + i, n - i);
+	}
+
+	@Override
+	public void exp(double[] x, int xOffset, double[] y, int yOffset, int n) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(n); i < bound; i += LENGTH)
+			DoubleVector.fromArray(SPECIES, x, xOffset + i).lanewise(VectorOperators.EXP).intoArray(y, yOffset + i);
+		super.exp(x, xOffset + i, y, yOffset + i, n - i);
+	}
+
+	@Override
+	public double max(double[] x, int xOffset, int n) {
+		DoubleVector max = DoubleVector.broadcast(SPECIES, Double.NEGATIVE_INFINITY);
+		int i = 0;
+		for (int bound = SPECIES.loopBound(n); i < bound; i += LENGTH)
+			max = max.max(DoubleVector.fromArray(SPECIES, x, xOffset + i));
+		return Math.max(max.reduceLanes(VectorOperators.MAX), super.max(x, xOffset + i, n - i));
+	}
+
+	@Override
+	public void relu(double[] x, int xOffset, double[] y, int yOffset, int n) {
+		DoubleVector zero = DoubleVector.zero(SPECIES);
+		int i = 0;
+		for (int bound = SPECIES.loopBound(n); i < bound; i += LENGTH) {
+			DoubleVector v = DoubleVector.fromArray(SPECIES, x, xOffset + i);
+			zero.blend(v, v.compare(VectorOperators.GT, 0)).intoArray(y, yOffset + i);
+		}
+		super.relu(x, xOffset + i, y, yOffset + i, n - i);
+	}
+
+	@Override
+	public void scale(double alpha, double[] x, int xOffset, double[] y, int yOffset, int n) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(n); i < bound; i += LENGTH)
+			DoubleVector.fromArray(SPECIES, x, xOffset + i).mul(alpha).intoArray(y, yOffset + i);
+		super.scale(alpha, x, xOffset + i, y, yOffset + i, n - i);
+	}
+
+	@Override
+	public double sum(double[] x, int xOffset, int n) {
+		DoubleVector sum = DoubleVector.zero(SPECIES);
+		int i = 0;
+		for (int bound = SPECIES.loopBound(n); i < bound; i += LENGTH)
+			sum = sum.add(DoubleVector.fromArray(SPECIES, x, xOffset + i));
+		return sum.reduceLanes(VectorOperators.ADD) + super.sum(x, xOffset + i, n - i);
+	}
+
+	@Override
+	public void tanh(double[] x, int xOffset, double[] y, int yOffset, int n) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(n); i < bound; i += LENGTH)
+			DoubleVector.fromArray(SPECIES, x, xOffset + i).lanewise(VectorOperators.TANH).intoArray(y, yOffset + i);
+		super.tanh(x, xOffset + i, y, yOffset + i, n - i);
+	}
+
+}